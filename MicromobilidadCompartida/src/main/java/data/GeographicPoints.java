@@ -0,0 +1,241 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A growable batch of geographic points stored as parallel arrays of latitudes and longitudes, for
+ * computing distances from one point to many.
+ * <p>
+ * The distance kernels are plain counted loops over primitive arrays. {@link Mode#HAVERSINE} gives
+ * the same great-circle distance as {@link GeographicPoint#calculateDistance}, with the cosine of
+ * every latitude computed once when the point is added. {@link Mode#EQUIRECTANGULAR} projects the
+ * points onto a plane at the origin's latitude: it is pure arithmetic, so the JIT can vectorize it,
+ * and it stays within a few metres of the great-circle distance over urban distances, but not across
+ * the antimeridian.
+ */
+public final class GeographicPoints {
+
+    /**
+     * How distances are computed.
+     */
+    public enum Mode {
+        /**
+         * Great-circle distance with the Haversine formula.
+         */
+        HAVERSINE,
+        /**
+         * Planar approximation for short distances.
+         */
+        EQUIRECTANGULAR
+    }
+
+    private static final double EARTH_RADIUS = 6371; // In kilometres, as GeographicPoint
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Class members
+    private float[] latitudes;
+    private float[] longitudes;
+    private double[] cosLatitudes;
+    private int size;
+
+    /**
+     * Constructs an empty batch.
+     */
+    public GeographicPoints() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty batch with room for a number of points.
+     *
+     * @param capacity the initial capacity.
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public GeographicPoints(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+        latitudes = new float[capacity];
+        longitudes = new float[capacity];
+        cosLatitudes = new double[capacity];
+    }
+
+    /**
+     * Adds a point.
+     *
+     * @param point the point.
+     * @return the index of the point.
+     * @throws IllegalArgumentException if the point is null.
+     */
+    public int add(GeographicPoint point) {
+        if (point == null) {
+            throw new IllegalArgumentException("Point cannot be null");
+        }
+        return add(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Adds a point.
+     *
+     * @param lat the latitude, in decimal degrees.
+     * @param lon the longitude, in decimal degrees.
+     * @return the index of the point.
+     */
+    public int add(float lat, float lon) {
+        if (size == latitudes.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            cosLatitudes = Arrays.copyOf(cosLatitudes, capacity);
+        }
+        set(size, lat, lon);
+        return size++;
+    }
+
+    /**
+     * Replaces a point.
+     *
+     * @param index the index of the point.
+     * @param lat the latitude, in decimal degrees.
+     * @param lon the longitude, in decimal degrees.
+     * @throws IndexOutOfBoundsException if there is no point at the index.
+     */
+    public void update(int index, float lat, float lon) {
+        checkIndex(index);
+        set(index, lat, lon);
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the latitude of a point.
+     *
+     * @param index the index of the point.
+     * @return the latitude in decimal degrees.
+     * @throws IndexOutOfBoundsException if there is no point at the index.
+     */
+    public float getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    /**
+     * Returns the longitude of a point.
+     *
+     * @param index the index of the point.
+     * @return the longitude in decimal degrees.
+     * @throws IndexOutOfBoundsException if there is no point at the index.
+     */
+    public float getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    /**
+     * Returns a point.
+     *
+     * @param index the index of the point.
+     * @return the point.
+     * @throws IndexOutOfBoundsException if there is no point at the index.
+     */
+    public GeographicPoint get(int index) {
+        checkIndex(index);
+        return new GeographicPoint(latitudes[index], longitudes[index]);
+    }
+
+    /**
+     * Computes the distance from an origin to every point.
+     *
+     * @param origin the origin.
+     * @param mode how distances are computed.
+     * @param out the array receiving the distance to point {@code i} at index {@code i}, in kilometres.
+     * @throws IllegalArgumentException if an argument is null or the array is smaller than the batch.
+     */
+    public void distancesFrom(GeographicPoint origin, Mode mode, float[] out) {
+        if (origin == null || mode == null || out == null || out.length < size) {
+            throw new IllegalArgumentException("Distances need an origin, a mode and room for every point");
+        }
+        if (mode == Mode.HAVERSINE) {
+            haversine(origin.getLatitude(), origin.getLongitude(), out);
+        } else {
+            equirectangular(origin.getLatitude(), origin.getLongitude(), out);
+        }
+    }
+
+    /**
+     * Finds the point closest to an origin, comparing planar distances at the origin's latitude.
+     *
+     * @param origin the origin.
+     * @return the index of the closest point, or -1 if the batch is empty.
+     * @throws IllegalArgumentException if the origin is null.
+     */
+    public int nearest(GeographicPoint origin) {
+        if (origin == null) {
+            throw new IllegalArgumentException("Origin cannot be null");
+        }
+        float lat0 = origin.getLatitude();
+        float lon0 = origin.getLongitude();
+        float cos0 = (float) Math.cos(Math.toRadians(lat0));
+        int best = -1;
+        float bestSquare = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            float dy = latitudes[i] - lat0;
+            float dx = (longitudes[i] - lon0) * cos0;
+            float square = dx * dx + dy * dy;
+            if (square < bestSquare) {
+                bestSquare = square;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // Internal operations
+
+    private void set(int index, float lat, float lon) {
+        latitudes[index] = lat;
+        longitudes[index] = lon;
+        cosLatitudes[index] = Math.cos(Math.toRadians(lat));
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No point at index " + index);
+        }
+    }
+
+    /**
+     * Great-circle distances from an origin.
+     */
+    private void haversine(float lat0, float lon0, float[] out) {
+        double radLat0 = Math.toRadians(lat0);
+        double radLon0 = Math.toRadians(lon0);
+        double cos0 = Math.cos(radLat0);
+        for (int i = 0; i < size; i++) {
+            double sinLat = Math.sin((Math.toRadians(latitudes[i]) - radLat0) / 2);
+            double sinLon = Math.sin((Math.toRadians(longitudes[i]) - radLon0) / 2);
+            double a = sinLat * sinLat + cos0 * cosLatitudes[i] * sinLon * sinLon;
+            out[i] = (float) (2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, a))));
+        }
+    }
+
+    /**
+     * Planar distances from an origin, projected at the origin's latitude.
+     */
+    private void equirectangular(float lat0, float lon0, float[] out) {
+        float kmPerDegree = (float) (EARTH_RADIUS * Math.PI / 180);
+        float kmPerLonDegree = (float) (kmPerDegree * Math.cos(Math.toRadians(lat0)));
+        for (int i = 0; i < size; i++) {
+            float dy = (latitudes[i] - lat0) * kmPerDegree;
+            float dx = (longitudes[i] - lon0) * kmPerLonDegree;
+            out[i] = (float) Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package data;
+
+/**
+ * Hand-written validators for the identifier formats. Each one accepts exactly the strings its
+ * regular expression accepts, without compiling a pattern or creating any object.
+ */
+final class IdFormat {
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Not instantiable: validation is a set of static operations.
+     */
+    private IdFormat() {
+    }
+
+    /**
+     * Checks a user account ID: {@code UA-[a-zA-Z]{1,10}-\d{1,5}}.
+     *
+     * @param id The ID.
+     * @return true if the ID is valid.
+     */
+    static boolean isUserAccount(String id) {
+        return userPart(id, 0, 10) == id.length();
+    }
+
+    /**
+     * Checks a vehicle ID: {@code VH-\d{6}-[a-zA-Z]{1,30}}.
+     *
+     * @param id The ID.
+     * @return true if the ID is valid.
+     */
+    static boolean isVehicle(String id) {
+        return vehiclePart(id, 0, 30) == id.length();
+    }
+
+    /**
+     * Checks a station ID: {@code ST-\d{5}-[a-zA-Z]{1,30}}.
+     *
+     * @param id The ID.
+     * @return true if the ID is valid.
+     */
+    static boolean isStation(String id) {
+        return stationPart(id, 0, 30) == id.length();
+    }
+
+    /**
+     * Checks a service ID: {@code UA-[a-zA-Z]+-\d{1,5}_VH-\d{6}-[a-zA-Z]+_ST-\d{5}-[a-zA-Z]+(_[1-9]\d{0,17})?}.
+     *
+     * @param id The ID.
+     * @return true if the ID is valid.
+     */
+    static boolean isService(String id) {
+        int pos = userPart(id, 0, UNBOUNDED);
+        pos = literal(id, pos, '_');
+        pos = vehiclePart(id, pos, UNBOUNDED);
+        pos = literal(id, pos, '_');
+        pos = stationPart(id, pos, UNBOUNDED);
+        if (pos < 0 || pos == id.length()) {
+            return pos == id.length();
+        }
+        pos = literal(id, pos, '_');
+        if (pos < 0 || pos == id.length() || id.charAt(pos) == '0') {
+            return false; // The sequence has no leading zeros, so each one has a single form
+        }
+        return digits(id, pos, 1, 18) == id.length();
+    }
+
+    // Internal operations
+
+    // Each step returns the position after what it matched, or -1; a step given -1 returns -1
+
+    private static int userPart(String s, int pos, int maxName) {
+        pos = prefix(s, pos, 'U', 'A');
+        pos = letters(s, pos, maxName);
+        pos = literal(s, pos, '-');
+        return digits(s, pos, 1, 5);
+    }
+
+    private static int vehiclePart(String s, int pos, int maxName) {
+        pos = prefix(s, pos, 'V', 'H');
+        pos = digits(s, pos, 6, 6);
+        pos = literal(s, pos, '-');
+        return letters(s, pos, maxName);
+    }
+
+    private static int stationPart(String s, int pos, int maxName) {
+        pos = prefix(s, pos, 'S', 'T');
+        pos = digits(s, pos, 5, 5);
+        pos = literal(s, pos, '-');
+        return letters(s, pos, maxName);
+    }
+
+    private static int prefix(String s, int pos, char first, char second) {
+        pos = literal(s, pos, first);
+        pos = literal(s, pos, second);
+        return literal(s, pos, '-');
+    }
+
+    private static int literal(String s, int pos, char c) {
+        return pos >= 0 && pos < s.length() && s.charAt(pos) == c ? pos + 1 : -1;
+    }
+
+    private static int letters(String s, int pos, int max) {
+        if (pos < 0) {
+            return -1;
+        }
+        int end = pos;
+        while (end < s.length() && isLetter(s.charAt(end))) {
+            end++;
+        }
+        return end > pos && end - pos <= max ? end : -1;
+    }
+
+    private static int digits(String s, int pos, int min, int max) {
+        if (pos < 0) {
+            return -1;
+        }
+        int end = pos;
+        while (end < s.length() && s.charAt(end) >= '0' && s.charAt(end) <= '9') {
+            end++;
+        }
+        return end - pos >= min && end - pos <= max ? end : -1;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,62 @@
+package data;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of canonical identifier instances.
+ * <p>
+ * The cache is a fixed table with one instance per slot, chosen by the hash of the ID string; a new
+ * ID overwrites whatever shared its slot. Lookups and updates are a single array access, need no
+ * lock and never grow the table. Only immutable values can be cached, since two callers asking for
+ * the same ID may get the same instance.
+ *
+ * @param <T> the type of identifier.
+ */
+final class InternCache<T> {
+
+    // Class members
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final Function<T, String> idOf;
+    private final Function<String, T> factory;
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity The number of slots, a power of two.
+     * @param idOf Returns the ID string of an instance.
+     * @param factory Validates an ID string and creates its instance.
+     */
+    InternCache(int capacity, Function<T, String> idOf, Function<String, T> factory) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.idOf = idOf;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the canonical instance for an ID, creating it if it is not cached.
+     *
+     * @param id The ID string.
+     * @return The instance.
+     * @throws IllegalArgumentException if the factory rejects the ID.
+     */
+    T intern(String id) {
+        if (id == null) {
+            return factory.apply(null); // Lets the factory report it
+        }
+        int h = id.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        T cached = slots.get(slot);
+        if (cached != null && idOf.apply(cached).equals(id)) {
+            return cached;
+        }
+        T created = factory.apply(id);
+        slots.set(slot, created);
+        return created;
+    }
+}
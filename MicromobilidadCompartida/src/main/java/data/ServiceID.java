@@ -1,16 +1,42 @@
 package data;
 
-import java.util.Objects;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * Represents a unique identifier for a service, following a specific format.
+ * <p>
+ * A service is identified by the user, vehicle and station it was started with, and by a sequence
+ * number that tells apart repeated rides of the same user on the same vehicle from the same
+ * station. The parts are kept separately, together with a 128-bit key packing their numbers, which
+ * is what hashing and comparisons use. The string form,
+ * "UA-username-max5numbers_VH-123456-name_ST-12345-name", followed by "_sequence" when the
+ * sequence is not 0, is only rendered when it is asked for.
  */
 final public class ServiceID {
 
+    private static final int CACHE_SLOTS = 4096;
+    private static final InternCache<ServiceID> CACHE = new InternCache<>(CACHE_SLOTS, ServiceID::getId, ServiceID::new);
+    private static final String FORMAT = "UA-username-max5numbers_VH-123456-name_ST-12345-name[_sequence]";
+
+    /**
+     * The parts of the identifier.
+     */
+    private final String user;
+    private final String vehicle;
+    private final String station;
+    private final long sequence;
+
     /**
-     * The identifier string for the service.
+     * The vehicle, station and user numbers and a hash of the names, packed as
+     * vehicle (20 bits), station (17 bits), user (17 bits) and names (10 bits).
      */
-    private final String id;
+    private final long keyHigh;
+
+    /**
+     * The identifier string for the service, rendered on first use.
+     */
+    private String id;
 
     /**
      * Default constructor is disabled to prevent null ServiceID creation.
@@ -25,26 +51,156 @@ final public class ServiceID {
      * Constructs a {@code ServiceID} with the specified identifier string.
      *
      * @param id the identifier string, which must follow the format:
-     *           "UA-username-max5numbers_VH-123456-name_ST-12345-name".
+     *           "UA-username-max5numbers_VH-123456-name_ST-12345-name", optionally followed by
+     *           "_sequence" with a positive sequence number of up to 18 digits.
      * @throws IllegalArgumentException if the {@code id} is null or does not match the required format.
      */
     public ServiceID(String id) {
         if (id == null) {
             throw new IllegalArgumentException("ServiceID cannot be null");
         }
-        if (!id.matches("UA-[a-zA-Z]+-\\d{1,5}_VH-\\d{6}-[a-zA-Z]+_ST-\\d{5}-[a-zA-Z]+")) {
-            throw new IllegalArgumentException("Invalid ServiceID format. Expected 'UA-username-max5numbers_VH-123456-name_ST-12345-name'");
+        if (!IdFormat.isService(id)) {
+            throw new IllegalArgumentException("Invalid ServiceID format. Expected '" + FORMAT + "'");
         }
+        int vehicleStart = id.indexOf('_') + 1;
+        int stationStart = id.indexOf('_', vehicleStart) + 1;
+        int sequenceStart = id.indexOf('_', stationStart) + 1;
+        this.user = id.substring(0, vehicleStart - 1);
+        this.vehicle = id.substring(vehicleStart, stationStart - 1);
+        this.station = sequenceStart == 0 ? id.substring(stationStart) : id.substring(stationStart, sequenceStart - 1);
+        this.sequence = sequenceStart == 0 ? 0 : Long.parseLong(id, sequenceStart, id.length(), 10);
+        this.keyHigh = pack(user, vehicle, station);
         this.id = id;
     }
 
+    private ServiceID(String user, String vehicle, String station, long sequence) {
+        this.user = user;
+        this.vehicle = vehicle;
+        this.station = station;
+        this.sequence = sequence;
+        this.keyHigh = pack(user, vehicle, station);
+    }
+
+    /**
+     * Returns a ServiceID for the given identifier, reusing a recently created instance when there is
+     * one. Equivalent to the constructor, but repeated identifiers are neither validated nor
+     * allocated again.
+     *
+     * @param id The identifier. Must adhere to the format "UA-username-max5numbers_VH-123456-name_ST-12345-name[_sequence]".
+     * @return The ServiceID.
+     * @throws IllegalArgumentException If the identifier is null or does not match the expected format.
+     */
+    public static ServiceID of(String id) {
+        return CACHE.intern(id);
+    }
+
+    /**
+     * Returns the ServiceID of a ride from its parts. The parts are already valid, so nothing is
+     * parsed or formatted.
+     *
+     * @param user The user who started the service.
+     * @param vehicle The vehicle of the service.
+     * @param station The station the service started at.
+     * @param sequence The number telling apart rides with the same parts, 0 or positive.
+     * @return The ServiceID.
+     * @throws IllegalArgumentException if a part is null or the sequence is negative.
+     */
+    public static ServiceID of(UserAccount user, VehicleID vehicle, StationID station, long sequence) {
+        if (user == null || vehicle == null || station == null) {
+            throw new IllegalArgumentException("ServiceID parts cannot be null");
+        }
+        if (sequence < 0) {
+            throw new IllegalArgumentException("ServiceID sequence cannot be negative");
+        }
+        return new ServiceID(user.getId(), vehicle.getId(), station.getId(), sequence);
+    }
+
+    /**
+     * Returns the ServiceID of a ride paired at the given time. The sequence is the pairing time in
+     * milliseconds, so both ends of a pairing that share its time build the same identifier, and a
+     * vehicle, which can only be paired once at a time, never repeats one.
+     *
+     * @param user The user who started the service.
+     * @param vehicle The vehicle of the service.
+     * @param station The station the service started at.
+     * @param pairedAt The time of the pairing.
+     * @return The ServiceID.
+     * @throws IllegalArgumentException if a part is null or the time is before 1970.
+     */
+    public static ServiceID of(UserAccount user, VehicleID vehicle, StationID station, LocalDateTime pairedAt) {
+        if (pairedAt == null) {
+            throw new IllegalArgumentException("ServiceID parts cannot be null");
+        }
+        return of(user, vehicle, station, pairedAt.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
     /**
      * Returns the identifier string of this {@code ServiceID}.
      *
      * @return the identifier string.
      */
     public String getId() {
-        return id;
+        String rendered = id;
+        if (rendered == null) { // Racing threads render the same string
+            rendered = sequence == 0 ? user + '_' + vehicle + '_' + station : user + '_' + vehicle + '_' + station + '_' + sequence;
+            id = rendered;
+        }
+        return rendered;
+    }
+
+    /**
+     * Returns the user part of the identifier.
+     *
+     * @return the user account ID.
+     */
+    public String getUserId() {
+        return user;
+    }
+
+    /**
+     * Returns the vehicle part of the identifier.
+     *
+     * @return the vehicle ID.
+     */
+    public String getVehicleId() {
+        return vehicle;
+    }
+
+    /**
+     * Returns the station part of the identifier, the station the service started at.
+     *
+     * @return the station ID.
+     */
+    public String getStationId() {
+        return station;
+    }
+
+    /**
+     * Returns the sequence number of the service.
+     *
+     * @return the sequence, 0 if the identifier has none.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the high half of the packed key: the numbers of the parts and a hash of their names.
+     * Equal identifiers have equal keys.
+     *
+     * @return the high 64 bits of the key.
+     */
+    public long getKeyHigh() {
+        return keyHigh;
+    }
+
+    /**
+     * Returns the low half of the packed key, the sequence number.
+     *
+     * @return the low 64 bits of the key.
+     */
+    public long getKeyLow() {
+        return sequence;
     }
 
     /**
@@ -58,17 +214,18 @@ final public class ServiceID {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ServiceID serviceID = (ServiceID) o;
-        return Objects.equals(id, serviceID.id);
+        return keyHigh == serviceID.keyHigh && sequence == serviceID.sequence
+                && user.equals(serviceID.user) && vehicle.equals(serviceID.vehicle) && station.equals(serviceID.station);
     }
 
     /**
-     * Returns the hash code for this {@code ServiceID}.
+     * Returns the hash code for this {@code ServiceID}, computed from the packed key.
      *
      * @return the hash code.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Long.hashCode(keyHigh ^ sequence * 0x9E3779B97F4A7C15L);
     }
 
     /**
@@ -78,8 +235,24 @@ final public class ServiceID {
      */
     @Override
     public String toString() {
-        return "ServiceID{" + "id='" + id + '\'' + '}';
+        return "ServiceID{" + "id='" + getId() + '\'' + '}';
     }
-}
 
+    // Internal operations
+
+    private static long pack(String user, String vehicle, String station) {
+        long names = (user.hashCode() * 31L + vehicle.hashCode()) * 31 + station.hashCode();
+        return number(vehicle, 3, 9) << 44
+                | number(station, 3, 8) << 27
+                | number(user, user.lastIndexOf('-') + 1, user.length()) << 10
+                | (names ^ names >>> 10 ^ names >>> 20) & 0x3FF;
+    }
 
+    private static long number(String s, int from, int to) {
+        long n = 0;
+        for (int i = from; i < to; i++) {
+            n = n * 10 + (s.charAt(i) - '0');
+        }
+        return n;
+    }
+}
@@ -13,6 +13,9 @@ import java.util.Objects;
  */
 final public class StationID {
 
+    private static final int CACHE_SLOTS = 4096;
+    private static final InternCache<StationID> CACHE = new InternCache<>(CACHE_SLOTS, StationID::getId, StationID::new);
+
     private final String id;
 
     /**
@@ -34,13 +37,26 @@ final public class StationID {
         if (id == null) {
             throw new IllegalArgumentException("StationID cannot be null");
         }
-        // Regex for validation: ST-12345-name
-        if (!id.matches("ST-\\d{5}-[a-zA-Z]{1,30}")) {
+        // Format: ST-12345-name
+        if (!IdFormat.isStation(id)) {
             throw new IllegalArgumentException("Invalid StationID format. Expected 'ST-12345-name'");
         }
         this.id = id;
     }
 
+    /**
+     * Returns a StationID for the given identifier, reusing a recently created instance when there is
+     * one. Equivalent to the constructor, but repeated identifiers are neither validated nor
+     * allocated again.
+     *
+     * @param id The identifier. Must adhere to the format "ST-12345-name".
+     * @return The StationID.
+     * @throws IllegalArgumentException If the identifier is null or does not match the expected format.
+     */
+    public static StationID of(String id) {
+        return CACHE.intern(id);
+    }
+
     /**
      * Gets the ID of the station.
      *
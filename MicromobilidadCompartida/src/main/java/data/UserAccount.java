@@ -32,8 +32,7 @@ final public class UserAccount {
             throw new IllegalArgumentException("Id cannot be null");
         }
 
-        // Regex -> https://regex101.com/
-        if (!id.matches("UA-[a-zA-Z]{1,10}-\\d{1,5}")) {
+        if (!IdFormat.isUserAccount(id)) { // UA-[a-zA-Z]{1,10}-\d{1,5}
             throw new IllegalArgumentException("Invalid StationID format. Expected 'UA-username-max5numbers'");
         }
         this.id = id;
@@ -10,6 +10,9 @@ import java.util.Objects;
  */
 final public class VehicleID {
 
+    private static final int CACHE_SLOTS = 4096;
+    private static final InternCache<VehicleID> CACHE = new InternCache<>(CACHE_SLOTS, VehicleID::getId, VehicleID::new);
+
     private final String id;
 
     /**
@@ -33,12 +36,25 @@ final public class VehicleID {
         if (id == null) {
             throw new IllegalArgumentException("VehicleID cannot be null");
         }
-        if (!id.matches("VH-\\d{6}-[a-zA-Z]{1,30}")) { // Example format "VH-123456"
+        if (!IdFormat.isVehicle(id)) { // Example format "VH-123456"
             throw new IllegalArgumentException("Invalid VehicleID format. Expected 'VH-123456-name'");
         }
         this.id = id;
     }
 
+    /**
+     * Returns a VehicleID for the given identifier, reusing a recently created instance when there is
+     * one. Equivalent to the constructor, but repeated identifiers are neither validated nor
+     * allocated again.
+     *
+     * @param id The identifier. Must adhere to the format "VH-123456-name".
+     * @return The VehicleID.
+     * @throws IllegalArgumentException If the identifier is null or does not match the expected format.
+     */
+    public static VehicleID of(String id) {
+        return CACHE.intern(id);
+    }
+
     /**
      * Gets the vehicle identifier.
      *
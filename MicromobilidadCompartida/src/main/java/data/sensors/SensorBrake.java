@@ -28,6 +28,32 @@ public class SensorBrake implements SensorData {
         return "Current brake is : " + (this.braking ? "ON" : "OFF");
     }
 
+    /**
+     * Writes the braking into the snapshot, without formatting it.
+     *
+     * @param snapshot The snapshot.
+     */
+    @Override
+    public void writeTo(SensorSnapshot snapshot) {
+        snapshot.setBraking(braking);
+    }
+
+    /**
+     * Sets the braking from a non-zero value (on) or zero (off) of its snapshot slot.
+     *
+     * @param slot The slot of the value.
+     * @param value The value.
+     * @return true if the slot is {@link SensorSnapshot#BRAKE}.
+     */
+    @Override
+    public boolean update(int slot, double value) {
+        if (slot != SensorSnapshot.BRAKE) {
+            return false;
+        }
+        this.braking = value != 0;
+        return true;
+    }
+
     /**
      * Retrieves the type of the sensor.
      *
@@ -3,4 +3,24 @@ package data.sensors;
 public interface SensorData {
     public String getSensorData();
     public String getSensorType();
+
+    /**
+     * Writes the value of the sensor into its slot of a snapshot. Sensors without a slot write
+     * nothing.
+     *
+     * @param snapshot The snapshot.
+     */
+    public default void writeTo(SensorSnapshot snapshot) {
+    }
+
+    /**
+     * Sets the value of the sensor from a value of its snapshot slot.
+     *
+     * @param slot The slot of the value, such as {@link SensorSnapshot#SPEED}.
+     * @param value The value, in the units of the slot.
+     * @return true if the sensor holds that slot and took the value.
+     */
+    public default boolean update(int slot, double value) {
+        return false;
+    }
 }
@@ -27,6 +27,32 @@ public class SensorLight implements SensorData {
         return "Current light is : " + (this.light ? "ON" : "OFF");
     }
 
+    /**
+     * Writes the light into the snapshot, without formatting it.
+     *
+     * @param snapshot The snapshot.
+     */
+    @Override
+    public void writeTo(SensorSnapshot snapshot) {
+        snapshot.setLight(light);
+    }
+
+    /**
+     * Sets the light from a non-zero value (on) or zero (off) of its snapshot slot.
+     *
+     * @param slot The slot of the value.
+     * @param value The value.
+     * @return true if the slot is {@link SensorSnapshot#LIGHT}.
+     */
+    @Override
+    public boolean update(int slot, double value) {
+        if (slot != SensorSnapshot.LIGHT) {
+            return false;
+        }
+        this.light = value != 0;
+        return true;
+    }
+
     /**
      * Gets the type of the sensor.
      *
@@ -0,0 +1,151 @@
+package data.sensors;
+
+import java.util.Arrays;
+
+/**
+ * A typed view of the sensor values of a vehicle, written over a slice of a caller-supplied
+ * {@code double[]}.
+ * <p>
+ * Each value has a fixed slot: {@link #SPEED} in km/h, {@link #TEMPERATURE} in °C, and
+ * {@link #BRAKE} and {@link #LIGHT} as 1 (on) or 0 (off). A slot that no sensor wrote holds NaN.
+ * Reading a vehicle into a snapshot formats nothing and boxes nothing, and a single snapshot can be
+ * moved along a buffer holding one row of {@link #SLOTS} values per vehicle, so a whole fleet can
+ * be read without allocating.
+ */
+public final class SensorSnapshot {
+
+    public static final int SPEED = 0;
+    public static final int TEMPERATURE = 1;
+    public static final int BRAKE = 2;
+    public static final int LIGHT = 3;
+    public static final int SLOTS = 4;
+
+    // Class members
+    private double[] buffer;
+    private int offset;
+
+    /**
+     * Creates a snapshot over a buffer of its own, with every value missing.
+     */
+    public SensorSnapshot() {
+        this(new double[SLOTS], 0);
+        clear();
+    }
+
+    /**
+     * Creates a snapshot over a slice of a buffer. The buffer is not cleared.
+     *
+     * @param buffer The buffer.
+     * @param offset The index of the first slot of the slice.
+     * @throws IllegalArgumentException if the slice does not fit in the buffer.
+     */
+    public SensorSnapshot(double[] buffer, int offset) {
+        moveTo(buffer, offset);
+    }
+
+    /**
+     * Moves the snapshot to a slice of a buffer. The buffer is not cleared.
+     *
+     * @param buffer The buffer.
+     * @param offset The index of the first slot of the slice.
+     * @return This snapshot.
+     * @throws IllegalArgumentException if the slice does not fit in the buffer.
+     */
+    public SensorSnapshot moveTo(double[] buffer, int offset) {
+        if (buffer == null || offset < 0 || offset > buffer.length - SLOTS) {
+            throw new IllegalArgumentException("A snapshot needs " + SLOTS + " slots in its buffer");
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Moves the snapshot to another slice of the same buffer.
+     *
+     * @param offset The index of the first slot of the slice.
+     * @return This snapshot.
+     * @throws IllegalArgumentException if the slice does not fit in the buffer.
+     */
+    public SensorSnapshot moveTo(int offset) {
+        return moveTo(buffer, offset);
+    }
+
+    /**
+     * Marks every value as missing.
+     */
+    public void clear() {
+        Arrays.fill(buffer, offset, offset + SLOTS, Double.NaN);
+    }
+
+    /**
+     * Tells whether a sensor wrote a value.
+     *
+     * @param slot The slot, such as {@link #SPEED}.
+     * @return true if the slot holds a value.
+     * @throws IndexOutOfBoundsException if the slot is not one of the snapshot.
+     */
+    public boolean has(int slot) {
+        return !Double.isNaN(get(slot));
+    }
+
+    /**
+     * Returns the value of a slot.
+     *
+     * @param slot The slot, such as {@link #SPEED}.
+     * @return The value, or NaN if no sensor wrote it.
+     * @throws IndexOutOfBoundsException if the slot is not one of the snapshot.
+     */
+    public double get(int slot) {
+        if (slot < 0 || slot >= SLOTS) {
+            throw new IndexOutOfBoundsException("Not a sensor slot: " + slot);
+        }
+        return buffer[offset + slot];
+    }
+
+    /**
+     * @return the speed in km/h, or NaN if there is no speed sensor.
+     */
+    public double getSpeed() {
+        return buffer[offset + SPEED];
+    }
+
+    /**
+     * @return the temperature in °C, or NaN if there is no temperature sensor.
+     */
+    public double getTemperature() {
+        return buffer[offset + TEMPERATURE];
+    }
+
+    /**
+     * @return true if the brake is engaged; false if it is not or there is no brake sensor.
+     */
+    public boolean isBraking() {
+        return buffer[offset + BRAKE] == 1;
+    }
+
+    /**
+     * @return true if the light is on; false if it is off or there is no light sensor.
+     */
+    public boolean isLightOn() {
+        return buffer[offset + LIGHT] == 1;
+    }
+
+    // Written by the sensors
+
+    void setSpeed(double speed) {
+        buffer[offset + SPEED] = speed;
+    }
+
+    void setTemperature(double temperature) {
+        buffer[offset + TEMPERATURE] = temperature;
+    }
+
+    void setBraking(boolean braking) {
+        buffer[offset + BRAKE] = braking ? 1 : 0;
+    }
+
+    void setLight(boolean light) {
+        buffer[offset + LIGHT] = light ? 1 : 0;
+    }
+}
@@ -28,6 +28,32 @@ public class SensorSpeed implements SensorData {
         return "Current speed: " + speed + " km/h";
     }
 
+    /**
+     * Writes the speed into the snapshot, without formatting it.
+     *
+     * @param snapshot The snapshot.
+     */
+    @Override
+    public void writeTo(SensorSnapshot snapshot) {
+        snapshot.setSpeed(speed);
+    }
+
+    /**
+     * Sets the speed from a value of its snapshot slot.
+     *
+     * @param slot The slot of the value.
+     * @param value The value.
+     * @return true if the slot is {@link SensorSnapshot#SPEED}.
+     */
+    @Override
+    public boolean update(int slot, double value) {
+        if (slot != SensorSnapshot.SPEED) {
+            return false;
+        }
+        this.speed = value;
+        return true;
+    }
+
     /**
      * Retrieves the type of sensor.
      *
@@ -29,6 +29,32 @@ public class SensorTemperature implements SensorData {
         return "Current temperature: " + temperature + "°C";
     }
 
+    /**
+     * Writes the temperature into the snapshot, without formatting it.
+     *
+     * @param snapshot The snapshot.
+     */
+    @Override
+    public void writeTo(SensorSnapshot snapshot) {
+        snapshot.setTemperature(temperature);
+    }
+
+    /**
+     * Sets the temperature from a value of its snapshot slot.
+     *
+     * @param slot The slot of the value.
+     * @param value The value.
+     * @return true if the slot is {@link SensorSnapshot#TEMPERATURE}.
+     */
+    @Override
+    public boolean update(int slot, double value) {
+        if (slot != SensorSnapshot.TEMPERATURE) {
+            return false;
+        }
+        this.temperature = value;
+        return true;
+    }
+
     /**
      * Retrieves the type of the sensor.
      *
@@ -0,0 +1,373 @@
+package micromobility;
+
+import data.GeographicPoint;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The route of a journey, as a compact sequence of GPS fixes.
+ * <p>
+ * Positions are stored in millionths of a degree (about 10 cm) and times in milliseconds. Each fix
+ * is written as its difference from the previous one, and times as the difference from the
+ * previous interval, so a vehicle reporting at a steady rate costs nothing for the time. The
+ * differences are zig-zag encoded and written as variable-length integers, which takes one or two
+ * bytes per coordinate for a scooter reporting every second.
+ * <p>
+ * Fixes are read back with a {@link Cursor}, which decodes them in place without creating objects.
+ * The encoded bytes are what the server stores for a finished journey; {@link #decode(byte[])}
+ * turns them back into a trace.
+ */
+public class GpsTrace {
+
+    private static final double E6 = 1_000_000.0;
+    private static final double KM_PER_DEGREE = 6371 * Math.PI / 180;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Class members
+    private byte[] buffer;
+    private int length;
+    private int count;
+    private int lastLat;
+    private int lastLon;
+    private long lastMillis;
+    private long lastInterval;
+
+    /**
+     * Creates an empty trace.
+     */
+    public GpsTrace() {
+        this.buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends a fix.
+     *
+     * @param fix The position.
+     * @param timestampMillis The time of the fix, in milliseconds.
+     * @throws IllegalArgumentException if the fix is null.
+     */
+    public void append(GeographicPoint fix, long timestampMillis) {
+        if (fix == null) {
+            throw new IllegalArgumentException("Fix cannot be null");
+        }
+        append(fix.getLatitude(), fix.getLongitude(), timestampMillis);
+    }
+
+    /**
+     * Appends a fix.
+     *
+     * @param lat The latitude, in decimal degrees.
+     * @param lon The longitude, in decimal degrees.
+     * @param timestampMillis The time of the fix, in milliseconds.
+     */
+    public void append(float lat, float lon, long timestampMillis) {
+        int latE6 = (int) Math.round(lat * E6);
+        int lonE6 = (int) Math.round(lon * E6);
+        ensureCapacity(3 * 10);
+        if (count == 0) {
+            writeVarLong(zigZag(latE6));
+            writeVarLong(zigZag(lonE6));
+            writeVarLong(zigZag(timestampMillis));
+        } else {
+            long interval = timestampMillis - lastMillis;
+            writeVarLong(zigZag(latE6 - lastLat));
+            writeVarLong(zigZag(lonE6 - lastLon));
+            writeVarLong(zigZag(interval - lastInterval));
+            lastInterval = interval;
+        }
+        lastLat = latE6;
+        lastLon = lonE6;
+        lastMillis = timestampMillis;
+        count++;
+    }
+
+    /**
+     * Returns the number of fixes.
+     *
+     * @return The number of fixes.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the size of the encoded trace.
+     *
+     * @return The number of bytes.
+     */
+    public int getEncodedSize() {
+        return length;
+    }
+
+    /**
+     * Returns a copy of the encoded fixes.
+     *
+     * @return The encoded trace, {@link #getEncodedSize()} bytes long.
+     */
+    public byte[] getEncoded() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Rebuilds a trace from the bytes returned by {@link #getEncoded()}. More fixes can be appended
+     * to it.
+     *
+     * @param encoded The encoded trace.
+     * @return A new trace with the same fixes.
+     * @throws IllegalArgumentException if the bytes are null or not an encoded trace.
+     */
+    public static GpsTrace decode(byte[] encoded) {
+        if (encoded == null) {
+            throw new IllegalArgumentException("Encoded trace cannot be null");
+        }
+        GpsTrace trace = new GpsTrace();
+        trace.buffer = Arrays.copyOf(encoded, Math.max(encoded.length, 1));
+        trace.length = encoded.length;
+        trace.count = Integer.MAX_VALUE; // Read until the end of the bytes
+        Cursor cursor = trace.cursor();
+        int fixes = 0;
+        try {
+            while (cursor.next()) {
+                fixes++;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated GPS trace", e);
+        }
+        trace.count = fixes;
+        trace.lastLat = cursor.lat;
+        trace.lastLon = cursor.lon;
+        trace.lastMillis = cursor.millis;
+        trace.lastInterval = cursor.interval;
+        return trace;
+    }
+
+    /**
+     * Returns a cursor positioned before the first fix.
+     *
+     * @return The cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the fixes as points.
+     *
+     * @return The points, in order.
+     */
+    public GeographicPoint[] toPoints() {
+        GeographicPoint[] points = new GeographicPoint[count];
+        Cursor cursor = cursor();
+        for (int i = 0; cursor.next(); i++) {
+            points[i] = new GeographicPoint(cursor.getLatitude(), cursor.getLongitude());
+        }
+        return points;
+    }
+
+    /**
+     * Returns a copy of the trace without the fixes that lie within a tolerance of the route
+     * through the others, using the Douglas–Peucker algorithm. The first and last fixes are kept.
+     *
+     * @param toleranceKm The largest distance a dropped fix may be from the simplified route, in kilometres.
+     * @return The simplified trace, with its buffer trimmed.
+     * @throws IllegalArgumentException if the tolerance is negative.
+     */
+    public GpsTrace simplify(double toleranceKm) {
+        if (!(toleranceKm >= 0)) {
+            throw new IllegalArgumentException("Tolerance cannot be negative");
+        }
+        float[] lats = new float[count];
+        float[] lons = new float[count];
+        long[] times = new long[count];
+        Cursor cursor = cursor();
+        for (int i = 0; cursor.next(); i++) {
+            lats[i] = cursor.getLatitude();
+            lons[i] = cursor.getLongitude();
+            times[i] = cursor.getTimestamp();
+        }
+
+        boolean[] keep = new boolean[count];
+        if (count > 0) {
+            keep[0] = true;
+            keep[count - 1] = true;
+        }
+        double cosLat = count > 0 ? Math.cos(Math.toRadians(lats[0])) : 1;
+        int[] stack = new int[2 * Math.max(count, 1)];
+        int top = 0;
+        if (count > 2) {
+            stack[top++] = 0;
+            stack[top++] = count - 1;
+        }
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestKm = toleranceKm;
+            for (int i = first + 1; i < last; i++) {
+                double d = offsetKm(lats, lons, cosLat, first, last, i);
+                if (d > farthestKm) {
+                    farthestKm = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        GpsTrace simplified = new GpsTrace();
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                simplified.append(lats[i], lons[i], times[i]);
+            }
+        }
+        simplified.trim();
+        return simplified;
+    }
+
+    /**
+     * Releases the unused capacity of the buffer.
+     */
+    public void trim() {
+        if (buffer.length > length) {
+            buffer = Arrays.copyOf(buffer, length);
+        }
+    }
+
+    /**
+     * A forward-only reader of the fixes of a trace. It reads the fixes present when it was created.
+     */
+    public final class Cursor {
+
+        private final int end = length;
+        private final int total = count;
+        private int position;
+        private int read;
+        private int lat;
+        private int lon;
+        private long millis;
+        private long interval;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next fix.
+         *
+         * @return true if there was a next fix, false at the end of the trace.
+         */
+        public boolean next() {
+            if (read == total || position >= end) {
+                return false;
+            }
+            if (read == 0) {
+                lat = (int) unZigZag(readVarLong());
+                lon = (int) unZigZag(readVarLong());
+                millis = unZigZag(readVarLong());
+            } else {
+                lat += (int) unZigZag(readVarLong());
+                lon += (int) unZigZag(readVarLong());
+                interval += unZigZag(readVarLong());
+                millis += interval;
+            }
+            read++;
+            return true;
+        }
+
+        /**
+         * Returns the latitude of the current fix.
+         *
+         * @return The latitude, in decimal degrees.
+         * @throws NoSuchElementException if the cursor is not on a fix.
+         */
+        public float getLatitude() {
+            checkFix();
+            return (float) (lat / E6);
+        }
+
+        /**
+         * Returns the longitude of the current fix.
+         *
+         * @return The longitude, in decimal degrees.
+         * @throws NoSuchElementException if the cursor is not on a fix.
+         */
+        public float getLongitude() {
+            checkFix();
+            return (float) (lon / E6);
+        }
+
+        /**
+         * Returns the time of the current fix.
+         *
+         * @return The time, in milliseconds.
+         * @throws NoSuchElementException if the cursor is not on a fix.
+         */
+        public long getTimestamp() {
+            checkFix();
+            return millis;
+        }
+
+        private void checkFix() {
+            if (read == 0) {
+                throw new NoSuchElementException("The cursor is not on a fix");
+            }
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    // Internal operations
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Distance from a fix to the segment between two others, on a plane tangent at the trace start.
+     */
+    private static double offsetKm(float[] lats, float[] lons, double cosLat, int first, int last, int i) {
+        double ax = lons[first] * cosLat * KM_PER_DEGREE;
+        double ay = lats[first] * KM_PER_DEGREE;
+        double bx = lons[last] * cosLat * KM_PER_DEGREE - ax;
+        double by = lats[last] * KM_PER_DEGREE - ay;
+        double px = lons[i] * cosLat * KM_PER_DEGREE - ax;
+        double py = lats[i] * KM_PER_DEGREE - ay;
+        double lengthSquared = bx * bx + by * by;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * bx + py * by) / lengthSquared));
+        double dx = px - t * bx;
+        double dy = py - t * by;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
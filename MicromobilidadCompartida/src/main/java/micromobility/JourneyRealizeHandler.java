@@ -3,10 +3,12 @@ package micromobility;
 import data.*;
 import exception.*;
 import micromobility.payment.Payment;
+import micromobility.payment.PaymentRegistry;
 import micromobility.payment.Wallet;
-import micromobility.payment.WalletPayment;
+import micromobility.pricing.Tariff;
 import services.Server;
 import services.ServerMC;
+import services.WalletSettlement;
 import services.smartfeatures.ArduinoMicroController;
 import services.smartfeatures.ArduinoMicroControllerVMP;
 import services.smartfeatures.QRDecoder;
@@ -17,6 +19,7 @@ import java.net.ConnectException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles events and operations related to the realization of a journey,
@@ -29,13 +32,17 @@ public class JourneyRealizeHandler {
     private StationID stID;
     private UserAccount user;
     private PMVehicle vehicle;
-    private QRDecoder qrDecoder;
+    private QRDecoder qrDecoder = new QRDecoderVMP(); // Reused across scans; decoded stickers are cached
     private Server server;
     private ArduinoMicroController arduino;
     private GeographicPoint gp;
     private JourneyService localJourneyService;
     private Wallet wallet;
     private Payment payment;
+    private PaymentRegistry payments = PaymentRegistry.defaults();
+    private Tariff tariff = Tariff.standard();
+    private double traceToleranceKm; // Zero keeps every fix of the route
+    private WalletSettlement settlement; // Null to settle through the server
 
     /**
      * Constructs a JourneyRealizeHandler with the specified user, geographic point, and vehicle.
@@ -63,6 +70,56 @@ public class JourneyRealizeHandler {
         this.server = server;
     }
 
+    /**
+     * Sets the tariff journeys are priced with.
+     *
+     * @param tariff The tariff to set.
+     */
+    public void setTariff(Tariff tariff) {
+        this.tariff = tariff;
+    }
+
+    /**
+     * Sets the tolerance used to simplify the route of a journey when it ends.
+     *
+     * @param toleranceKm The tolerance, in kilometres. Zero keeps every fix.
+     * @throws IllegalArgumentException if the tolerance is negative.
+     */
+    public void setTraceTolerance(double toleranceKm) {
+        if (!(toleranceKm >= 0)) {
+            throw new IllegalArgumentException("Tolerance cannot be negative");
+        }
+        this.traceToleranceKm = toleranceKm;
+    }
+
+    /**
+     * Sets the registry the payment methods are selected from.
+     *
+     * @param payments The payment registry to set.
+     */
+    public void setPaymentRegistry(PaymentRegistry payments) {
+        this.payments = payments;
+    }
+
+    /**
+     * Sets the settlement pipeline used by {@link #selectPaymentMethodAsync(char)} instead of the
+     * server's.
+     *
+     * @param settlement The settlement pipeline to set.
+     */
+    public void setSettlement(WalletSettlement settlement) {
+        this.settlement = settlement;
+    }
+
+    /**
+     * Sets the decoder used to read the vehicle QR code.
+     *
+     * @param qrDecoder The QR decoder to set.
+     */
+    public void setQRDecoder(QRDecoder qrDecoder) {
+        this.qrDecoder = qrDecoder;
+    }
+
     /**
      * Sets the Arduino microcontroller for the journey.
      *
@@ -138,7 +195,6 @@ public class JourneyRealizeHandler {
      * @throws ProceduralException If a procedural issue occurs during the process.
      */
     public void scanQR() throws ConnectException, InvalidPairingArgsException, CorruptedImgException, PMVNotAvailException, ProceduralException {
-        qrDecoder = new QRDecoderVMP();
         VehicleID vehicleID = qrDecoder.getVehicleID(vehicle.getQRCode());
         vehicle.setId(vehicleID);
         server.checkPMVAvail(vehicleID);
@@ -148,10 +204,10 @@ public class JourneyRealizeHandler {
             throw new ProceduralException("Bluetooth connection could not be completed");
         }
 
-        ServiceID serviceId = new ServiceID(String.format("%s_%s_%s", user.getId(), vehicleID.getId(), stID.getId()));
-        localJourneyService = new JourneyService(serviceId, this.gp);
+        LocalDateTime now = LocalDateTime.now(); // Shared with the server, so both build the same ServiceID
+        localJourneyService = new JourneyService(ServiceID.of(user, vehicleID, stID, now), this.gp);
 
-        server.registerPairing(user, vehicleID, stID, gp, LocalDateTime.now());
+        server.registerPairing(user, vehicleID, stID, gp, now);
         vehicle.setNotAvailb();
     }
 
@@ -175,10 +231,12 @@ public class JourneyRealizeHandler {
         localJourneyService.setEndPoint(vehicle.getLocation());
         localJourneyService.setEndDate(LocalDateTime.now());
         localJourneyService.setEndHour(LocalTime.now());
+        localJourneyService.setEndStation(stID);
         vehicle.setLocation(gp);
         calculateValues(vehicle.getLocation(), LocalDateTime.now());
+        localJourneyService.finishTrace(traceToleranceKm);
         calculateImport(localJourneyService.getDistance(), localJourneyService.getDuration(), localJourneyService.getAvgSpeed(), localJourneyService.getEndDate());
-        server.stopPairing(user, vehicle.getId(), stID, vehicle.getLocation(), localJourneyService.getEndDate(), localJourneyService.getAvgSpeed(), localJourneyService.getDistance(), localJourneyService.getDuration(), localJourneyService.getImportCost());
+        server.stopPairing(user, vehicle.getId(), stID, vehicle.getLocation(), localJourneyService.getEndDate(), localJourneyService.getAvgSpeed(), localJourneyService.getDistance(), localJourneyService.getDuration(), localJourneyService.getImportCost(), localJourneyService.getTrace());
         vehicle.setAvailb();
         localJourneyService.setServiceFinish();
     }
@@ -215,6 +273,7 @@ public class JourneyRealizeHandler {
 
         vehicle.setUnderWay();
         localJourneyService.setOriginPoint(vehicle.getLocation());
+        localJourneyService.addLocationFix(vehicle.getLocation(), System.currentTimeMillis());
         localJourneyService.setInitDate(LocalDateTime.now());
         localJourneyService.setInitHour(LocalTime.now());
         localJourneyService.setServiceInit();
@@ -238,6 +297,26 @@ public class JourneyRealizeHandler {
         }
     }
 
+    /**
+     * Records a GPS fix of the vehicle while it is being driven. The vehicle is moved to the fix and
+     * the fix is added to the path of the journey.
+     *
+     * @param fix The position of the vehicle.
+     * @param timestampMillis The time of the fix, in milliseconds.
+     * @return True if the fix was added to the path, false if it was rejected as an outlier.
+     * @throws ProceduralException If the vehicle is not being driven.
+     */
+    public boolean registerLocationFix(GeographicPoint fix, long timestampMillis) throws ProceduralException {
+        if (vehicle.getState() != PMVState.UNDER_WAY) {
+            throw new ProceduralException("Vehicle is not being driven");
+        }
+        if (fix == null) {
+            throw new ProceduralException("Location fix cannot be null");
+        }
+        vehicle.setLocation(fix);
+        return localJourneyService.addLocationFix(fix, timestampMillis);
+    }
+
     /**
      * Selects the payment method based on the user's input and processes the payment.
      *
@@ -247,28 +326,43 @@ public class JourneyRealizeHandler {
      * @throws ConnectException If there is a connection issue.
      */
     public void selectPaymentMethod(char opt) throws ProceduralException, NotEnoughWalletException, ConnectException {
-        switch (opt) {
-            case 'C':
-                throw new ProceduralException("Pay method is not developed yet");
-            case 'B':
-                throw new ProceduralException("Pay method is not developed yet");
-            case 'P':
-                throw new ProceduralException("Pay method is not developed yet");
-            case 'W':
-                wallet = user.getUserWallet();
-                payment = new WalletPayment(wallet);
-                break;
-            default:
-                throw new ProceduralException("Pay method not valid. Only C, B, P, or W");
-        }
+        payment = payments.get(opt);
+        wallet = user.getUserWallet();
 
         realizePayment(localJourneyService.getImportCost());
     }
 
+    /**
+     * Charges the journey without blocking the caller. Wallet charges are settled by the server
+     * through {@link Server#settleWalletPayment}, or by the pipeline given to
+     * {@link #setSettlement}; other methods are handed to their processor's
+     * {@link Payment#processPaymentAsync}.
+     *
+     * @param opt The selected payment option: 'C' for Credit, 'B' for Bizum, 'P' for PayPal, 'W' for Wallet.
+     * @return A future completed once the payment is recorded, or completed exceptionally with
+     *         {@link ProceduralException}, {@link NotEnoughWalletException} or {@link ConnectException}.
+     */
+    public CompletableFuture<Void> selectPaymentMethodAsync(char opt) {
+        try {
+            payment = payments.get(opt);
+        } catch (ProceduralException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!payment.settlesThroughWallet(user)) {
+            return payment.processPaymentAsync(user, localJourneyService.getImportCost());
+        }
+        wallet = user.getUserWallet();
+        if (settlement == null) {
+            return server.settleWalletPayment(localJourneyService.getServiceID(), user, localJourneyService.getImportCost());
+        }
+        return settlement.submit(user, localJourneyService.getServiceID(), localJourneyService.getImportCost());
+    }
+
     // Internal operations
 
     /**
-     * Calculates the journey values such as duration, distance, and average speed.
+     * Calculates the journey values such as duration, distance, and average speed. The distance is
+     * the path through the location fixes received while driving, up to the destination.
      *
      * @param gP The geographic point representing the destination.
      * @param date The end date of the journey.
@@ -277,7 +371,13 @@ public class JourneyRealizeHandler {
         localJourneyService.setDuration((int) Duration.between(localJourneyService.getInitHour(), date.toLocalTime()).toSeconds());
 
         GeographicPoint originPoint = localJourneyService.getOriginPoint();
-        localJourneyService.setDistance(originPoint.calculateDistance(gP));
+        float distance = originPoint.calculateDistance(gP);
+        Odometer odometer = localJourneyService.getOdometer();
+        if (odometer != null && odometer.getLastFix() != null) {
+            // The path through the fixes, never billed below the straight line
+            distance = Math.max(distance, odometer.getDistance() + odometer.getLastFix().calculateDistance(gP));
+        }
+        localJourneyService.setDistance(distance);
 
         long durationInMinutes = localJourneyService.getDuration();
         if (durationInMinutes > 0) {
@@ -288,7 +388,7 @@ public class JourneyRealizeHandler {
     }
 
     /**
-     * Calculates the import (cost) of the journey based on distance, duration, speed, and time of day.
+     * Calculates the import (cost) of the journey based on distance, duration, speed, day and end station.
      *
      * @param dis The distance covered during the journey.
      * @param dur The duration of the journey in seconds.
@@ -296,26 +396,7 @@ public class JourneyRealizeHandler {
      * @param date The end date of the journey.
      */
     private void calculateImport(float dis, int dur, float avSp, LocalDateTime date) {
-        BigDecimal ratePerKm = new BigDecimal("1.5");
-        BigDecimal ratePerMinute = new BigDecimal("0.5");
-        float speedPenaltyThreshold = 25.0f;
-        BigDecimal speedPenaltyRate = new BigDecimal("0.2");
-        BigDecimal weekendSurcharge = new BigDecimal("0.15");
-
-        boolean isWeekend = (date.getDayOfWeek().getValue() == 6 || date.getDayOfWeek().getValue() == 7);
-        BigDecimal baseImport = ratePerKm.multiply(BigDecimal.valueOf(dis)).add(ratePerMinute.multiply(BigDecimal.valueOf(dur)));
-
-        BigDecimal speedPenalty = BigDecimal.ZERO;
-        if (avSp > speedPenaltyThreshold) {
-            speedPenalty = baseImport.multiply(speedPenaltyRate);
-        }
-
-        BigDecimal surcharge = BigDecimal.ZERO;
-        if (isWeekend) {
-            surcharge = baseImport.multiply(weekendSurcharge);
-        }
-
-        localJourneyService.setImportCost(baseImport.add(speedPenalty).add(surcharge).setScale(2, BigDecimal.ROUND_HALF_UP));
+        localJourneyService.setImportCost(tariff.price(dis, dur, avSp, date, stID));
     }
 
     /**
@@ -323,10 +404,11 @@ public class JourneyRealizeHandler {
      *
      * @param imp The import (cost) of the journey.
      * @throws NotEnoughWalletException If there is insufficient funds in the wallet.
+     * @throws ProceduralException If the payment method is not developed.
      */
-    private void realizePayment(BigDecimal imp) throws NotEnoughWalletException {
+    private void realizePayment(BigDecimal imp) throws NotEnoughWalletException, ProceduralException {
         try {
-            payment.processPayment(imp);
+            payment.processPayment(user, imp);
         } catch (NotEnoughWalletException e) {
             throw new NotEnoughWalletException("Wallet payment failed: " + e.getMessage());
         }
@@ -2,6 +2,7 @@ package micromobility;
 
 import data.GeographicPoint;
 import data.ServiceID;
+import data.StationID;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -23,9 +24,12 @@ public class JourneyService {
     private GeographicPoint endPoint; // End point
     private LocalDateTime endDate; // End date
     private LocalTime endHour; // End time
+    private StationID endStation; // Station the journey ended at
     private BigDecimal importCost; // Total cost of the journey
     private ServiceID serviceID; // Unique service ID
     private boolean inProgress; // Service status (true = in progress)
+    private Odometer odometer; // Created on the first location fix
+    private GpsTrace trace; // Created on the first location fix
 
     /**
      * Constructs a new JourneyService.
@@ -46,6 +50,7 @@ public class JourneyService {
         this.endPoint = null; // Set when the service ends
         this.endDate = null; // Set when the service ends
         this.endHour = null; // Set when the service ends
+        this.endStation = null; // Set when the service ends
         this.importCost = new BigDecimal(0); // Initially 0
         this.inProgress = false; // Service is not started initially
     }
@@ -238,6 +243,25 @@ public class JourneyService {
         this.importCost = importCost;
     }
 
+    /**
+     * Gets the station the journey ended at. The station of the service ID is the one it started
+     * from.
+     *
+     * @return The end station, or null if the journey has not ended.
+     */
+    public StationID getEndStation() {
+        return endStation;
+    }
+
+    /**
+     * Sets the station the journey ended at.
+     *
+     * @param endStation The end station.
+     */
+    public void setEndStation(StationID endStation) {
+        this.endStation = endStation;
+    }
+
     /**
      * Gets the unique service ID.
      *
@@ -288,4 +312,72 @@ public class JourneyService {
         }
         this.inProgress = false; // Mark the service as finished
     }
+
+    /**
+     * Adds a GPS fix of the vehicle to the route and to the path travelled in this journey. Every
+     * fix is recorded in the route, outliers included.
+     *
+     * @param fix The position of the vehicle.
+     * @param timestampMillis The time of the fix, in milliseconds.
+     * @return True if the fix was accepted, false if it was rejected as an outlier.
+     * @throws IllegalArgumentException if the fix is null.
+     * @see Odometer#addFix(GeographicPoint, long)
+     */
+    public boolean addLocationFix(GeographicPoint fix, long timestampMillis) {
+        if (odometer == null) {
+            odometer = new Odometer();
+            trace = new GpsTrace();
+        }
+        trace.append(fix, timestampMillis);
+        return odometer.addFix(fix, timestampMillis);
+    }
+
+    /**
+     * Gets the odometer measuring the path travelled from the location fixes.
+     *
+     * @return The odometer, or null if no fix has been added.
+     */
+    public Odometer getOdometer() {
+        return odometer;
+    }
+
+    /**
+     * Gets the route of the journey.
+     *
+     * @return The recorded fixes, or null if no fix has been added.
+     */
+    public GpsTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Sets the route of the journey, as recorded by the vehicle.
+     *
+     * @param trace The route, or null if none was recorded.
+     */
+    public void setTrace(GpsTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Finishes the route of the journey, dropping the fixes within a tolerance of the route
+     * through the others and releasing the unused buffer.
+     *
+     * @param toleranceKm The tolerance, in kilometres. Zero keeps every fix.
+     * @throws IllegalArgumentException if the tolerance is negative.
+     * @see GpsTrace#simplify(double)
+     */
+    public void finishTrace(double toleranceKm) {
+        if (toleranceKm < 0) {
+            throw new IllegalArgumentException("Tolerance cannot be negative");
+        }
+        if (trace == null) {
+            return;
+        }
+        if (toleranceKm > 0) {
+            trace = trace.simplify(toleranceKm);
+        } else {
+            trace.trim();
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package micromobility;
+
+import data.GeographicPoint;
+
+/**
+ * Measures the path travelled by a vehicle from a stream of GPS fixes, in constant memory.
+ * <p>
+ * Only the last accepted fix is kept. A new fix adds its distance from that fix to the total when
+ * it is plausible:
+ * <ul>
+ *     <li>Fixes closer than the noise floor to the last accepted one are ignored, so the jitter of
+ *     a parked vehicle does not add up. Slow movement is still counted once it leaves the floor.</li>
+ *     <li>Fixes that would need a speed above the maximum are rejected as outliers.</li>
+ *     <li>Fixes that are not later than the last accepted one are rejected.</li>
+ * </ul>
+ * If several fixes in a row are rejected but agree with each other, it is the last accepted fix
+ * that was wrong, as when the first fix of a ride is off. The odometer then moves on to the new
+ * position without counting the jump.
+ */
+public class Odometer {
+
+    public static final float DEFAULT_MAX_SPEED_KMH = 45;
+    public static final float DEFAULT_NOISE_FLOOR_KM = 0.005f;
+
+    private static final int REANCHOR_AFTER = 3; // Consecutive consistent rejections
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+
+    // Class members
+    private final float maxSpeedKmh;
+    private final float noiseFloorKm;
+    private GeographicPoint last;
+    private long lastMillis;
+    private GeographicPoint rejected; // Last rejected fix, while rejections agree with each other
+    private long rejectedMillis;
+    private int rejections;
+    private double distanceKm;
+    private int accepted;
+    private int outliers;
+
+    /**
+     * Creates an odometer with the default maximum speed and noise floor.
+     */
+    public Odometer() {
+        this(DEFAULT_MAX_SPEED_KMH, DEFAULT_NOISE_FLOOR_KM);
+    }
+
+    /**
+     * Creates an odometer.
+     *
+     * @param maxSpeedKmh The highest plausible speed, in km/h.
+     * @param noiseFloorKm The movement below which fixes are ignored, in kilometres.
+     * @throws IllegalArgumentException if the speed is not positive or the floor is negative.
+     */
+    public Odometer(float maxSpeedKmh, float noiseFloorKm) {
+        if (!(maxSpeedKmh > 0) || !(noiseFloorKm >= 0)) {
+            throw new IllegalArgumentException("Odometer limits must be positive");
+        }
+        this.maxSpeedKmh = maxSpeedKmh;
+        this.noiseFloorKm = noiseFloorKm;
+    }
+
+    /**
+     * Adds a GPS fix. Every fix is either accepted or rejected, and counted as such: a fix is
+     * accepted if it moved the odometer, if it is within the noise floor of the last accepted one,
+     * or if it agrees with the fixes rejected before it and the odometer moves on to it.
+     *
+     * @param fix The position.
+     * @param timestampMillis The time of the fix, in milliseconds.
+     * @return true if the fix was accepted, false if it was rejected as an outlier.
+     * @throws IllegalArgumentException if the fix is null.
+     */
+    public boolean addFix(GeographicPoint fix, long timestampMillis) {
+        if (fix == null) {
+            throw new IllegalArgumentException("Fix cannot be null");
+        }
+        if (last == null) {
+            anchor(fix, timestampMillis);
+            return accept();
+        }
+
+        float step = last.calculateDistance(fix);
+        if (step < noiseFloorKm && timestampMillis >= lastMillis) {
+            rejections = 0;
+            return accept(); // Not moved, or not enough to tell
+        }
+        if (plausible(step, timestampMillis - lastMillis)) {
+            distanceKm += step;
+            anchor(fix, timestampMillis);
+            return accept();
+        }
+
+        if (rejections > 0 && plausible(rejected.calculateDistance(fix), timestampMillis - rejectedMillis)) {
+            if (++rejections >= REANCHOR_AFTER) {
+                anchor(fix, timestampMillis); // The fixes agree: the anchor was the outlier
+                return accept();
+            }
+        } else {
+            rejections = 1;
+        }
+        rejected = fix;
+        rejectedMillis = timestampMillis;
+        outliers++;
+        return false;
+    }
+
+    /**
+     * Returns the path travelled through the accepted fixes.
+     *
+     * @return The distance, in kilometres.
+     */
+    public float getDistance() {
+        return (float) distanceKm;
+    }
+
+    /**
+     * Returns the last accepted fix.
+     *
+     * @return The position, or null if no fix was added.
+     */
+    public GeographicPoint getLastFix() {
+        return last;
+    }
+
+    /**
+     * Returns the number of fixes accepted, as reported by {@link #addFix}.
+     *
+     * @return The number of fixes.
+     */
+    public int getAcceptedFixes() {
+        return accepted;
+    }
+
+    /**
+     * Returns the number of fixes rejected as outliers, as reported by {@link #addFix}. Together
+     * with the accepted ones they add up to every fix added.
+     *
+     * @return The number of fixes.
+     */
+    public int getRejectedFixes() {
+        return outliers;
+    }
+
+    // Internal operations
+
+    private void anchor(GeographicPoint fix, long timestampMillis) {
+        last = fix;
+        lastMillis = timestampMillis;
+        rejected = null;
+        rejections = 0;
+    }
+
+    private boolean accept() {
+        accepted++;
+        return true;
+    }
+
+    private boolean plausible(float stepKm, long elapsedMillis) {
+        return elapsedMillis > 0 && stepKm <= maxSpeedKmh * (elapsedMillis / MILLIS_PER_HOUR);
+    }
+}
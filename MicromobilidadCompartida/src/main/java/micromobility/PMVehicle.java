@@ -6,25 +6,45 @@ import data.sensors.*;
 import exception.CorruptedImgException;
 import services.smartfeatures.QRDecoderVMP;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents a Personal Mobility Vehicle (PMVehicle) with various attributes
  * such as state, location, charge level, and sensors data.
+ * <p>
+ * The vehicle state is held in an atomic reference, so conditional transitions such as
+ * {@link #tryNotAvailb()} are lock-free and succeed for exactly one caller. Registered
+ * {@link ChangeListener}s are told about every change of state or location, so indexes over the
+ * fleet can follow the vehicles without polling them.
  */
 public class PMVehicle {
+
+    /**
+     * Receives the changes of state and location of a vehicle.
+     */
+    public interface ChangeListener {
+        /**
+         * Called after the state or the location of a vehicle has changed, in the thread that
+         * changed it. Listeners should read the current values from the vehicle.
+         *
+         * @param vehicle the vehicle that changed.
+         */
+        void onVehicleChanged(PMVehicle vehicle);
+    }
+
     // Class Members
     private VehicleID id;
-    private PMVState state;
-    private GeographicPoint location;
+    private final AtomicReference<PMVState> state;
+    private volatile GeographicPoint location;
     final ArrayList<SensorData> sensorsData;
     private double chargeLevel; // Battery charge level as a percentage (0.0 to 100.0)
-    private BufferedImage QRCode; // QR code image for the vehicle
-    private String QRPathFile;
+    private BufferedImage QRCode; // QR code image set directly
+    private String QRPathFile; // Classpath resource of the QR code, loaded on first use
+    private final CopyOnWriteArrayList<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final long[] sensorTimes = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE}; // Per snapshot slot
 
     /**
      * Default constructor. Throws an exception because an ID must be provided.
@@ -43,7 +63,7 @@ public class PMVehicle {
      * @param chargeLevel the initial battery charge level (0.0 to 100.0).
      */
     public PMVehicle(PMVState initialState, GeographicPoint initialLocation, double chargeLevel) {
-        this.state = initialState;
+        this.state = new AtomicReference<>(initialState);
         this.location = initialLocation;
         this.chargeLevel = chargeLevel;
 
@@ -63,7 +83,7 @@ public class PMVehicle {
      * @param sensorsData a list of sensors data associated with the vehicle.
      */
     public PMVehicle(PMVState initialState, GeographicPoint initialLocation, double chargeLevel, ArrayList<SensorData> sensorsData) {
-        this.state = initialState;
+        this.state = new AtomicReference<>(initialState);
         this.location = initialLocation;
         this.sensorsData = sensorsData;
         this.chargeLevel = chargeLevel;
@@ -84,7 +104,7 @@ public class PMVehicle {
      * @return the state of the vehicle.
      */
     public PMVState getState() {
-        return state;
+        return state.get();
     }
 
     /**
@@ -97,11 +117,15 @@ public class PMVehicle {
     }
 
     /**
-     * Gets the QR code image of the vehicle.
+     * Gets the QR code image of the vehicle. An image set from a resource is loaded on the first
+     * call and shared with the other vehicles using the same resource, so it must not be modified.
      *
-     * @return the QR code image.
+     * @return the QR code image, or null if none was set.
      */
     public BufferedImage getQRCode() {
+        if (QRCode == null && QRPathFile != null) {
+            return QRImageCache.get(QRPathFile);
+        }
         return QRCode;
     }
 
@@ -120,11 +144,73 @@ public class PMVehicle {
      * @return a string containing all sensor data.
      */
     public String getSensorsData() {
-        String results = "";
+        StringBuilder results = new StringBuilder();
         for (SensorData sensorData : this.sensorsData) {
-            results += String.format("%s: %s\n", sensorData.getSensorType(), sensorData.getSensorData());
+            results.append(sensorData.getSensorType()).append(": ").append(sensorData.getSensorData()).append('\n');
+        }
+        return results.toString();
+    }
+
+    /**
+     * Reads the sensor values into a snapshot, as numbers. Nothing is formatted or allocated, so
+     * telemetry can read the fleet at a high rate with a single reused snapshot.
+     *
+     * @param snapshot the snapshot to write into. Values of sensors the vehicle lacks are cleared.
+     * @return the snapshot.
+     * @throws IllegalArgumentException if the snapshot is null.
+     */
+    public SensorSnapshot readSensors(SensorSnapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot cannot be null");
+        }
+        snapshot.clear();
+        for (int i = 0; i < sensorsData.size(); i++) { // Indexed, so no iterator is created
+            sensorsData.get(i).writeTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Sets the value of one sensor from a timestamped reading, unless the sensor already holds a
+     * newer one. Readings may arrive out of order from the vehicles, so only the latest is kept.
+     * <p>
+     * Meant to be called by a single thread, such as the sensor ingestion pipeline.
+     *
+     * @param slot the slot of the reading, such as {@link SensorSnapshot#SPEED}.
+     * @param value the value, in the units of the slot.
+     * @param timestamp the time the reading was taken, in epoch milliseconds.
+     * @return true if a sensor took the value; false if the reading is older than the one held or
+     *         the vehicle has no sensor for that slot.
+     * @throws IllegalArgumentException if the slot is not a sensor slot.
+     */
+    public boolean updateSensor(int slot, double value, long timestamp) {
+        if (slot < 0 || slot >= SensorSnapshot.SLOTS) {
+            throw new IllegalArgumentException("Not a sensor slot: " + slot);
         }
-        return results;
+        if (timestamp < sensorTimes[slot]) {
+            return false;
+        }
+        for (int i = 0; i < sensorsData.size(); i++) {
+            if (sensorsData.get(i).update(slot, value)) {
+                sensorTimes[slot] = timestamp;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the time of the latest reading of a sensor taken by {@link #updateSensor}.
+     *
+     * @param slot the slot of the sensor, such as {@link SensorSnapshot#SPEED}.
+     * @return the time in epoch milliseconds, or {@link Long#MIN_VALUE} if no reading was taken.
+     * @throws IllegalArgumentException if the slot is not a sensor slot.
+     */
+    public long getSensorTimestamp(int slot) {
+        if (slot < 0 || slot >= SensorSnapshot.SLOTS) {
+            throw new IllegalArgumentException("Not a sensor slot: " + slot);
+        }
+        return sensorTimes[slot];
     }
 
     /**
@@ -137,50 +223,71 @@ public class PMVehicle {
     }
 
     /**
-     * Sets the QR code image from a file path.
+     * Sets the QR code image from a file path. The image is only read when it is first asked
+     * for; a resource that cannot be read gives a blank image.
      *
      * @param QRPathFile the path to the QR code image file.
      */
     public void setQRCode(String QRPathFile) {
-        InputStream imageInputStream = PMVehicle.class.getClassLoader().getResourceAsStream(QRPathFile);
-        if (imageInputStream != null) {
-            try {
-                this.QRCode = ImageIO.read(imageInputStream);
-            } catch (IOException e) {
-                QRCode = null;
-            }
-        }
-        if (this.QRCode == null) {
-            this.QRCode = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB); // Dummy QR code
-        }
+        this.QRPathFile = QRPathFile;
+        this.QRCode = null;
     }
 
     /**
      * Sets the vehicle state to "NOT_AVAILABLE".
      */
     public void setNotAvailb() {
-        this.state = PMVState.NOT_AVAILABLE;
+        this.state.set(PMVState.NOT_AVAILABLE);
+        fireChanged();
     }
 
     /**
      * Sets the vehicle state to "UNDER_WAY".
      */
     public void setUnderWay() {
-        this.state = PMVState.UNDER_WAY;
+        this.state.set(PMVState.UNDER_WAY);
+        fireChanged();
     }
 
     /**
      * Sets the vehicle state to "AVAILABLE".
      */
     public void setAvailb() {
-        this.state = PMVState.AVAILABLE;
+        this.state.set(PMVState.AVAILABLE);
+        fireChanged();
     }
 
     /**
      * Sets the vehicle state to "TEMPORARY_PARKING".
      */
     public void setTemporaryParking() {
-        this.state = PMVState.TEMPORARY_PARKING;
+        this.state.set(PMVState.TEMPORARY_PARKING);
+        fireChanged();
+    }
+
+    /**
+     * Atomically moves the vehicle from {@code expected} to {@code next}.
+     *
+     * @param expected the state the vehicle must currently be in.
+     * @param next the state to move to.
+     * @return true if the transition was applied, false if the vehicle was not in the expected state.
+     */
+    public boolean compareAndSetState(PMVState expected, PMVState next) {
+        if (!this.state.compareAndSet(expected, next)) {
+            return false;
+        }
+        fireChanged();
+        return true;
+    }
+
+    /**
+     * Atomically reserves the vehicle, moving it from "AVAILABLE" to "NOT_AVAILABLE".
+     * When several callers race for the same vehicle only one of them succeeds.
+     *
+     * @return true if this call reserved the vehicle, false if it was not available.
+     */
+    public boolean tryNotAvailb() {
+        return compareAndSetState(PMVState.AVAILABLE, PMVState.NOT_AVAILABLE);
     }
 
     /**
@@ -192,6 +299,7 @@ public class PMVehicle {
     public void setLocation(GeographicPoint gP) throws NullPointerException {
         if (gP == null) throw new NullPointerException("Location must be defined cannot be null");
         this.location = gP;
+        fireChanged();
     }
 
     /**
@@ -214,5 +322,39 @@ public class PMVehicle {
      */
     public void setQRCode(BufferedImage QRCode) {
         this.QRCode = QRCode;
+        this.QRPathFile = null;
+    }
+
+    /**
+     * Registers a listener for the changes of state and location of this vehicle.
+     *
+     * @param listener the listener.
+     * @throws IllegalArgumentException if the listener is null.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener.
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Internal operations
+
+    /**
+     * Tells the listeners that the vehicle has changed.
+     */
+    private void fireChanged() {
+        for (ChangeListener listener : listeners) {
+            listener.onVehicleChanged(this);
+        }
     }
 }
@@ -0,0 +1,120 @@
+package micromobility;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The QR code images of the vehicles, loaded from the classpath when they are first asked for and
+ * shared by every vehicle that names the same resource.
+ * <p>
+ * Images are kept as 1-bit packed black and white, an eighth of a byte per pixel instead of the
+ * four bytes of ARGB, which is all a QR code needs. The cache holds at most
+ * {@link #CAPACITY} images, dropping the least recently used, and holds them through soft
+ * references, so the garbage collector can reclaim them under memory pressure; an image
+ * reclaimed is read again on its next use. Images returned are shared and must not be drawn on.
+ * <p>
+ * A resource that cannot be read is remembered as missing, so scanning a vehicle without a
+ * sticker does not search the classpath again; each such call gets its own blank image.
+ */
+final class QRImageCache {
+
+    static final int CAPACITY = 256;
+
+    private static final int BLANK_SIZE = 100;
+    private static final int THRESHOLD = 128; // Luminance below which a pixel is black
+
+    private static final Map<String, SoftReference<BufferedImage>> images = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SoftReference<BufferedImage>> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    private static final SoftReference<BufferedImage> MISSING = new SoftReference<>(null); // Marks unreadable resources
+
+    /**
+     * Not instantiable: the cache is shared by the whole fleet.
+     */
+    private QRImageCache() {
+    }
+
+    /**
+     * Returns the QR code image of a classpath resource, reading it if it is not cached.
+     *
+     * @param resource The resource path.
+     * @return The image, or a new blank image if the resource cannot be read.
+     */
+    static BufferedImage get(String resource) {
+        if (resource == null) {
+            return blank();
+        }
+        synchronized (images) {
+            SoftReference<BufferedImage> cached = images.get(resource);
+            if (cached == MISSING) {
+                return blank();
+            }
+            BufferedImage image = cached == null ? null : cached.get();
+            if (image != null) {
+                return image;
+            }
+        }
+        BufferedImage image = read(resource); // Outside the lock: racing readers load the same image
+        if (image == null) {
+            synchronized (images) {
+                images.put(resource, MISSING);
+            }
+            return blank();
+        }
+        synchronized (images) {
+            SoftReference<BufferedImage> cached = images.get(resource);
+            BufferedImage winner = cached == null ? null : cached.get();
+            if (winner != null) {
+                return winner;
+            }
+            images.put(resource, new SoftReference<>(image));
+            return image;
+        }
+    }
+
+    // Internal operations
+
+    private static BufferedImage blank() {
+        return new BufferedImage(BLANK_SIZE, BLANK_SIZE, BufferedImage.TYPE_BYTE_BINARY);
+    }
+
+    private static BufferedImage read(String resource) {
+        try (InputStream in = QRImageCache.class.getClassLoader().getResourceAsStream(resource)) {
+            BufferedImage source = in == null ? null : ImageIO.read(in);
+            return source == null ? null : toBinary(source);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Packs an image to one bit per pixel, over a white background.
+     */
+    private static BufferedImage toBinary(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        BufferedImage binary = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = binary.getRaster();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            source.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int alpha = argb >>> 24;
+                int luminance = (299 * ((argb >> 16) & 0xFF) + 587 * ((argb >> 8) & 0xFF) + 114 * (argb & 0xFF)) / 1000;
+                luminance = (luminance * alpha + 255 * (255 - alpha)) / 255; // Transparent is white
+                raster.setSample(x, y, 0, luminance < THRESHOLD ? 0 : 1);
+            }
+        }
+        return binary;
+    }
+}
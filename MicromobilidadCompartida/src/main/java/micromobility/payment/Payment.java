@@ -1,11 +1,21 @@
 package micromobility.payment;
 
+import data.UserAccount;
 import exception.NotEnoughWalletException;
+import exception.ProceduralException;
 
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Represents an abstract base class for processing payments in the micromobility system.
+ * <p>
+ * Besides the amount-only {@link #processPayment(BigDecimal)}, a payment method can charge any
+ * user through {@link #processPayment(UserAccount, BigDecimal)}, so a single stateless instance can
+ * be registered in a {@link PaymentRegistry} and shared by every journey.
  */
 public abstract class Payment {
 
@@ -20,8 +30,68 @@ public abstract class Payment {
      *
      * @param imp the amount to process as a {@code BigDecimal}.
      * @throws NotEnoughWalletException if there are insufficient funds in the wallet to complete the payment.
+     * @throws ProceduralException if the payment method cannot be used, or needs the user to charge.
      */
-    public abstract void processPayment(BigDecimal imp) throws NotEnoughWalletException;
+    public abstract void processPayment(BigDecimal imp) throws NotEnoughWalletException, ProceduralException;
 
-}
+    /**
+     * Charges a user the specified amount.
+     *
+     * @param user the user to charge.
+     * @param imp the amount to process as a {@code BigDecimal}.
+     * @throws NotEnoughWalletException if there are insufficient funds in the wallet to complete the payment.
+     * @throws ProceduralException if the payment method cannot be used.
+     */
+    public abstract void processPayment(UserAccount user, BigDecimal imp) throws NotEnoughWalletException, ProceduralException;
 
+    /**
+     * Tells whether charging the user is a deduction from the user's own wallet, which is then left
+     * to the wallet settlement pipeline instead of this processor.
+     *
+     * @param user the user to charge.
+     * @return false; wallet payment methods override it.
+     */
+    public boolean settlesThroughWallet(UserAccount user) {
+        return false;
+    }
+
+    /**
+     * Charges a user the specified amount on the common fork/join pool.
+     *
+     * @param user the user to charge.
+     * @param imp the amount to process as a {@code BigDecimal}.
+     * @return a future completed when the payment is done, or completed exceptionally with the
+     *         failure of {@link #processPayment(UserAccount, BigDecimal)}.
+     */
+    public CompletableFuture<Void> processPaymentAsync(UserAccount user, BigDecimal imp) {
+        return processPaymentAsync(user, imp, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Charges a user the specified amount on an executor, so a slow payment gateway does not block
+     * the caller.
+     *
+     * @param user the user to charge.
+     * @param imp the amount to process as a {@code BigDecimal}.
+     * @param executor the executor to run the payment on.
+     * @return a future completed when the payment is done, or completed exceptionally with the
+     *         failure of {@link #processPayment(UserAccount, BigDecimal)}, or with
+     *         {@link RejectedExecutionException} if the executor does not take the payment.
+     */
+    public CompletableFuture<Void> processPaymentAsync(UserAccount user, BigDecimal imp, Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    processPayment(user, imp);
+                    future.complete(null);
+                } catch (NotEnoughWalletException | ProceduralException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,114 @@
+package micromobility.payment;
+
+import exception.ProceduralException;
+
+/**
+ * Registry of the payment methods available to riders, keyed by their one-letter method code.
+ * <p>
+ * Processors are registered once and shared: each one charges the user it is given, so selecting a
+ * payment method at the end of a journey is a single array lookup and creates no objects. New
+ * methods are plugged in with {@link #register(char, Payment)} without touching the journey code.
+ */
+public class PaymentRegistry {
+
+    private static final int CODES = 128; // ASCII method codes
+
+    private static final PaymentRegistry DEFAULTS = createDefaults();
+
+    // Class members
+    private volatile Payment[] methods = new Payment[CODES]; // Copied on register, so lookups need no lock
+    private String order = ""; // Codes in the order they were first registered
+
+    /**
+     * Constructs an empty registry.
+     */
+    public PaymentRegistry() {
+    }
+
+    /**
+     * Returns the shared registry with the standard methods: 'W' for Wallet, and stand-ins for
+     * 'C' Credit, 'B' Bizum and 'P' PayPal.
+     *
+     * @return the default registry.
+     */
+    public static PaymentRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Registers a payment method, replacing any method previously registered under the same code.
+     *
+     * @param code the method code.
+     * @param method the payment method.
+     * @throws IllegalArgumentException if the code is not ASCII or the method is null.
+     */
+    public synchronized void register(char code, Payment method) {
+        if (code >= CODES || method == null) {
+            throw new IllegalArgumentException("A payment method needs an ASCII code and a processor");
+        }
+        Payment[] updated = methods.clone();
+        if (updated[code] == null) {
+            order += code;
+        }
+        updated[code] = method;
+        methods = updated;
+    }
+
+    /**
+     * Returns the payment method registered under a code.
+     *
+     * @param code the method code.
+     * @return the payment method.
+     * @throws ProceduralException if no method is registered under the code.
+     */
+    public Payment get(char code) throws ProceduralException {
+        Payment method = code < CODES ? methods[code] : null;
+        if (method == null) {
+            throw new ProceduralException("Pay method not valid. Only " + codes());
+        }
+        return method;
+    }
+
+    /**
+     * Checks whether a payment method is registered under a code.
+     *
+     * @param code the method code.
+     * @return true if a method is registered.
+     */
+    public boolean contains(char code) {
+        return code < CODES && methods[code] != null;
+    }
+
+    // Internal operations
+
+    /**
+     * Builds the shared registry with the standard methods.
+     *
+     * @return the registry.
+     */
+    private static PaymentRegistry createDefaults() {
+        PaymentRegistry registry = new PaymentRegistry();
+        registry.register('C', new UnavailablePayment("Credit card"));
+        registry.register('B', new UnavailablePayment("Bizum"));
+        registry.register('P', new UnavailablePayment("PayPal"));
+        registry.register('W', new UserWalletPayment());
+        return registry;
+    }
+
+    /**
+     * Lists the registered codes for error messages in the order they were registered, as in
+     * "C, B, P, or W".
+     *
+     * @return the registered codes.
+     */
+    private synchronized String codes() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < order.length(); i++) {
+            if (i > 0) {
+                sb.append(i == order.length() - 1 ? ", or " : ", ");
+            }
+            sb.append(order.charAt(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package micromobility.payment;
+
+import data.UserAccount;
+import exception.ProceduralException;
+
+import java.math.BigDecimal;
+
+/**
+ * Stand-in for a payment method whose gateway is not integrated yet, such as credit card, Bizum
+ * or PayPal. It keeps a slot in the {@link PaymentRegistry} so the method is recognised, and
+ * rejects every charge until a real processor is registered in its place.
+ */
+public class UnavailablePayment extends Payment {
+
+    // Class members
+    private final String name;
+
+    /**
+     * Constructs a stand-in for the named payment method.
+     *
+     * @param name the name of the payment method.
+     * @throws IllegalArgumentException if the name is null.
+     */
+    public UnavailablePayment(String name) {
+        super();
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        this.name = name;
+    }
+
+    /**
+     * Always fails, as the payment method is not available.
+     *
+     * @param imp the amount to process.
+     * @throws ProceduralException always.
+     */
+    @Override
+    public void processPayment(BigDecimal imp) throws ProceduralException {
+        throw new ProceduralException("Pay method is not developed yet");
+    }
+
+    /**
+     * Always fails, as the payment method is not available.
+     *
+     * @param user the user to charge.
+     * @param imp the amount to process.
+     * @throws ProceduralException always.
+     */
+    @Override
+    public void processPayment(UserAccount user, BigDecimal imp) throws ProceduralException {
+        throw new ProceduralException("Pay method is not developed yet");
+    }
+
+    /**
+     * Returns the name of the payment method.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,55 @@
+package micromobility.payment;
+
+import data.UserAccount;
+import exception.NotEnoughWalletException;
+import exception.ProceduralException;
+
+import java.math.BigDecimal;
+
+/**
+ * Wallet payment that is not bound to a wallet: it charges the wallet of the user it is given, so
+ * a single instance is shared by every rider through the {@link PaymentRegistry}.
+ */
+public class UserWalletPayment extends Payment {
+
+    /**
+     * Constructs a wallet payment shared by every user.
+     */
+    public UserWalletPayment() {
+        super();
+    }
+
+    /**
+     * Always fails: there is no wallet to charge without a user.
+     *
+     * @param imp the amount to process.
+     * @throws ProceduralException always; use {@link #processPayment(UserAccount, BigDecimal)}.
+     */
+    @Override
+    public void processPayment(BigDecimal imp) throws ProceduralException {
+        throw new ProceduralException("Wallet payment needs the user to charge");
+    }
+
+    /**
+     * Processes a payment by deducting the specified amount from the user's wallet.
+     *
+     * @param user the user to charge.
+     * @param imp the amount to be deducted from the wallet.
+     * @throws NotEnoughWalletException if the wallet balance is insufficient to cover the payment.
+     */
+    @Override
+    public void processPayment(UserAccount user, BigDecimal imp) throws NotEnoughWalletException {
+        user.getUserWallet().deduct(imp);
+    }
+
+    /**
+     * Always true: every charge is a deduction from the user's wallet.
+     *
+     * @param user the user to charge.
+     * @return true.
+     */
+    @Override
+    public boolean settlesThroughWallet(UserAccount user) {
+        return true;
+    }
+}
@@ -3,66 +3,135 @@ package micromobility.payment;
 import exception.NotEnoughWalletException;
 
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a wallet for managing funds in the micromobility system.
+ * <p>
+ * The balance is held as a number of cents in an {@link AtomicLong}. Top-ups and charges are
+ * compare-and-set loops, so concurrent operations on the same wallet never lose an update, and the
+ * cent-based methods do not allocate.
  */
 public class Wallet {
 
     /**
-     * The current balance of the wallet.
+     * The current balance of the wallet, in cents.
      */
-    private BigDecimal balance;
+    private final AtomicLong balance;
 
     /**
      * Constructs a {@code Wallet} with the specified initial balance.
      *
      * @param initialBalance the initial balance of the wallet.
-     * @throws IllegalArgumentException if the initial balance is null or negative.
+     * @throws IllegalArgumentException if the initial balance is null, negative or not a whole number of cents.
      */
     public Wallet(BigDecimal initialBalance) {
         if (initialBalance == null || initialBalance.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException("Initial balance cannot be null or negative");
         }
-        this.balance = initialBalance;
+        this.balance = new AtomicLong(toCents(initialBalance));
     }
 
     /**
      * Returns the current balance of the wallet.
      *
-     * @return the current balance as a {@code BigDecimal}.
+     * @return the current balance as a {@code BigDecimal}, without trailing decimal zeros.
      */
     public BigDecimal getBalance() {
-        return balance;
+        BigDecimal value = BigDecimal.valueOf(balance.get(), 2).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    /**
+     * Returns the current balance of the wallet in cents.
+     *
+     * @return the current balance.
+     */
+    public long getBalanceCents() {
+        return balance.get();
     }
 
     /**
      * Adds funds to the wallet.
      *
      * @param amount the amount to add.
-     * @throws IllegalArgumentException if the amount is null or less than or equal to zero.
+     * @throws IllegalArgumentException if the amount is null, less than or equal to zero or not a whole number of cents.
      */
     public void addFunds(BigDecimal amount) {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Amount to add must be greater than zero");
         }
-        balance = balance.add(amount);
+        addFundsCents(toCents(amount));
+    }
+
+    /**
+     * Adds funds to the wallet.
+     *
+     * @param cents the amount to add, in cents.
+     * @throws IllegalArgumentException if the amount is less than or equal to zero or the balance would overflow.
+     */
+    public void addFundsCents(long cents) {
+        if (cents <= 0) {
+            throw new IllegalArgumentException("Amount to add must be greater than zero");
+        }
+        long current;
+        long updated;
+        do {
+            current = balance.get();
+            if (current > Long.MAX_VALUE - cents) {
+                throw new IllegalArgumentException("Wallet balance would overflow");
+            }
+            updated = current + cents;
+        } while (!balance.compareAndSet(current, updated));
     }
 
     /**
      * Deducts a specified amount from the wallet.
      *
      * @param amount the amount to deduct.
-     * @throws IllegalArgumentException if the amount is null or less than or equal to zero.
+     * @throws IllegalArgumentException if the amount is null, less than or equal to zero or not a whole number of cents.
      * @throws NotEnoughWalletException if there are insufficient funds in the wallet to complete the deduction.
      */
     public void deduct(BigDecimal amount) throws NotEnoughWalletException {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Amount to deduct must be greater than zero");
         }
-        if (balance.compareTo(amount) < 0) {
-            throw new NotEnoughWalletException("Insufficient wallet balance");
+        deductCents(toCents(amount));
+    }
+
+    /**
+     * Deducts a specified amount from the wallet. The balance is checked and updated atomically, so
+     * concurrent charges can never take it below zero.
+     *
+     * @param cents the amount to deduct, in cents.
+     * @throws IllegalArgumentException if the amount is less than or equal to zero.
+     * @throws NotEnoughWalletException if there are insufficient funds in the wallet to complete the deduction.
+     */
+    public void deductCents(long cents) throws NotEnoughWalletException {
+        if (cents <= 0) {
+            throw new IllegalArgumentException("Amount to deduct must be greater than zero");
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current < cents) {
+                throw new NotEnoughWalletException("Insufficient wallet balance");
+            }
+        } while (!balance.compareAndSet(current, current - cents));
+    }
+
+    /**
+     * Converts an amount to cents.
+     *
+     * @param amount the amount.
+     * @return the amount in cents.
+     * @throws IllegalArgumentException if the amount has fractions of a cent or does not fit in a long.
+     */
+    private static long toCents(BigDecimal amount) {
+        try {
+            return amount.movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must be a whole number of cents", e);
         }
-        balance = balance.subtract(amount);
     }
 }
@@ -2,16 +2,18 @@ package micromobility.payment;
 
 import data.UserAccount;
 import exception.NotEnoughWalletException;
-import micromobility.JourneyService;
 
 import java.math.BigDecimal;
 
 /**
  * Represents a payment method that uses a user's wallet balance to process transactions.
+ * <p>
+ * An instance is bound to one wallet, which both overloads of {@code processPayment} charge. The
+ * processor shared by every rider in a {@link PaymentRegistry} is a {@link UserWalletPayment}.
  */
 public class WalletPayment extends Payment {
 
-    private Wallet wallet;
+    private final Wallet wallet;
 
     /**
      * Constructs a WalletPayment object using the provided wallet.
@@ -38,6 +40,31 @@ public class WalletPayment extends Payment {
         wallet.deduct(imp);
     }
 
+    /**
+     * Processes a payment by deducting the specified amount from the bound wallet, whoever the
+     * user is.
+     *
+     * @param user the user to charge.
+     * @param imp the amount to be deducted from the wallet.
+     * @throws NotEnoughWalletException if the wallet balance is insufficient to cover the payment.
+     */
+    @Override
+    public void processPayment(UserAccount user, BigDecimal imp) throws NotEnoughWalletException {
+        wallet.deduct(imp);
+    }
+
+    /**
+     * Tells whether the bound wallet is the user's own, so the charge can go through the wallet
+     * settlement pipeline.
+     *
+     * @param user the user to charge.
+     * @return true if the bound wallet belongs to the user.
+     */
+    @Override
+    public boolean settlesThroughWallet(UserAccount user) {
+        return user != null && user.getUserWallet() == wallet;
+    }
+
     /**
      * Gets the wallet associated with this payment method.
      *
@@ -0,0 +1,283 @@
+package micromobility.pricing;
+
+import micromobility.JourneyService;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Prices completed journeys again with another tariff, to simulate the effect of a pricing change
+ * on past rides.
+ * <p>
+ * Journeys are priced in parallel on a {@link ForkJoinPool}: a list is split in halves down to
+ * {@link #SPLIT_THRESHOLD} journeys, and a stream is reduced in parallel, so neither has to be
+ * copied. Each worker adds its journeys up in cents in its own {@link Report} and the reports are
+ * merged as the tasks join.
+ */
+public class Repricing {
+
+    public static final int SPLIT_THRESHOLD = 4096;
+
+    /**
+     * Not instantiable: repricing is a set of static operations.
+     */
+    private Repricing() {
+    }
+
+    /**
+     * Prices journeys with a tariff on the common pool.
+     *
+     * @param tariff The tariff.
+     * @param journeys The completed journeys.
+     * @return The totals and deltas against the price each journey was charged.
+     * @throws IllegalArgumentException If an argument is null.
+     */
+    public static Report reprice(Tariff tariff, List<JourneyService> journeys) {
+        return reprice(tariff, journeys, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Prices journeys with a tariff.
+     *
+     * @param tariff The tariff.
+     * @param journeys The completed journeys.
+     * @param pool The pool the journeys are priced on.
+     * @return The totals and deltas against the price each journey was charged.
+     * @throws IllegalArgumentException If an argument is null.
+     */
+    public static Report reprice(Tariff tariff, List<JourneyService> journeys, ForkJoinPool pool) {
+        if (tariff == null || journeys == null || pool == null) {
+            throw new IllegalArgumentException("Repricing needs a tariff, journeys and a pool");
+        }
+        return pool.invoke(new RepriceTask(tariff, journeys, 0, journeys.size()));
+    }
+
+    /**
+     * Prices a stream of journeys with a tariff on the common pool.
+     *
+     * @param tariff The tariff.
+     * @param journeys The completed journeys.
+     * @return The totals and deltas against the price each journey was charged.
+     * @throws IllegalArgumentException If an argument is null.
+     */
+    public static Report reprice(Tariff tariff, Stream<JourneyService> journeys) {
+        return reprice(tariff, journeys, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Prices a stream of journeys with a tariff. The stream is consumed.
+     *
+     * @param tariff The tariff.
+     * @param journeys The completed journeys.
+     * @param pool The pool the journeys are priced on.
+     * @return The totals and deltas against the price each journey was charged.
+     * @throws IllegalArgumentException If an argument is null.
+     */
+    public static Report reprice(Tariff tariff, Stream<JourneyService> journeys, ForkJoinPool pool) {
+        if (tariff == null || journeys == null || pool == null) {
+            throw new IllegalArgumentException("Repricing needs a tariff, journeys and a pool");
+        }
+        // A parallel stream runs on the pool of the task that consumes it
+        return pool.submit(() -> journeys.parallel().collect(
+                Report::new, (report, journey) -> report.add(tariff, journey), Report::merge)).join();
+    }
+
+    // Internal operations
+
+    /**
+     * Prices a range of a list, splitting it while it is large.
+     */
+    private static class RepriceTask extends RecursiveTask<Report> {
+        private final Tariff tariff;
+        private final List<JourneyService> journeys;
+        private final int from;
+        private final int to;
+
+        RepriceTask(Tariff tariff, List<JourneyService> journeys, int from, int to) {
+            this.tariff = tariff;
+            this.journeys = journeys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Report report = new Report();
+                for (int i = from; i < to; i++) {
+                    report.add(tariff, journeys.get(i));
+                }
+                return report;
+            }
+            int middle = (from + to) >>> 1;
+            RepriceTask right = new RepriceTask(tariff, journeys, middle, to);
+            right.fork();
+            Report report = new RepriceTask(tariff, journeys, from, middle).compute();
+            report.merge(right.join());
+            return report;
+        }
+    }
+
+    /**
+     * The result of repricing a set of journeys.
+     */
+    public static final class Report {
+
+        // Class members
+        private long count;
+        private long skipped;
+        private long chargedCents;
+        private long repricedCents;
+        private long raised;
+        private long lowered;
+        private long maxRaiseCents;
+        private long maxCutCents;
+
+        /**
+         * Constructs an empty report.
+         */
+        Report() {
+        }
+
+        /**
+         * Returns the number of journeys priced.
+         *
+         * @return The number of journeys.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the number of journeys left out because they have not ended or were never priced.
+         *
+         * @return The number of journeys.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns what the journeys were charged.
+         *
+         * @return The total, with two decimals.
+         */
+        public BigDecimal getChargedTotal() {
+            return BigDecimal.valueOf(chargedCents, 2);
+        }
+
+        /**
+         * Returns what the journeys cost with the new tariff.
+         *
+         * @return The total, with two decimals.
+         */
+        public BigDecimal getRepricedTotal() {
+            return BigDecimal.valueOf(repricedCents, 2);
+        }
+
+        /**
+         * Returns the difference between the new and the charged totals.
+         *
+         * @return The difference, with two decimals: positive if the new tariff is more expensive.
+         */
+        public BigDecimal getDelta() {
+            return BigDecimal.valueOf(repricedCents - chargedCents, 2);
+        }
+
+        /**
+         * Returns the number of journeys that cost more with the new tariff.
+         *
+         * @return The number of journeys.
+         */
+        public long getRaised() {
+            return raised;
+        }
+
+        /**
+         * Returns the number of journeys that cost less with the new tariff.
+         *
+         * @return The number of journeys.
+         */
+        public long getLowered() {
+            return lowered;
+        }
+
+        /**
+         * Returns the largest increase of a single journey.
+         *
+         * @return The increase, with two decimals.
+         */
+        public BigDecimal getMaxRaise() {
+            return BigDecimal.valueOf(maxRaiseCents, 2);
+        }
+
+        /**
+         * Returns the largest decrease of a single journey.
+         *
+         * @return The decrease, with two decimals.
+         */
+        public BigDecimal getMaxCut() {
+            return BigDecimal.valueOf(maxCutCents, 2);
+        }
+
+        /**
+         * Prices a journey and adds it to the report.
+         *
+         * @param tariff The tariff.
+         * @param journey The journey.
+         */
+        void add(Tariff tariff, JourneyService journey) {
+            BigDecimal charged = journey.getImportCost();
+            if (journey.getEndDate() == null || charged == null) {
+                skipped++;
+                return;
+            }
+            String station = tariff.hasZones() ? stationOf(journey) : null;
+            long before = charged.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            long after = tariff.priceCents(journey.getDistance(), journey.getDuration(), journey.getAvgSpeed(), journey.getEndDate(), station);
+            count++;
+            chargedCents += before;
+            repricedCents += after;
+            if (after > before) {
+                raised++;
+                maxRaiseCents = Math.max(maxRaiseCents, after - before);
+            } else if (after < before) {
+                lowered++;
+                maxCutCents = Math.max(maxCutCents, before - after);
+            }
+        }
+
+        /**
+         * Adds another report to this one.
+         *
+         * @param other The other report.
+         */
+        void merge(Report other) {
+            count += other.count;
+            skipped += other.skipped;
+            chargedCents += other.chargedCents;
+            repricedCents += other.repricedCents;
+            raised += other.raised;
+            lowered += other.lowered;
+            maxRaiseCents = Math.max(maxRaiseCents, other.maxRaiseCents);
+            maxCutCents = Math.max(maxCutCents, other.maxCutCents);
+        }
+
+        /**
+         * Returns the station a journey ended at, which is where zone surcharges apply.
+         *
+         * @param journey The journey.
+         * @return The station ID, or null if the end station is not known.
+         */
+        private static String stationOf(JourneyService journey) {
+            if (journey.getEndStation() == null) {
+                return null;
+            }
+            return journey.getEndStation().getId();
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package micromobility.pricing;
+
+import data.StationID;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Prices journeys from a table of rates.
+ * <p>
+ * A journey costs a rate per kilometre plus a rate per minute. That base is then increased by the
+ * speed penalty of the highest threshold the average speed exceeds, by the weekend or holiday
+ * surcharge of the end date (the larger one if both apply) and by the surcharge of the zone of the
+ * station, and rounded half up to cents.
+ * <p>
+ * The tables are loaded once and compiled into longs in units of {@code 10^-RATE_SCALE}, so pricing
+ * a journey with {@link #priceCents} creates no objects. Results are identical to pricing the same
+ * journey with {@link BigDecimal}: the distance is a float whose decimal expansion does not fit in a
+ * long, so when the fixed-point result falls too close to half a cent to round safely, the journey
+ * is priced again exactly.
+ */
+public class Tariff {
+
+    public static final int RATE_SCALE = 4;
+
+    private static final long RATE_UNIT = 10_000L; // 10^RATE_SCALE
+    private static final double UNITS_TO_CENTS = 1e-6; // Rate units times factor units, to cents
+    private static final double TIE_GUARD = 1e-6; // In cents, above the error of the double evaluation
+    private static final double MAX_FAST_CENTS = 1e15; // Beyond this a double loses the cents
+
+    private static final Tariff STANDARD = load(standardTable());
+
+    // Class members
+    private final BigDecimal perKm;
+    private final BigDecimal perMinute;
+    private final float[] penaltyThresholds; // Ascending
+    private final BigDecimal[] penaltyRates;
+    private final BigDecimal weekendRate;
+    private final BigDecimal holidayRate;
+    private final long[] holidays; // Sorted epoch days
+    private final Map<String, BigDecimal> zoneRates;
+
+    // Compiled rates, in units of 10^-RATE_SCALE
+    private final long perKmUnits;
+    private final long perMinuteUnits;
+    private final long[] penaltyUnits;
+    private final long weekendUnits;
+    private final long holidayUnits;
+    private final Map<String, Long> zoneUnits;
+
+    /**
+     * Compiles a tariff from its rates.
+     */
+    private Tariff(BigDecimal perKm, BigDecimal perMinute, float[] penaltyThresholds, BigDecimal[] penaltyRates,
+                   BigDecimal weekendRate, BigDecimal holidayRate, long[] holidays, Map<String, BigDecimal> zoneRates) {
+        this.perKm = perKm;
+        this.perMinute = perMinute;
+        this.penaltyThresholds = penaltyThresholds;
+        this.penaltyRates = penaltyRates;
+        this.weekendRate = weekendRate;
+        this.holidayRate = holidayRate;
+        this.holidays = holidays;
+        this.zoneRates = zoneRates;
+
+        this.perKmUnits = units(perKm);
+        this.perMinuteUnits = units(perMinute);
+        this.penaltyUnits = new long[penaltyRates.length];
+        for (int i = 0; i < penaltyRates.length; i++) {
+            penaltyUnits[i] = units(penaltyRates[i]);
+        }
+        this.weekendUnits = units(weekendRate);
+        this.holidayUnits = units(holidayRate);
+        this.zoneUnits = new HashMap<>();
+        zoneRates.forEach((station, rate) -> zoneUnits.put(station, units(rate)));
+    }
+
+    /**
+     * Returns the standard tariff: 1.5 per km, 0.5 per minute, a 20% penalty above 25 km/h and a
+     * 15% weekend surcharge.
+     *
+     * @return The standard tariff.
+     */
+    public static Tariff standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Loads a tariff from a properties file.
+     *
+     * @param file The file.
+     * @return The tariff.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the table is not valid.
+     * @see #load(Properties)
+     */
+    public static Tariff load(Path file) throws IOException {
+        Properties table = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            table.load(reader);
+        }
+        return load(table);
+    }
+
+    /**
+     * Loads a tariff from a table of rates. Rates are decimal fractions of the base, except the
+     * per-km and per-minute rates, and have at most {@link #RATE_SCALE} decimals.
+     * <ul>
+     *     <li>{@code rate.km} and {@code rate.minute}: the base rates, required.</li>
+     *     <li>{@code penalty.<km/h>}: the penalty above an average speed, e.g. {@code penalty.25=0.2}.</li>
+     *     <li>{@code surcharge.weekend} and {@code surcharge.holiday}: the day surcharges.</li>
+     *     <li>{@code holidays}: comma-separated ISO dates.</li>
+     *     <li>{@code zone.<station ID>}: the surcharge for journeys ending at a station.</li>
+     * </ul>
+     *
+     * @param table The table.
+     * @return The tariff.
+     * @throws IllegalArgumentException If the table is not valid.
+     */
+    public static Tariff load(Properties table) {
+        if (table == null) {
+            throw new IllegalArgumentException("Tariff table cannot be null");
+        }
+        BigDecimal perKm = rate(table, "rate.km", null);
+        BigDecimal perMinute = rate(table, "rate.minute", null);
+        BigDecimal weekend = rate(table, "surcharge.weekend", BigDecimal.ZERO);
+        BigDecimal holiday = rate(table, "surcharge.holiday", BigDecimal.ZERO);
+
+        TreeMap<Float, BigDecimal> penalties = new TreeMap<>();
+        Map<String, BigDecimal> zones = new HashMap<>();
+        for (String key : table.stringPropertyNames()) {
+            if (key.startsWith("penalty.")) {
+                try {
+                    float threshold = Float.parseFloat(key.substring("penalty.".length()));
+                    if (!Float.isFinite(threshold)) {
+                        throw new NumberFormatException(key);
+                    }
+                    penalties.put(threshold, rate(table, key, null));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid speed threshold: " + key, e);
+                }
+            } else if (key.startsWith("zone.")) {
+                zones.put(key.substring("zone.".length()), rate(table, key, null));
+            }
+        }
+        float[] thresholds = new float[penalties.size()];
+        BigDecimal[] penaltyRates = new BigDecimal[penalties.size()];
+        int i = 0;
+        for (Map.Entry<Float, BigDecimal> penalty : penalties.entrySet()) {
+            thresholds[i] = penalty.getKey();
+            penaltyRates[i++] = penalty.getValue();
+        }
+
+        String dates = table.getProperty("holidays", "").trim();
+        long[] holidays = dates.isEmpty() ? new long[0] : Arrays.stream(dates.split(","))
+                .mapToLong(Tariff::epochDay).sorted().distinct().toArray();
+
+        return new Tariff(perKm, perMinute, thresholds, penaltyRates, weekend, holiday, holidays, zones);
+    }
+
+    /**
+     * Prices a journey.
+     *
+     * @param dis The distance covered, in kilometres.
+     * @param dur The duration of the journey.
+     * @param avSp The average speed, in km/h.
+     * @param date The end date of the journey.
+     * @param station The station the journey ends at, or null.
+     * @return The price, in cents.
+     * @throws NumberFormatException If the distance is not finite.
+     */
+    public long priceCents(float dis, int dur, float avSp, LocalDateTime date, StationID station) {
+        return priceCents(dis, dur, avSp, date, station == null ? null : station.getId());
+    }
+
+    /**
+     * Prices a journey.
+     *
+     * @param dis The distance covered, in kilometres.
+     * @param dur The duration of the journey.
+     * @param avSp The average speed, in km/h.
+     * @param date The end date of the journey.
+     * @param station The ID of the station the journey ends at, or null.
+     * @return The price, in cents.
+     * @throws NumberFormatException If the distance is not finite.
+     */
+    public long priceCents(float dis, int dur, float avSp, LocalDateTime date, String station) {
+        if (Float.isFinite(dis)) {
+            long factor = RATE_UNIT + penaltyUnits(avSp) + dayUnits(date) + zoneUnits(station);
+            double cents = (perKmUnits * (double) dis + perMinuteUnits * (double) dur) * factor * UNITS_TO_CENTS;
+            double magnitude = Math.abs(cents);
+            double fraction = magnitude - Math.floor(magnitude);
+            if (magnitude < MAX_FAST_CENTS && Math.abs(fraction - 0.5) > TIE_GUARD + magnitude * 1e-12) {
+                long rounded = (long) Math.floor(magnitude + 0.5);
+                return cents < 0 ? -rounded : rounded;
+            }
+        }
+        return priceExact(dis, dur, avSp, date, station).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Checks whether the price of a journey depends on its end station.
+     *
+     * @return true if the tariff has zone surcharges.
+     */
+    public boolean hasZones() {
+        return !zoneRates.isEmpty();
+    }
+
+    /**
+     * Prices a journey.
+     *
+     * @param dis The distance covered, in kilometres.
+     * @param dur The duration of the journey.
+     * @param avSp The average speed, in km/h.
+     * @param date The end date of the journey.
+     * @param station The station the journey ends at, or null.
+     * @return The price, with two decimals.
+     * @throws NumberFormatException If the distance is not finite.
+     */
+    public BigDecimal price(float dis, int dur, float avSp, LocalDateTime date, StationID station) {
+        return BigDecimal.valueOf(priceCents(dis, dur, avSp, date, station), 2);
+    }
+
+    /**
+     * Prices a journey with {@link BigDecimal} arithmetic.
+     *
+     * @param dis The distance covered, in kilometres.
+     * @param dur The duration of the journey.
+     * @param avSp The average speed, in km/h.
+     * @param date The end date of the journey.
+     * @param station The station the journey ends at, or null.
+     * @return The price, with two decimals.
+     * @throws NumberFormatException If the distance is not finite.
+     */
+    public BigDecimal priceExact(float dis, int dur, float avSp, LocalDateTime date, StationID station) {
+        return priceExact(dis, dur, avSp, date, station == null ? null : station.getId());
+    }
+
+    // Internal operations
+
+    /**
+     * Prices a journey with {@link BigDecimal} arithmetic.
+     */
+    private BigDecimal priceExact(float dis, int dur, float avSp, LocalDateTime date, String station) {
+        BigDecimal baseImport = perKm.multiply(BigDecimal.valueOf(dis)).add(perMinute.multiply(BigDecimal.valueOf(dur)));
+        BigDecimal total = baseImport;
+        int tier = penaltyTier(avSp);
+        if (tier >= 0) {
+            total = total.add(baseImport.multiply(penaltyRates[tier]));
+        }
+        BigDecimal dayRate = dayRate(date);
+        if (dayRate != null) {
+            total = total.add(baseImport.multiply(dayRate));
+        }
+        BigDecimal zoneRate = station == null ? null : zoneRates.get(station);
+        if (zoneRate != null) {
+            total = total.add(baseImport.multiply(zoneRate));
+        }
+        return total.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Finds the highest speed threshold exceeded.
+     *
+     * @param avSp The average speed.
+     * @return The index of the threshold, or -1 if none is exceeded.
+     */
+    private int penaltyTier(float avSp) {
+        for (int i = penaltyThresholds.length - 1; i >= 0; i--) {
+            if (avSp > penaltyThresholds[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the compiled speed penalty for an average speed.
+     *
+     * @param avSp The average speed.
+     * @return The penalty, in rate units.
+     */
+    private long penaltyUnits(float avSp) {
+        int tier = penaltyTier(avSp);
+        return tier < 0 ? 0 : penaltyUnits[tier];
+    }
+
+    /**
+     * Returns the day surcharge for an end date.
+     *
+     * @param date The end date.
+     * @return The surcharge, or null if none applies.
+     */
+    private BigDecimal dayRate(LocalDateTime date) {
+        boolean weekend = isWeekend(date);
+        boolean holiday = isHoliday(date);
+        if (weekend && holiday) {
+            return holidayUnits >= weekendUnits ? holidayRate : weekendRate;
+        }
+        return holiday ? holidayRate : weekend ? weekendRate : null;
+    }
+
+    /**
+     * Returns the compiled day surcharge for an end date.
+     *
+     * @param date The end date.
+     * @return The surcharge, in rate units.
+     */
+    private long dayUnits(LocalDateTime date) {
+        long units = isWeekend(date) ? weekendUnits : 0;
+        return isHoliday(date) ? Math.max(units, holidayUnits) : units;
+    }
+
+    private static boolean isWeekend(LocalDateTime date) {
+        DayOfWeek day = date.getDayOfWeek();
+        return day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY;
+    }
+
+    private boolean isHoliday(LocalDateTime date) {
+        return holidays.length > 0 && Arrays.binarySearch(holidays, date.toLocalDate().toEpochDay()) >= 0;
+    }
+
+    /**
+     * Returns the compiled zone surcharge for a station.
+     *
+     * @param station The station ID, or null.
+     * @return The surcharge, in rate units.
+     */
+    private long zoneUnits(String station) {
+        if (station == null || zoneUnits.isEmpty()) {
+            return 0;
+        }
+        Long units = zoneUnits.get(station);
+        return units == null ? 0 : units;
+    }
+
+    /**
+     * Reads a rate from a table.
+     *
+     * @param table The table.
+     * @param key The key of the rate.
+     * @param fallback The rate if the key is missing, or null if it is required.
+     * @return The rate.
+     * @throws IllegalArgumentException If the rate is missing, negative or too precise.
+     */
+    private static BigDecimal rate(Properties table, String key, BigDecimal fallback) {
+        String value = table.getProperty(key);
+        if (value == null) {
+            if (fallback == null) {
+                throw new IllegalArgumentException("Missing tariff rate: " + key);
+            }
+            return fallback;
+        }
+        BigDecimal rate;
+        try {
+            rate = new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid tariff rate: " + key + "=" + value, e);
+        }
+        if (rate.signum() < 0 || rate.stripTrailingZeros().scale() > RATE_SCALE) {
+            throw new IllegalArgumentException("Tariff rates cannot be negative and have at most " + RATE_SCALE + " decimals: " + key);
+        }
+        units(rate); // Fail now if it does not fit
+        return rate;
+    }
+
+    /**
+     * Converts a rate to rate units.
+     *
+     * @param rate The rate.
+     * @return The rate in units of 10^-RATE_SCALE.
+     * @throws IllegalArgumentException If the rate does not fit.
+     */
+    private static long units(BigDecimal rate) {
+        try {
+            return rate.movePointRight(RATE_SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Tariff rate out of range: " + rate, e);
+        }
+    }
+
+    private static long epochDay(String date) {
+        try {
+            return LocalDate.parse(date.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid holiday: " + date, e);
+        }
+    }
+
+    /**
+     * Builds the table of the standard tariff.
+     *
+     * @return The table.
+     */
+    private static Properties standardTable() {
+        Properties table = new Properties();
+        table.setProperty("rate.km", "1.5");
+        table.setProperty("rate.minute", "0.5");
+        table.setProperty("penalty.25", "0.2");
+        table.setProperty("surcharge.weekend", "0.15");
+        return table;
+    }
+}
@@ -0,0 +1,589 @@
+package services;
+
+import data.ServiceID;
+import data.StationID;
+import data.UserAccount;
+import data.VehicleID;
+import micromobility.JourneyService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Tiered storage for completed journey services.
+ * <p>
+ * The most recent journeys are kept as objects in a bounded hot window. Older ones are packed into
+ * an off-heap {@link JourneyColumns} spill buffer and, once it is full, sealed into a columnar
+ * segment file that stays memory-mapped, so the heap used by the archive does not grow with the
+ * number of completed rides. A sealed segment keeps its string dictionaries in the mapping as well:
+ * the IDs of a journey are decoded from the file when it is read, and the only strings the archive
+ * holds are those of the hot window and the spill buffer. Scans over packed journeys go through a
+ * reused {@link JourneyView}.
+ * <p>
+ * Lookups by user, vehicle, end station and start date go through indexes instead of scanning.
+ * Each sealed segment carries the posting lists of its own rows in its file, and a
+ * {@link JourneyIndex} on the heap only covers the journeys that are not sealed yet, so neither
+ * index grows the heap with the number of completed rides.
+ */
+public class JourneyArchive implements Closeable {
+
+    public static final int DEFAULT_HOT_CAPACITY = 1024;
+    public static final int DEFAULT_SEGMENT_ROWS = 4096;
+
+    private static final String SEGMENT_PREFIX = "journeys-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // Class members
+    private Path dir; // Created lazily when the first segment is sealed if not given
+    private boolean temporary; // Whether dir was created by the archive, and is deleted with it
+    private final int hotCapacity;
+    private final int segmentRows;
+    private final ArrayDeque<JourneyService> hot = new ArrayDeque<>();
+    private JourneyColumns spill;
+    private final List<JourneyColumns> segments = new ArrayList<>(); // Mapped sealed segments
+    private final JourneyIndex.Rows segmentStarts = new JourneyIndex.Rows(); // First ordinal of each segment
+    private final JourneyIndex index = new JourneyIndex();
+    private long sealedRows;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates an archive with the default hot window and segment sizes.
+     *
+     * @param dir The directory for the segment files, or null to use a temporary directory that is
+     *            deleted on {@link #close()} or, failing that, when the JVM exits.
+     */
+    public JourneyArchive(Path dir) {
+        this(dir, DEFAULT_HOT_CAPACITY, DEFAULT_SEGMENT_ROWS);
+    }
+
+    /**
+     * Creates an archive.
+     *
+     * @param dir The directory for the segment files, or null to use a temporary directory that is
+     *            deleted on {@link #close()} or, failing that, when the JVM exits.
+     * @param hotCapacity The number of recent journeys kept as objects.
+     * @param segmentRows The number of journeys per segment file.
+     * @throws IllegalArgumentException if a size is not positive.
+     */
+    public JourneyArchive(Path dir, int hotCapacity, int segmentRows) {
+        if (hotCapacity <= 0 || segmentRows <= 0) {
+            throw new IllegalArgumentException("Archive sizes must be positive.");
+        }
+        this.dir = dir;
+        this.hotCapacity = hotCapacity;
+        this.segmentRows = segmentRows;
+        this.spill = new JourneyColumns(segmentRows);
+    }
+
+    /**
+     * Archives a completed journey.
+     *
+     * @param s The journey service.
+     * @throws UncheckedIOException if a full segment cannot be written to disk.
+     */
+    public void add(JourneyService s) {
+        lock.lock();
+        try {
+            index(s, (int) (sealedRows + spill.size() + hot.size()));
+            hot.addLast(s);
+            if (hot.size() > hotCapacity) {
+                spill.add(hot.removeFirst());
+                if (spill.isFull()) {
+                    seal();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of archived journeys.
+     *
+     * @return The total number of journeys across every tier.
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return sealedRows + spill.size() + hot.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Visits every archived journey, oldest first. Packed journeys are rebuilt as new objects that
+     * are not retained by the archive; the hot ones are passed as they are.
+     *
+     * @param action The action to run for each journey.
+     */
+    public void forEach(Consumer<JourneyService> action) {
+        List<JourneyService> recent = new ArrayList<>();
+        forEachPacked(view -> action.accept(view.toJourneyService()), recent);
+        recent.forEach(action);
+    }
+
+    /**
+     * Returns a stream over the journeys archived when it is called, oldest first. Packed journeys
+     * are rebuilt as they are reached; the stream splits by ordinal range, so it can be consumed in
+     * parallel without copying the archive.
+     *
+     * @return The journeys.
+     */
+    public Stream<JourneyService> stream() {
+        Tiers tiers;
+        lock.lock();
+        try {
+            tiers = tiers();
+        } finally {
+            lock.unlock();
+        }
+        return StreamSupport.stream(new TierSpliterator(tiers, 0, tiers.size()), false);
+    }
+
+    /**
+     * Visits every archived journey through a single reused view, oldest first. Unlike
+     * {@link #forEach(Consumer)} this does not build a {@link JourneyService} per journey.
+     *
+     * @param action The action to run for each journey; it must not keep the view.
+     */
+    public void forEachView(Consumer<JourneyView> action) {
+        List<JourneyService> recent = new ArrayList<>();
+        JourneyView view = forEachPacked(action, recent);
+        if (!recent.isEmpty()) {
+            JourneyColumns packed = new JourneyColumns(recent.size());
+            recent.forEach(packed::add);
+            for (int r = 0; r < packed.size(); r++) {
+                view.moveTo(packed, r);
+                action.accept(view);
+            }
+        }
+    }
+
+    /**
+     * Returns the archived journeys matching a condition, oldest first.
+     *
+     * @param filter The condition to match.
+     * @return The matching journeys.
+     */
+    public List<JourneyService> find(Predicate<JourneyService> filter) {
+        List<JourneyService> result = new ArrayList<>();
+        forEach(s -> {
+            if (filter.test(s)) {
+                result.add(s);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the archived journeys with the given service ID.
+     *
+     * @param serviceID The service ID.
+     * @return The matching journeys, oldest first.
+     */
+    public List<JourneyService> findByServiceID(ServiceID serviceID) {
+        return lookup(segment -> segment.rows(JourneyColumns.USER, serviceID.getUserId()), () -> index.byUser(serviceID.getUserId()),
+                s -> serviceID.equals(s.getServiceID()));
+    }
+
+    /**
+     * Returns the archived journeys of a user.
+     *
+     * @param user The user account.
+     * @return The user's journeys, oldest first.
+     */
+    public List<JourneyService> findByUser(UserAccount user) {
+        return lookup(segment -> segment.rows(JourneyColumns.USER, user.getId()), () -> index.byUser(user.getId()), s -> true);
+    }
+
+    /**
+     * Returns the archived journeys made with a vehicle.
+     *
+     * @param vehicle The vehicle ID.
+     * @return The vehicle's journeys, oldest first.
+     */
+    public List<JourneyService> findByVehicle(VehicleID vehicle) {
+        return lookup(segment -> segment.rows(JourneyColumns.VEHICLE, vehicle.getId()), () -> index.byVehicle(vehicle.getId()), s -> true);
+    }
+
+    /**
+     * Returns the archived journeys that ended at a station. The station in the service ID is the
+     * one the journey started from, and is not what this looks up.
+     *
+     * @param station The station ID.
+     * @return The journeys that ended at the station, oldest first.
+     */
+    public List<JourneyService> findByEndStation(StationID station) {
+        return lookup(segment -> segment.rows(JourneyColumns.END_STATION, station.getId()), () -> index.byEndStation(station.getId()),
+                s -> true);
+    }
+
+    /**
+     * Returns the archived journeys started within a time range.
+     *
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (exclusive).
+     * @return The matching journeys, oldest first.
+     */
+    public List<JourneyService> findByInitDate(LocalDateTime from, LocalDateTime to) {
+        int first = epochSecond(from);
+        int last = epochSecond(to);
+        return lookup(segment -> segment.rowsStartedBetween(first, last), () -> index.byInitDate(first, last),
+                s -> s.getInitDate() != null && !s.getInitDate().isBefore(from) && s.getInitDate().isBefore(to));
+    }
+
+    /**
+     * Returns the directory of the segment files.
+     *
+     * @return The directory, or null if the archive was given none and has not sealed a segment yet.
+     */
+    public Path getDirectory() {
+        lock.lock();
+        try {
+            return dir;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the archive. If it created a temporary directory for its segments, the directory and
+     * the segment files are deleted; the files of a directory given to the archive are kept. Streams
+     * and scans already started must not be used afterwards.
+     *
+     * @throws IOException if the temporary directory cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            int sealed = segments.size();
+            segments.clear();
+            segmentStarts.clear();
+            index.clear(0);
+            sealedRows = 0;
+            hot.clear();
+            spill = new JourneyColumns(segmentRows);
+            if (temporary) {
+                for (int i = 0; i < sealed; i++) {
+                    Files.deleteIfExists(segmentFile(i));
+                }
+                Files.deleteIfExists(dir);
+                dir = null;
+                temporary = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Snapshot support
+
+    /**
+     * Returns the number of sealed segment files.
+     */
+    int sealedSegments() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the journeys that are not yet in a sealed segment, oldest first.
+     */
+    List<JourneyService> unsealed() {
+        lock.lock();
+        try {
+            List<JourneyService> result = new ArrayList<>(spill.size() + hot.size());
+            for (int r = 0; r < spill.size(); r++) {
+                result.add(spill.get(r));
+            }
+            result.addAll(hot);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resets the archive to a snapshotted state: segments sealed after the snapshot are deleted
+     * (their journeys are replayed from the journal again), the kept ones are mapped with their
+     * indexes and the unsealed journeys re-added.
+     *
+     * @param segments The number of sealed segments recorded in the snapshot.
+     * @param journeys The unsealed journeys recorded in the snapshot, oldest first.
+     * @throws IOException if the segments cannot be listed or deleted.
+     */
+    void restore(int segments, List<JourneyService> journeys) throws IOException {
+        lock.lock();
+        try {
+            this.segments.clear();
+            segmentStarts.clear();
+            sealedRows = 0;
+            if (dir != null && Files.isDirectory(dir)) {
+                for (int i = 0; Files.exists(segmentFile(i)); i++) {
+                    if (i < segments) {
+                        addSegment(JourneyColumns.map(segmentFile(i)));
+                    } else {
+                        Files.delete(segmentFile(i));
+                    }
+                }
+            }
+            index.clear((int) sealedRows);
+            hot.clear();
+            spill = new JourneyColumns(segmentRows);
+            journeys.forEach(this::add);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Internal operations
+
+    /**
+     * Runs an action over the packed journeys (sealed segments, then the spill buffer) and collects
+     * the hot ones. Rows are read outside the lock: sealed segments are immutable and the spill
+     * buffer is only appended to beyond the row count captured here.
+     *
+     * @return The view that was moved over the packed rows.
+     */
+    private JourneyView forEachPacked(Consumer<JourneyView> action, List<JourneyService> recent) {
+        List<JourneyColumns> sealed;
+        JourneyColumns unsealed;
+        int unsealedRows;
+        lock.lock();
+        try {
+            sealed = new ArrayList<>(segments);
+            unsealed = spill;
+            unsealedRows = spill.size();
+            recent.addAll(hot);
+        } finally {
+            lock.unlock();
+        }
+
+        JourneyView view = new JourneyView();
+        for (JourneyColumns segment : sealed) {
+            for (int r = 0; r < segment.size(); r++) {
+                view.moveTo(segment, r);
+                action.accept(view);
+            }
+        }
+        for (int r = 0; r < unsealedRows; r++) {
+            view.moveTo(unsealed, r);
+            action.accept(view);
+        }
+        return view;
+    }
+
+    /**
+     * Resolves the rows found in the indexes to journeys. The ordinals of the unsealed journeys and
+     * the tiers they point into are captured under the lock; the sealed segments are then searched
+     * and packed journeys rebuilt outside of it.
+     *
+     * @param sealedRows Reads the matching rows of a sealed segment from its file, in increasing order.
+     * @param openRows Reads the matching ordinals of the unsealed journeys from the index, in increasing order.
+     * @param filter A further condition the journeys must match.
+     */
+    private List<JourneyService> lookup(Function<JourneyColumns, int[]> sealedRows, Supplier<int[]> openRows,
+                                        Predicate<JourneyService> filter) {
+        int[] matches;
+        Tiers tiers;
+        lock.lock();
+        try {
+            matches = openRows.get();
+            tiers = tiers();
+        } finally {
+            lock.unlock();
+        }
+
+        List<JourneyService> result = new ArrayList<>();
+        for (JourneyColumns segment : tiers.sealed) {
+            for (int r : sealedRows.apply(segment)) {
+                JourneyService s = segment.get(r);
+                if (filter.test(s)) {
+                    result.add(s);
+                }
+            }
+        }
+        for (int row : matches) {
+            JourneyService s = tiers.get(row);
+            if (filter.test(s)) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Captures the tiers as they are now. Must be called under the lock.
+     */
+    private Tiers tiers() {
+        return new Tiers(new ArrayList<>(segments), segmentStarts.toArray(), spill, (int) sealedRows,
+                spill.size(), new ArrayList<>(hot));
+    }
+
+    /**
+     * The tiers of the archive captured at one point, to resolve ordinals outside the lock.
+     * Sealed segments are immutable, the spill buffer is only appended to beyond the captured row
+     * count, and the hot journeys are copied.
+     */
+    private static class Tiers {
+        private final List<JourneyColumns> sealed;
+        private final int[] starts;
+        private final JourneyColumns unsealed;
+        private final int sealedCount;
+        private final int packedRows;
+        private final List<JourneyService> recent;
+
+        Tiers(List<JourneyColumns> sealed, int[] starts, JourneyColumns unsealed, int sealedCount,
+              int unsealedRows, List<JourneyService> recent) {
+            this.sealed = sealed;
+            this.starts = starts;
+            this.unsealed = unsealed;
+            this.sealedCount = sealedCount;
+            this.packedRows = sealedCount + unsealedRows;
+            this.recent = recent;
+        }
+
+        int size() {
+            return packedRows + recent.size();
+        }
+
+        /**
+         * Returns the journey at an ordinal, rebuilding it if it is packed.
+         */
+        JourneyService get(int row) {
+            if (row >= packedRows) {
+                return recent.get(row - packedRows);
+            }
+            if (row >= sealedCount) {
+                return unsealed.get(row - sealedCount);
+            }
+            int i = Arrays.binarySearch(starts, row);
+            int segment = i >= 0 ? i : -i - 2;
+            return sealed.get(segment).get(row - starts[segment]);
+        }
+    }
+
+    /**
+     * Walks a range of ordinals of captured tiers, splitting it in halves for parallel streams.
+     */
+    private static class TierSpliterator implements Spliterator<JourneyService> {
+        private final Tiers tiers;
+        private int from;
+        private final int to;
+
+        TierSpliterator(Tiers tiers, int from, int to) {
+            this.tiers = tiers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super JourneyService> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(tiers.get(from++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super JourneyService> action) {
+            while (from < to) {
+                action.accept(tiers.get(from++));
+            }
+        }
+
+        @Override
+        public Spliterator<JourneyService> trySplit() {
+            int middle = (from + to) >>> 1;
+            if (middle <= from) {
+                return null;
+            }
+            TierSpliterator prefix = new TierSpliterator(tiers, from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Registers a mapped sealed segment.
+     */
+    private void addSegment(JourneyColumns segment) {
+        segments.add(segment);
+        segmentStarts.add((int) sealedRows);
+        sealedRows += segment.size();
+    }
+
+    /**
+     * Adds an unsealed journey to the heap index.
+     */
+    private void index(JourneyService s, int row) {
+        index.add(s.getServiceID(), s.getEndStation() == null ? null : s.getEndStation().getId(), epochSecond(s.getInitDate()), row);
+    }
+
+    private static int epochSecond(LocalDateTime date) {
+        return date == null ? JourneyColumns.NO_VALUE : (int) date.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private void seal() throws IOException {
+        if (dir == null) {
+            dir = Files.createTempDirectory("journey-archive");
+            dir.toFile().deleteOnExit();
+            temporary = true;
+        }
+        Files.createDirectories(dir);
+        Path file = segmentFile(segments.size());
+        if (temporary) {
+            file.toFile().deleteOnExit(); // Registered after the directory, so deleted before it
+        }
+        spill.write(file);
+        addSegment(JourneyColumns.map(file));
+        spill = new JourneyColumns(segmentRows);
+
+        // The segment file indexes the sealed journeys: only the hot window stays in the heap index
+        index.clear((int) sealedRows);
+        int row = (int) sealedRows;
+        for (JourneyService s : hot) {
+            index(s, row++);
+        }
+    }
+
+    private Path segmentFile(int segment) {
+        return dir.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+}
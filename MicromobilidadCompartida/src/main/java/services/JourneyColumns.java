@@ -0,0 +1,625 @@
+package services;
+
+import data.GeographicPoint;
+import data.ServiceID;
+import data.StationID;
+import micromobility.GpsTrace;
+import micromobility.JourneyService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A block of completed journeys packed as parallel primitive columns.
+ * <p>
+ * Every journey takes 80 bytes: dates as epoch-second ints (UTC), hours as millisecond-of-day
+ * ints, coordinates, distance and speed as floats, the cost as long cents, and the user, vehicle
+ * and station parts of the {@link ServiceID} and the end station as codes into per-block
+ * dictionaries, next to its sequence number as a long. Its encoded {@link GpsTrace} route, if it
+ * has one, goes to a separate byte area, and the row keeps where the route ends. The columns
+ * live in a direct buffer while the block is the {@link JourneyArchive} spill buffer, and in a
+ * read-only memory map once the block has been sealed into a segment file, so neither is on the
+ * heap. The dictionaries of a sealed block stay in the mapping too, and a string is only decoded
+ * when a row is read. Rows are read in place through a {@link JourneyView}.
+ * <p>
+ * A segment file also carries the indexes of its rows: for the user, the vehicle and the end
+ * station, the rows of each dictionary entry, and the rows sorted by start date. Dictionaries are
+ * written sorted by their UTF-8 bytes, so a key is found by binary search over the mapping.
+ */
+class JourneyColumns {
+
+    private static final int MAGIC = 0x4A524E59; // "JRNY"
+    private static final int VERSION = 7;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES; // magic + version + rows
+    static final int NO_VALUE = Integer.MIN_VALUE;
+
+    // Columns
+    static final int USER = 0;
+    static final int VEHICLE = 1;
+    static final int STATION = 2;
+    static final int INIT_DATE = 3;
+    static final int END_DATE = 4;
+    static final int INIT_HOUR = 5;
+    static final int END_HOUR = 6;
+    static final int DURATION = 7;
+    static final int ORIGIN_LAT = 8;
+    static final int ORIGIN_LON = 9;
+    static final int END_LAT = 10;
+    static final int END_LON = 11;
+    static final int DISTANCE = 12;
+    static final int AVG_SPEED = 13;
+    static final int COST = 14;
+    static final int SEQUENCE = 15;
+    static final int END_STATION = 16;
+    static final int ROUTE_END = 17;
+    private static final int[] WIDTHS = {4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 8, 8, 4, 4};
+    private static final int[] DICTIONARY_COLUMNS = {USER, VEHICLE, STATION, END_STATION};
+    private static final int[] INDEXED_COLUMNS = {USER, VEHICLE, END_STATION};
+    private static final int[] NO_ROWS = new int[0];
+    static final int ROW_BYTES = Arrays.stream(WIDTHS).sum();
+
+    // Class members
+    private final ByteBuffer data;
+    private final int[] base; // Offset of each column in data
+    private final Dictionary[] dictionaries = new Dictionary[WIDTHS.length]; // For the string columns only
+    private final int capacity;
+    private int rows;
+    private final int[] postings = new int[WIDTHS.length]; // Mapped blocks: position of each column's posting lists
+    private int startDates; // Mapped blocks: position of the rows sorted by start date
+    private volatile ByteBuffer routes; // The route bytes: a growing direct buffer, or the mapping
+    private int routesBase; // Position of the first route byte in routes
+
+    /**
+     * Creates an empty, off-heap block able to hold the given number of journeys.
+     *
+     * @param capacity The maximum number of rows.
+     */
+    JourneyColumns(int capacity) {
+        this(ByteBuffer.allocateDirect(capacity * ROW_BYTES), 0, capacity);
+        for (int c : DICTIONARY_COLUMNS) {
+            dictionaries[c] = new GrowingDictionary();
+        }
+        this.routes = ByteBuffer.allocateDirect(0);
+    }
+
+    private JourneyColumns(ByteBuffer data, int offset, int capacity) {
+        this.data = data;
+        this.capacity = capacity;
+        this.base = new int[WIDTHS.length];
+        int position = offset;
+        for (int c = 0; c < WIDTHS.length; c++) {
+            base[c] = position;
+            position += WIDTHS[c] * capacity;
+        }
+    }
+
+    int size() {
+        return rows;
+    }
+
+    boolean isFull() {
+        return rows == capacity;
+    }
+
+    /**
+     * Appends a journey as a new row.
+     *
+     * @param s The completed journey.
+     */
+    void add(JourneyService s) {
+        int r = rows;
+        ServiceID serviceID = s.getServiceID();
+        putInt(USER, r, encode(USER, serviceID.getUserId()));
+        putInt(VEHICLE, r, encode(VEHICLE, serviceID.getVehicleId()));
+        putInt(STATION, r, encode(STATION, serviceID.getStationId()));
+        putInt(END_STATION, r, s.getEndStation() == null ? NO_VALUE : encode(END_STATION, s.getEndStation().getId()));
+        data.putLong(base[SEQUENCE] + r * 8, serviceID.getSequence());
+        putInt(INIT_DATE, r, s.getInitDate() == null ? NO_VALUE : (int) s.getInitDate().toEpochSecond(ZoneOffset.UTC));
+        putInt(END_DATE, r, s.getEndDate() == null ? NO_VALUE : (int) s.getEndDate().toEpochSecond(ZoneOffset.UTC));
+        putInt(INIT_HOUR, r, s.getInitHour() == null ? NO_VALUE : (int) (s.getInitHour().toNanoOfDay() / 1_000_000));
+        putInt(END_HOUR, r, s.getEndHour() == null ? NO_VALUE : (int) (s.getEndHour().toNanoOfDay() / 1_000_000));
+        putInt(DURATION, r, s.getDuration());
+        putPoint(ORIGIN_LAT, ORIGIN_LON, r, s.getOriginPoint());
+        putPoint(END_LAT, END_LON, r, s.getEndPoint());
+        data.putFloat(base[DISTANCE] + r * 4, s.getDistance());
+        data.putFloat(base[AVG_SPEED] + r * 4, s.getAvgSpeed());
+        data.putLong(base[COST] + r * 8, s.getImportCost().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+        putInt(ROUTE_END, r, s.getTrace() == null ? routeStart(r) : appendRoute(routeStart(r), s.getTrace().getEncoded()));
+        rows = r + 1;
+    }
+
+    // Column access
+
+    int getInt(int column, int r) {
+        return data.getInt(base[column] + r * 4);
+    }
+
+    float getFloat(int column, int r) {
+        return data.getFloat(base[column] + r * 4);
+    }
+
+    long getCents(int r) {
+        return data.getLong(base[COST] + r * 8);
+    }
+
+    long getSequence(int r) {
+        return data.getLong(base[SEQUENCE] + r * 8);
+    }
+
+    /**
+     * Decodes the route of a row.
+     *
+     * @param r The row index.
+     * @return A new trace, or null if the journey has no route.
+     */
+    GpsTrace getRoute(int r) {
+        int start = routeStart(r);
+        int end = getInt(ROUTE_END, r);
+        if (start == end) {
+            return null;
+        }
+        byte[] encoded = new byte[end - start];
+        routes.get(routesBase + start, encoded);
+        return GpsTrace.decode(encoded);
+    }
+
+    String getString(int column, int r) {
+        int code = getInt(column, r);
+        return code == NO_VALUE ? null : dictionaries[column].decode(code);
+    }
+
+    ServiceID serviceID(int r) {
+        long sequence = getSequence(r);
+        String id = getString(USER, r) + '_' + getString(VEHICLE, r) + '_' + getString(STATION, r);
+        return ServiceID.of(sequence == 0 ? id : id + '_' + sequence);
+    }
+
+    /**
+     * Rebuilds the journey stored in a row.
+     *
+     * @param r The row index.
+     * @return A new, finished {@link JourneyService}.
+     */
+    JourneyService get(int r) {
+        JourneyService s = new JourneyService(serviceID(r), getPoint(ORIGIN_LAT, ORIGIN_LON, r));
+        s.setEndPoint(getPoint(END_LAT, END_LON, r));
+        s.setInitDate(toDate(getInt(INIT_DATE, r)));
+        s.setEndDate(toDate(getInt(END_DATE, r)));
+        s.setInitHour(toTime(getInt(INIT_HOUR, r)));
+        s.setEndHour(toTime(getInt(END_HOUR, r)));
+        String endStation = getString(END_STATION, r);
+        s.setEndStation(endStation == null ? null : StationID.of(endStation));
+        s.setDuration(getInt(DURATION, r));
+        s.setDistance(getFloat(DISTANCE, r));
+        s.setAvgSpeed(getFloat(AVG_SPEED, r));
+        s.setImportCost(BigDecimal.valueOf(getCents(r), 2));
+        s.setTrace(getRoute(r));
+        return s;
+    }
+
+    // Segment files
+
+    /**
+     * Durably writes the rows to a segment file: a header, every column trimmed to the number of
+     * rows, the dictionaries of the string columns, each as a count, an offset table and the UTF-8
+     * bytes of its strings in sorted order, the posting lists of the indexed columns, the rows
+     * sorted by start date, and last the route bytes. Once written the block takes no more rows.
+     *
+     * @param file The segment file.
+     * @throws IOException if the file cannot be written.
+     */
+    void write(Path file) throws IOException {
+        int[][] remap = new int[WIDTHS.length][]; // Per string column: the written code of each code
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(rows);
+            writeFully(channel, header.flip());
+            ByteBuffer[] encoded = new ByteBuffer[WIDTHS.length];
+            for (int c : DICTIONARY_COLUMNS) {
+                GrowingDictionary dictionary = (GrowingDictionary) dictionaries[c];
+                remap[c] = new int[dictionary.size];
+                encoded[c] = dictionary.encodedSorted(remap[c]);
+            }
+            for (int c = 0; c < WIDTHS.length; c++) {
+                // The codes are rewritten into a copy: the block is still read while it is written
+                writeFully(channel, remap[c] == null ? data.slice(base[c], WIDTHS[c] * rows) : remappedCodes(c, remap[c]));
+            }
+            for (int c : DICTIONARY_COLUMNS) {
+                writeFully(channel, encoded[c]);
+            }
+            for (int c : INDEXED_COLUMNS) {
+                writeFully(channel, encodedPostings(c, remap[c]));
+            }
+            writeFully(channel, encodedStartDates());
+            int routeBytes = rows == 0 ? 0 : getInt(ROUTE_END, rows - 1);
+            writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(routeBytes).flip());
+            writeFully(channel, routes.slice(0, routeBytes));
+            channel.force(true);
+        }
+        for (int c : DICTIONARY_COLUMNS) {
+            ((GrowingDictionary) dictionaries[c]).seal(); // Written: the block takes no more rows
+        }
+    }
+
+    /**
+     * Maps a segment file written by {@link #write(Path)} read-only.
+     *
+     * @param file The segment file.
+     * @return The rows of the segment, backed by the mapping.
+     * @throws IOException if the file cannot be read or is not a journey segment.
+     */
+    static JourneyColumns map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("Not a journey segment: " + file);
+            }
+            int rows = buf.getInt(8);
+            JourneyColumns c = new JourneyColumns(buf, HEADER_SIZE, rows);
+            c.rows = rows;
+            int position = HEADER_SIZE + rows * ROW_BYTES;
+            for (int column : DICTIONARY_COLUMNS) {
+                MappedDictionary dictionary = new MappedDictionary(buf, position);
+                c.dictionaries[column] = dictionary;
+                position = dictionary.end();
+            }
+            for (int column : INDEXED_COLUMNS) {
+                int entries = ((MappedDictionary) c.dictionaries[column]).size();
+                c.postings[column] = position;
+                position += Integer.BYTES * (entries + 1 + buf.getInt(position + Integer.BYTES * entries));
+            }
+            c.startDates = position;
+            c.routes = buf;
+            c.routesBase = position + Integer.BYTES + Long.BYTES * buf.getInt(position) + Integer.BYTES;
+            return c;
+        }
+    }
+
+    /**
+     * Returns the rows of a sealed block with a value in an indexed column.
+     *
+     * @param column The column: {@link #USER}, {@link #VEHICLE} or {@link #END_STATION}.
+     * @param key The value.
+     * @return The rows, in increasing order.
+     */
+    int[] rows(int column, String key) {
+        MappedDictionary dictionary = (MappedDictionary) dictionaries[column];
+        int code = key == null ? -1 : dictionary.find(key);
+        if (code < 0) {
+            return NO_ROWS;
+        }
+        int starts = postings[column];
+        int from = data.getInt(starts + code * Integer.BYTES);
+        int[] result = new int[data.getInt(starts + (code + 1) * Integer.BYTES) - from];
+        int first = starts + Integer.BYTES * (dictionary.size() + 1 + from);
+        for (int i = 0; i < result.length; i++) {
+            result[i] = data.getInt(first + i * Integer.BYTES);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows of a sealed block that started within a range of seconds.
+     *
+     * @param from The first second (inclusive).
+     * @param to The last second (inclusive).
+     * @return The rows, in increasing order.
+     */
+    int[] rowsStartedBetween(int from, int to) {
+        if (from > to) {
+            return NO_ROWS;
+        }
+        int first = lowerBound((long) from << 32);
+        int last = lowerBound(((long) to << 32) | 0xFFFFFFFFL); // Above every row of that second
+        int[] result = new int[last - first];
+        for (int i = first; i < last; i++) {
+            result[i - first] = (int) startDate(i);
+        }
+        Arrays.sort(result); // Journeys do not end in the order they start
+        return result;
+    }
+
+    // Internal operations
+
+    private int encode(int column, String value) {
+        return ((GrowingDictionary) dictionaries[column]).encode(value);
+    }
+
+    private int routeStart(int r) {
+        return r == 0 ? 0 : getInt(ROUTE_END, r - 1);
+    }
+
+    /**
+     * Copies an encoded route into the route bytes of the block being filled.
+     *
+     * @param at The offset of the route, just past the previous one.
+     * @return The offset just past the route.
+     */
+    private int appendRoute(int at, byte[] route) {
+        ByteBuffer current = routes;
+        if (at + route.length > current.capacity()) {
+            // Rows already read keep reading the old copy, which is never written again
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(4096, Math.max(current.capacity() * 2, at + route.length)));
+            grown.put(0, current, 0, at);
+            current = grown;
+        }
+        current.put(at, route);
+        routes = current;
+        return at + route.length;
+    }
+
+    private void putInt(int column, int r, int value) {
+        data.putInt(base[column] + r * 4, value);
+    }
+
+    private void putPoint(int latColumn, int lonColumn, int r, GeographicPoint gp) {
+        data.putFloat(base[latColumn] + r * 4, gp == null ? Float.NaN : gp.getLatitude());
+        data.putFloat(base[lonColumn] + r * 4, gp == null ? Float.NaN : gp.getLongitude());
+    }
+
+    GeographicPoint getPoint(int latColumn, int lonColumn, int r) {
+        float lat = getFloat(latColumn, r);
+        return Float.isNaN(lat) ? null : new GeographicPoint(lat, getFloat(lonColumn, r));
+    }
+
+    static LocalDateTime toDate(int epochSecond) {
+        return epochSecond == NO_VALUE ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    static LocalTime toTime(int milliOfDay) {
+        return milliOfDay == NO_VALUE ? null : LocalTime.ofNanoOfDay(milliOfDay * 1_000_000L);
+    }
+
+    /**
+     * Copies a string column with every code replaced by its written code.
+     */
+    private ByteBuffer remappedCodes(int column, int[] remap) {
+        ByteBuffer buf = ByteBuffer.allocate(rows * Integer.BYTES);
+        for (int r = 0; r < rows; r++) {
+            int code = getInt(column, r);
+            buf.putInt(code == NO_VALUE ? NO_VALUE : remap[code]);
+        }
+        return buf.flip();
+    }
+
+    /**
+     * Encodes the rows of each written code of a column: the index of the first row of every code
+     * and of the end of the last one, then the rows grouped by code, in increasing order.
+     */
+    private ByteBuffer encodedPostings(int column, int[] remap) {
+        int[] starts = new int[remap.length + 1];
+        for (int r = 0; r < rows; r++) {
+            int code = getInt(column, r);
+            if (code != NO_VALUE) {
+                starts[remap[code] + 1]++;
+            }
+        }
+        for (int i = 0; i < remap.length; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] grouped = new int[starts[remap.length]];
+        int[] next = Arrays.copyOf(starts, remap.length);
+        for (int r = 0; r < rows; r++) {
+            int code = getInt(column, r);
+            if (code != NO_VALUE) {
+                grouped[next[remap[code]]++] = r;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * (starts.length + grouped.length));
+        buf.asIntBuffer().put(starts).put(grouped);
+        return buf;
+    }
+
+    /**
+     * Encodes the rows with a start date as a count and sorted {@code second << 32 | row} longs.
+     */
+    private ByteBuffer encodedStartDates() {
+        long[] entries = new long[rows];
+        int dated = 0;
+        for (int r = 0; r < rows; r++) {
+            int second = getInt(INIT_DATE, r);
+            if (second != NO_VALUE) {
+                entries[dated++] = ((long) second << 32) | r;
+            }
+        }
+        Arrays.sort(entries, 0, dated);
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + Long.BYTES * dated).putInt(dated);
+        for (int i = 0; i < dated; i++) {
+            buf.putLong(entries[i]);
+        }
+        return buf.flip();
+    }
+
+    private long startDate(int i) {
+        return data.getLong(startDates + Integer.BYTES + i * Long.BYTES);
+    }
+
+    /**
+     * Returns the index of the first start date entry of a sealed block not lower than a key.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = data.getInt(startDates);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startDate(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Maps the distinct strings of a column to dense int codes.
+     */
+    private abstract static class Dictionary {
+
+        /**
+         * Returns the string with a code.
+         */
+        abstract String decode(int code);
+    }
+
+    /**
+     * The dictionary of the block being filled. It keeps its strings on the heap with the map from
+     * strings to codes, until the block is written. Codes below a size read under the archive lock
+     * stay valid without locking: the values array is only appended to, and a grown copy is
+     * published through a volatile write.
+     */
+    private static class GrowingDictionary extends Dictionary {
+        private Map<String, Integer> codes = new HashMap<>(); // Null once the block is written
+        private volatile String[] values = new String[16];
+        private int size;
+
+        int encode(String value) {
+            if (codes == null) {
+                throw new IllegalStateException("The journey block is sealed.");
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                String[] current = values;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                code = size;
+                current[size++] = value;
+                values = current;
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        @Override
+        String decode(int code) {
+            return values[code];
+        }
+
+        /**
+         * Encodes the strings sorted by their UTF-8 bytes: a count, the offset of each string and
+         * of the end of the last one from the start of the string bytes, then the bytes.
+         *
+         * @param remap Filled with the position of each code in the written order.
+         */
+        ByteBuffer encodedSorted(int[] remap) {
+            byte[][] encoded = new byte[size][];
+            Integer[] order = new Integer[size];
+            int bytes = 0;
+            for (int i = 0; i < size; i++) {
+                encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+                order[i] = i;
+                bytes += encoded[i].length;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+            ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * (size + 2) + bytes).putInt(size);
+            int offset = 0;
+            for (int i = 0; i < size; i++) {
+                remap[order[i]] = i;
+                buf.putInt(offset);
+                offset += encoded[order[i]].length;
+            }
+            buf.putInt(offset);
+            for (Integer code : order) {
+                buf.put(encoded[code]);
+            }
+            return buf.flip();
+        }
+
+        void seal() {
+            codes = null;
+        }
+    }
+
+    /**
+     * The dictionary of a sealed block, read in place from the segment mapping. Nothing is kept per
+     * string: each decode copies the bytes of one string out of the mapping.
+     */
+    private static class MappedDictionary extends Dictionary {
+        private final ByteBuffer buf;
+        private final int count;
+        private final int offsets; // Position of the offset table
+        private final int strings; // Position of the string bytes
+
+        MappedDictionary(ByteBuffer buf, int position) {
+            this.count = buf.getInt(position);
+            this.buf = buf;
+            this.offsets = position + Integer.BYTES;
+            this.strings = offsets + Integer.BYTES * (count + 1);
+        }
+
+        @Override
+        String decode(int code) {
+            int start = buf.getInt(offsets + code * Integer.BYTES);
+            byte[] value = new byte[buf.getInt(offsets + (code + 1) * Integer.BYTES) - start];
+            buf.get(strings + start, value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * Finds the code of a string by binary search over the sorted strings.
+         *
+         * @return The code, or -1 if the string is not in the dictionary.
+         */
+        int find(String value) {
+            byte[] key = value.getBytes(StandardCharsets.UTF_8);
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Compares the string with a code to UTF-8 bytes, in the order of {@link Arrays#compareUnsigned(byte[], byte[])}.
+         */
+        private int compare(int code, byte[] key) {
+            int start = buf.getInt(offsets + code * Integer.BYTES);
+            int length = buf.getInt(offsets + (code + 1) * Integer.BYTES) - start;
+            for (int i = 0; i < Math.min(length, key.length); i++) {
+                int cmp = Byte.compareUnsigned(buf.get(strings + start + i), key[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return length - key.length;
+        }
+
+        /**
+         * Returns the position just past the dictionary in the mapping.
+         */
+        int end() {
+            return strings + buf.getInt(strings - Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package services;
+
+import data.ServiceID;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secondary indexes over the journeys of a {@link JourneyArchive} that are not in a sealed segment
+ * yet. Sealed segments carry their own indexes in their files (see {@link JourneyColumns}), so this
+ * one only spans the hot window and the spill buffer, and the heap it uses does not grow with the
+ * number of archived journeys.
+ * <p>
+ * Journeys are identified by their archive ordinal (0 for the first journey ever archived), and are
+ * indexed in ordinal order from the first unsealed one. The user, the vehicle and the station a
+ * journey ended at each keep their postings as a chain through a primitive array: for every
+ * journey, the previous one with the same key. Only the head of each chain is kept per distinct
+ * key, so the heap used per journey is a few ints, with no object per journey. The start date (in
+ * epoch seconds) is kept as an array of packed {@code second << 32 | ordinal} longs for range
+ * queries, appended to as journeys arrive and sorted by the first query after them. The index is
+ * not thread-safe; the archive guards it with its own lock.
+ */
+class JourneyIndex {
+
+    private static final int NO_ROW = -1;
+    private static final int[] NO_ROWS = new int[0];
+
+    // Class members
+    private final Postings byUser = new Postings();
+    private final Postings byVehicle = new Postings();
+    private final Postings byEndStation = new Postings();
+    private long[] byInitDate = new long[64]; // second << 32 | ordinal, sorted up to sorted
+    private int dated;
+    private int sorted;
+    private int first; // Ordinal of the first indexed journey
+    private int size;
+
+    /**
+     * Indexes the next journey.
+     *
+     * @param user The user part of the service ID.
+     * @param vehicle The vehicle part of the service ID.
+     * @param endStation The station the journey ended at, or null if it is not known.
+     * @param initSecond The start date in epoch seconds, or {@link JourneyColumns#NO_VALUE}.
+     * @param row The archive ordinal of the journey.
+     * @throws IllegalStateException if the ordinal is not the next one.
+     */
+    void add(String user, String vehicle, String endStation, int initSecond, int row) {
+        if (row != first + size) {
+            throw new IllegalStateException("Journey " + row + " indexed out of order, expected " + (first + size));
+        }
+        byUser.add(user, size);
+        byVehicle.add(vehicle, size);
+        byEndStation.add(endStation, size);
+        if (initSecond != JourneyColumns.NO_VALUE) {
+            if (dated == byInitDate.length) {
+                byInitDate = Arrays.copyOf(byInitDate, dated * 2);
+            }
+            byInitDate[dated++] = ((long) initSecond << 32) | row;
+        }
+        size++;
+    }
+
+    /**
+     * Indexes the next journey by its service ID.
+     *
+     * @param serviceID The service ID.
+     * @param endStation The station the journey ended at, or null if it is not known.
+     * @param initSecond The start date in epoch seconds, or {@link JourneyColumns#NO_VALUE}.
+     * @param row The archive ordinal of the journey.
+     */
+    void add(ServiceID serviceID, String endStation, int initSecond, int row) {
+        add(serviceID.getUserId(), serviceID.getVehicleId(), endStation, initSecond, row);
+    }
+
+    /**
+     * Empties the index, which then starts at the given ordinal.
+     *
+     * @param first The ordinal of the next journey to index.
+     */
+    void clear(int first) {
+        byUser.clear();
+        byVehicle.clear();
+        byEndStation.clear();
+        dated = 0;
+        sorted = 0;
+        size = 0;
+        this.first = first;
+    }
+
+    int[] byUser(String user) {
+        return byUser.rows(user, first);
+    }
+
+    int[] byVehicle(String vehicle) {
+        return byVehicle.rows(vehicle, first);
+    }
+
+    int[] byEndStation(String station) {
+        return byEndStation.rows(station, first);
+    }
+
+    /**
+     * Returns the journeys started within a range of seconds.
+     *
+     * @param from The first second (inclusive).
+     * @param to The last second (inclusive).
+     * @return The ordinals of the journeys, in increasing order.
+     */
+    int[] byInitDate(int from, int to) {
+        if (from > to) {
+            return NO_ROWS;
+        }
+        if (sorted < dated) {
+            Arrays.sort(byInitDate, 0, dated); // Start dates arrive almost in order
+            sorted = dated;
+        }
+        int low = lowerBound((long) from << 32);
+        int high = lowerBound(((long) to << 32) | 0xFFFFFFFFL); // Above every ordinal of that second
+        int[] rows = new int[high - low];
+        for (int i = low; i < high; i++) {
+            rows[i - low] = (int) byInitDate[i];
+        }
+        Arrays.sort(rows); // Journeys do not end in the order they start
+        return rows;
+    }
+
+    // Internal operations
+
+    /**
+     * Returns the index of the first start date entry not lower than a key.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = dated;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (byInitDate[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The journeys of each key, chained through a primitive array and numbered from the first
+     * indexed one. Keys are coded once; the chain of a key is walked backwards from its last
+     * journey.
+     */
+    private static class Postings {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private int[] last = new int[16]; // Per key code: the latest journey
+        private int[] counts = new int[16]; // Per key code: the number of journeys
+        private int[] previous = new int[64]; // Per journey: the previous journey with the same key
+
+        void add(String key, int row) {
+            if (row == previous.length) {
+                previous = Arrays.copyOf(previous, row * 2);
+            }
+            if (key == null) {
+                previous[row] = NO_ROW;
+                return;
+            }
+            Integer code = codes.get(key);
+            if (code == null) {
+                code = codes.size();
+                if (code == last.length) {
+                    last = Arrays.copyOf(last, code * 2);
+                    counts = Arrays.copyOf(counts, code * 2);
+                }
+                codes.put(key, code);
+                last[code] = NO_ROW;
+                counts[code] = 0;
+            }
+            previous[row] = last[code];
+            last[code] = row;
+            counts[code]++;
+        }
+
+        /**
+         * Returns the ordinals of the journeys of a key, in increasing order.
+         *
+         * @param first The ordinal of the first indexed journey.
+         */
+        int[] rows(String key, int first) {
+            Integer code = key == null ? null : codes.get(key);
+            if (code == null) {
+                return NO_ROWS;
+            }
+            int[] rows = new int[counts[code]];
+            int i = rows.length;
+            for (int row = last[code]; row != NO_ROW; row = previous[row]) {
+                rows[--i] = first + row;
+            }
+            return rows;
+        }
+
+        void clear() {
+            codes.clear();
+        }
+    }
+
+    /**
+     * A growable list of ordinals, kept as an int array to avoid boxing.
+     */
+    static class Rows {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int row) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = row;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
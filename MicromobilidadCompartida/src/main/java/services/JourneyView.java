@@ -0,0 +1,216 @@
+package services;
+
+import data.GeographicPoint;
+import data.ServiceID;
+import micromobility.GpsTrace;
+import micromobility.JourneyService;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * A reusable, read-only cursor over one archived journey.
+ * <p>
+ * {@link JourneyArchive#forEachView} moves a single view from row to row instead of building a
+ * {@link JourneyService} per journey, so scans only allocate what the caller asks for. The
+ * primitive getters read the packed columns in place, and the ID getters only decode the string
+ * they return; a view must not be kept once the action it was passed to has returned. Use {@link #toJourneyService()} to keep a copy.
+ */
+public final class JourneyView {
+
+    // Class members
+    private JourneyColumns block;
+    private int row;
+
+    JourneyView() {
+    }
+
+    /**
+     * Points the view at a row of a block.
+     */
+    void moveTo(JourneyColumns block, int row) {
+        this.block = block;
+        this.row = row;
+    }
+
+    /**
+     * Gets the user part of the service ID.
+     *
+     * @return The user account ID, decoded from the segment when it is sealed.
+     */
+    public String getUserId() {
+        return block.getString(JourneyColumns.USER, row);
+    }
+
+    /**
+     * Gets the vehicle part of the service ID.
+     *
+     * @return The vehicle ID, decoded from the segment when it is sealed.
+     */
+    public String getVehicleId() {
+        return block.getString(JourneyColumns.VEHICLE, row);
+    }
+
+    /**
+     * Gets the station part of the service ID.
+     *
+     * @return The station ID, decoded from the segment when it is sealed.
+     */
+    public String getStationId() {
+        return block.getString(JourneyColumns.STATION, row);
+    }
+
+    /**
+     * Gets the station the journey ended at.
+     *
+     * @return The end station ID, or null if it was not recorded.
+     */
+    public String getEndStationId() {
+        return block.getString(JourneyColumns.END_STATION, row);
+    }
+
+    /**
+     * Gets the service ID of the journey.
+     *
+     * @return A new {@link ServiceID}.
+     */
+    public ServiceID getServiceID() {
+        return block.serviceID(row);
+    }
+
+    /**
+     * Gets the start date as seconds since the epoch (UTC).
+     *
+     * @return The start date, or {@link Integer#MIN_VALUE} if it was not set.
+     */
+    public int getInitEpochSecond() {
+        return block.getInt(JourneyColumns.INIT_DATE, row);
+    }
+
+    /**
+     * Gets the end date as seconds since the epoch (UTC).
+     *
+     * @return The end date, or {@link Integer#MIN_VALUE} if it was not set.
+     */
+    public int getEndEpochSecond() {
+        return block.getInt(JourneyColumns.END_DATE, row);
+    }
+
+    /**
+     * Gets the start date of the journey.
+     *
+     * @return The start date, or null if it was not set.
+     */
+    public LocalDateTime getInitDate() {
+        return JourneyColumns.toDate(getInitEpochSecond());
+    }
+
+    /**
+     * Gets the end date of the journey.
+     *
+     * @return The end date, or null if it was not set.
+     */
+    public LocalDateTime getEndDate() {
+        return JourneyColumns.toDate(getEndEpochSecond());
+    }
+
+    /**
+     * Gets the start time of the journey.
+     *
+     * @return The start time, or null if it was not set.
+     */
+    public LocalTime getInitHour() {
+        return JourneyColumns.toTime(block.getInt(JourneyColumns.INIT_HOUR, row));
+    }
+
+    /**
+     * Gets the end time of the journey.
+     *
+     * @return The end time, or null if it was not set.
+     */
+    public LocalTime getEndHour() {
+        return JourneyColumns.toTime(block.getInt(JourneyColumns.END_HOUR, row));
+    }
+
+    /**
+     * Gets the duration of the journey.
+     *
+     * @return The duration in minutes.
+     */
+    public int getDuration() {
+        return block.getInt(JourneyColumns.DURATION, row);
+    }
+
+    /**
+     * Gets the distance traveled.
+     *
+     * @return The distance in kilometers.
+     */
+    public float getDistance() {
+        return block.getFloat(JourneyColumns.DISTANCE, row);
+    }
+
+    /**
+     * Gets the average speed.
+     *
+     * @return The average speed in km/h.
+     */
+    public float getAvgSpeed() {
+        return block.getFloat(JourneyColumns.AVG_SPEED, row);
+    }
+
+    /**
+     * Gets the starting point.
+     *
+     * @return A new point, or null if it was not set.
+     */
+    public GeographicPoint getOriginPoint() {
+        return block.getPoint(JourneyColumns.ORIGIN_LAT, JourneyColumns.ORIGIN_LON, row);
+    }
+
+    /**
+     * Gets the end point.
+     *
+     * @return A new point, or null if it was not set.
+     */
+    public GeographicPoint getEndPoint() {
+        return block.getPoint(JourneyColumns.END_LAT, JourneyColumns.END_LON, row);
+    }
+
+    /**
+     * Gets the cost of the journey in cents.
+     *
+     * @return The cost, rounded half-up to whole cents.
+     */
+    public long getImportCents() {
+        return block.getCents(row);
+    }
+
+    /**
+     * Gets the cost of the journey.
+     *
+     * @return The cost with two decimals.
+     */
+    public BigDecimal getImportCost() {
+        return BigDecimal.valueOf(getImportCents(), 2);
+    }
+
+    /**
+     * Decodes the route the vehicle followed during the journey.
+     *
+     * @return A new trace, or null if the journey recorded no route.
+     */
+    public GpsTrace getTrace() {
+        return block.getRoute(row);
+    }
+
+    /**
+     * Copies the journey out of the archive.
+     *
+     * @return A new, finished {@link JourneyService}.
+     */
+    public JourneyService toJourneyService() {
+        return block.get(row);
+    }
+}
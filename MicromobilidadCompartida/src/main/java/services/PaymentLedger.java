@@ -0,0 +1,515 @@
+package services;
+
+import data.ServiceID;
+import data.UserAccount;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Typed, idempotent record of the payments registered on the server.
+ * <p>
+ * Each user has its own set of parallel columns (service ID, amount in cents, payment method and
+ * timestamp) that grow by doubling, and the running total per user is kept alongside the columns.
+ * A service ID is recorded at most once, so a payment retried after a failure is not charged
+ * twice.
+ * <p>
+ * Once a file is opened with {@link #open(Path)} every entry is also appended to it through a
+ * memory map and forced to disk before {@link #append} returns. Records are framed as
+ * {@code [int length][payload][int crc32]}; a torn record at the end of the file is discarded when
+ * it is opened again.
+ */
+public class PaymentLedger implements Closeable {
+
+    /**
+     * Receives the entries of a user's ledger.
+     */
+    public interface EntryVisitor {
+        void visit(ServiceID servID, long cents, byte method, long timestamp);
+    }
+
+    private static final int INITIAL_FILE_SIZE = 64 * 1024;
+    private static final int MAX_RECORD_SIZE = 1024;
+    private static final int FRAME_SIZE = 2 * Integer.BYTES; // length + crc32
+
+    // Class members
+    private final Map<UserAccount, Account> accounts = new ConcurrentHashMap<>();
+    private final Set<ServiceID> recorded = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final CRC32 crc = new CRC32();
+
+    // Persistent mode (null when running in memory only)
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int position;
+
+    /**
+     * Records a payment unless one was already recorded for the same service.
+     *
+     * @param user The user account.
+     * @param servID The service ID the payment is for.
+     * @param cents The amount in cents.
+     * @param method The payment method code.
+     * @param timestamp The time of the payment in milliseconds since the epoch.
+     * @return true if the payment was recorded, false if it is a duplicate.
+     * @throws IOException if the entry cannot be written to the ledger file.
+     */
+    public boolean append(UserAccount user, ServiceID servID, long cents, byte method, long timestamp) throws IOException {
+        writeLock.lock();
+        try {
+            if (recorded.contains(servID)) {
+                return false;
+            }
+            if (mapped != null) {
+                int start = position;
+                try {
+                    write(user, servID, cents, method, timestamp);
+                    mapped.force(start, position - start);
+                } catch (IOException | RuntimeException e) {
+                    rollback(start);
+                    throw e;
+                }
+            }
+            record(user, servID, cents, method, timestamp);
+            recorded.add(servID);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Records every payment of a batch whose service has not been paid yet, forcing the ledger file
+     * once for the whole batch. {@link Batch#isRecorded(int)} tells which entries were new. If the
+     * file cannot be written none of the entries is recorded.
+     *
+     * @param batch The payments to record.
+     * @throws IOException if the entries cannot be written to the ledger file.
+     */
+    public void append(Batch batch) throws IOException {
+        writeLock.lock();
+        try {
+            int start = position;
+            try {
+                for (int i = 0; i < batch.size; i++) {
+                    batch.recorded[i] = recorded.add(batch.servIDs[i]); // Also catches duplicates within the batch
+                    if (batch.recorded[i] && mapped != null) {
+                        write(batch.users[i], batch.servIDs[i], batch.cents[i], batch.methods[i], batch.timestamps[i]);
+                    }
+                }
+                if (mapped != null && position > start) {
+                    mapped.force(start, position - start);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (int i = 0; i < batch.size; i++) {
+                    if (batch.recorded[i]) {
+                        recorded.remove(batch.servIDs[i]);
+                        batch.recorded[i] = false;
+                    }
+                }
+                if (mapped != null) {
+                    rollback(start);
+                }
+                throw e;
+            }
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.recorded[i]) {
+                    record(batch.users[i], batch.servIDs[i], batch.cents[i], batch.methods[i], batch.timestamps[i]);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a payment was recorded for a service.
+     *
+     * @param servID The service ID.
+     * @return true if the service has been paid.
+     */
+    public boolean contains(ServiceID servID) {
+        return recorded.contains(servID);
+    }
+
+    /**
+     * Returns the sum of a user's payments.
+     *
+     * @param user The user account.
+     * @return The total in cents, or 0 if the user has no payments.
+     */
+    public long total(UserAccount user) {
+        Account account = accounts.get(user);
+        return account == null ? 0 : account.total();
+    }
+
+    /**
+     * Returns the number of payments of a user.
+     *
+     * @param user The user account.
+     * @return The number of entries in the user's ledger.
+     */
+    public int count(UserAccount user) {
+        Account account = accounts.get(user);
+        return account == null ? 0 : account.count();
+    }
+
+    /**
+     * Visits a user's payments in the order they were recorded.
+     *
+     * @param user The user account.
+     * @param visitor The visitor to call for each entry.
+     */
+    public void forEach(UserAccount user, EntryVisitor visitor) {
+        Account account = accounts.get(user);
+        if (account != null) {
+            account.forEach(visitor);
+        }
+    }
+
+    /**
+     * Returns the users with at least one payment.
+     *
+     * @return A copy of the set of users.
+     */
+    public List<UserAccount> users() {
+        return new ArrayList<>(accounts.keySet());
+    }
+
+    // Persistent mode
+
+    /**
+     * Replaces the entries in memory with the ones stored in a ledger file and appends every new
+     * entry to it.
+     *
+     * @param file The ledger file. It is created if it does not exist.
+     * @return The number of entries loaded.
+     * @throws IOException if the file cannot be opened or mapped, or holds an entry that cannot be
+     *                     read. The file is closed and the entries in memory are left unchanged.
+     * @throws IllegalStateException if a ledger file is already open.
+     */
+    public int open(Path file) throws IOException {
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                throw new IllegalStateException("A ledger file is already open.");
+            }
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buf;
+            Batch loaded = new Batch(64);
+            int pos = 0;
+            try {
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(ch.size(), INITIAL_FILE_SIZE));
+                Set<ServiceID> seen = new HashSet<>();
+                while (pos + FRAME_SIZE < buf.capacity()) {
+                    int length = buf.getInt(pos);
+                    if (length <= 0 || length > MAX_RECORD_SIZE || pos + FRAME_SIZE + length > buf.capacity()) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(buf.slice(pos + Integer.BYTES, length));
+                    if ((int) crc.getValue() != buf.getInt(pos + Integer.BYTES + length)) {
+                        break;
+                    }
+                    buf.position(pos + Integer.BYTES);
+                    UserAccount user;
+                    ServiceID servID;
+                    try {
+                        user = new UserAccount(getAscii(buf));
+                        servID = ServiceID.of(getAscii(buf));
+                    } catch (RuntimeException e) {
+                        throw new IOException("Unreadable payment entry at offset " + pos + " of " + file, e);
+                    }
+                    long cents = buf.getLong();
+                    byte method = buf.get();
+                    long timestamp = buf.getLong();
+                    if (seen.add(servID)) { // A duplicate left by an older version is counted once
+                        loaded.add(user, servID, cents, method, timestamp);
+                    }
+                    pos += FRAME_SIZE + length;
+                }
+
+                // Only the last write can be torn; zero it so its bytes cannot be mistaken for new records
+                for (int i = pos; i < Math.min(buf.capacity(), pos + FRAME_SIZE + MAX_RECORD_SIZE); i++) {
+                    buf.put(i, (byte) 0);
+                }
+                buf.force();
+                ch.force(true);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    ch.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e; // The entries in memory are left as they were
+            }
+
+            // The file is loaded: only now replace the entries in memory
+            accounts.clear();
+            recorded.clear();
+            for (int i = 0; i < loaded.size(); i++) {
+                recorded.add(loaded.servIDs[i]);
+                record(loaded.users[i], loaded.servIDs[i], loaded.cents[i], loaded.methods[i], loaded.timestamps[i]);
+            }
+            int count = loaded.size();
+
+            channel = ch;
+            mapped = buf;
+            position = pos;
+            return count;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Forces and closes the ledger file. The entries stay in memory, but new ones are no longer
+     * persisted.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                mapped.force();
+                channel.close();
+                channel = null;
+                mapped = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Conversions
+
+    /**
+     * Converts an amount to cents.
+     *
+     * @param imp The amount.
+     * @return The amount in cents, rounded half-up.
+     */
+    public static long toCents(BigDecimal imp) {
+        return imp.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts a payment method character to its code.
+     *
+     * @param payMeth The payment method.
+     * @return The method as a single byte.
+     * @throws IllegalArgumentException if the method is not an ASCII character.
+     */
+    public static byte methodCode(char payMeth) {
+        if (payMeth > 0x7F) {
+            throw new IllegalArgumentException("Payment method must be an ASCII character.");
+        }
+        return (byte) payMeth;
+    }
+
+    // Internal operations
+
+    private void record(UserAccount user, ServiceID servID, long cents, byte method, long timestamp) {
+        Account account = accounts.get(user);
+        if (account == null) {
+            account = accounts.computeIfAbsent(user, k -> new Account());
+        }
+        account.append(servID, cents, method, timestamp);
+    }
+
+    /**
+     * Appends an entry to the mapped file, growing the mapping if needed. The caller forces it.
+     * IDs are ASCII by construction, so they are written one byte per character.
+     */
+    private void write(UserAccount user, ServiceID servID, long cents, byte method, long timestamp) throws IOException {
+        int length = 2 * Short.BYTES + user.getId().length() + servID.getId().length() + Long.BYTES + 1 + Long.BYTES;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("Payment entry too large for the ledger file.");
+        }
+        if (position + FRAME_SIZE + length > mapped.capacity()) {
+            mapped.force();
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * mapped.capacity());
+            channel.force(true); // The file grew
+        }
+
+        int start = position + Integer.BYTES;
+        mapped.position(start);
+        putAscii(mapped, user.getId());
+        putAscii(mapped, servID.getId());
+        mapped.putLong(cents);
+        mapped.put(method);
+        mapped.putLong(timestamp);
+        crc.reset();
+        crc.update(mapped.slice(start, length));
+        mapped.putInt((int) crc.getValue());
+        mapped.putInt(position, length); // Written last: the record is only visible once complete
+        position += FRAME_SIZE + length;
+    }
+
+    /**
+     * Zeroes the records written since a position, so they are not reloaded, and rewinds to it.
+     */
+    private void rollback(int start) {
+        for (int i = start; i < position; i++) {
+            mapped.put(i, (byte) 0);
+        }
+        mapped.putInt(start, 0); // Also hides a record whose write failed before it was counted
+        position = start;
+    }
+
+    private static void putAscii(ByteBuffer buf, String s) {
+        buf.putShort((short) s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf.put((byte) s.charAt(i));
+        }
+    }
+
+    private static String getAscii(ByteBuffer buf) {
+        char[] chars = new char[buf.getShort()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) buf.get();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * A reusable group of payments for {@link #append(Batch)}. Entries are kept in parallel arrays
+     * that grow by doubling, so a batch reused across calls stops allocating.
+     */
+    public static final class Batch {
+        private UserAccount[] users;
+        private ServiceID[] servIDs;
+        private long[] cents;
+        private byte[] methods;
+        private long[] timestamps;
+        private boolean[] recorded;
+        private int size;
+
+        /**
+         * Creates an empty batch.
+         *
+         * @param capacity The initial number of entries.
+         */
+        public Batch(int capacity) {
+            int initial = Math.max(capacity, 1);
+            users = new UserAccount[initial];
+            servIDs = new ServiceID[initial];
+            cents = new long[initial];
+            methods = new byte[initial];
+            timestamps = new long[initial];
+            recorded = new boolean[initial];
+        }
+
+        /**
+         * Adds a payment to the batch.
+         *
+         * @return The index of the entry.
+         */
+        public int add(UserAccount user, ServiceID servID, long amount, byte method, long timestamp) {
+            if (size == cents.length) {
+                int capacity = size * 2;
+                users = Arrays.copyOf(users, capacity);
+                servIDs = Arrays.copyOf(servIDs, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                methods = Arrays.copyOf(methods, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                recorded = Arrays.copyOf(recorded, capacity);
+            }
+            users[size] = user;
+            servIDs[size] = servID;
+            cents[size] = amount;
+            methods[size] = method;
+            timestamps[size] = timestamp;
+            recorded[size] = false;
+            return size++;
+        }
+
+        /**
+         * Tells whether an entry was recorded by the last {@link #append(Batch)}.
+         *
+         * @param i The index returned by {@link #add}.
+         * @return false if the service had already been paid.
+         */
+        public boolean isRecorded(int i) {
+            return recorded[i];
+        }
+
+        /**
+         * Returns the number of entries in the batch.
+         *
+         * @return The number of entries added since the last {@link #clear()}.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Empties the batch, dropping its references so they can be collected.
+         */
+        public void clear() {
+            Arrays.fill(users, 0, size, null);
+            Arrays.fill(servIDs, 0, size, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * The columns of a single user's ledger.
+     */
+    private static class Account {
+        private ServiceID[] services = new ServiceID[8];
+        private long[] cents = new long[8];
+        private byte[] methods = new byte[8];
+        private long[] timestamps = new long[8];
+        private int size;
+        private long total;
+
+        synchronized void append(ServiceID servID, long amount, byte method, long timestamp) {
+            if (size == cents.length) {
+                int capacity = size * 2;
+                services = Arrays.copyOf(services, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                methods = Arrays.copyOf(methods, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            services[size] = servID;
+            cents[size] = amount;
+            methods[size] = method;
+            timestamps[size] = timestamp;
+            size++;
+            total += amount;
+        }
+
+        synchronized long total() {
+            return total;
+        }
+
+        synchronized int count() {
+            return size;
+        }
+
+        synchronized void forEach(EntryVisitor visitor) {
+            for (int i = 0; i < size; i++) {
+                visitor.visit(services[i], cents[i], methods[i], timestamps[i]);
+            }
+        }
+    }
+}
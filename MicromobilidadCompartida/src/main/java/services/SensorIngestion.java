@@ -0,0 +1,401 @@
+package services;
+
+import data.sensors.SensorSnapshot;
+import micromobility.PMVehicle;
+
+import java.io.Closeable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingestion of timestamped sensor readings sent by the vehicles of the fleet.
+ * <p>
+ * Any number of threads offer readings into a bounded ring, without locks: a producer claims a
+ * position by compare-and-set, writes the reading into the columns of the ring and publishes the
+ * position. A single worker drains the published readings in batches, sets each one on its
+ * {@link PMVehicle} unless the vehicle already holds a newer reading of that sensor, and then hands
+ * the whole batch to every {@link Listener}. Readings are stored as primitive columns, so neither
+ * offering nor draining allocates.
+ * <p>
+ * When the ring is full the reading is dropped and {@link #offer} returns false: telemetry is
+ * resent every few hundred milliseconds, so a stalled consumer must not block the vehicles.
+ * <p>
+ * A reading whose sensor throws while it is set, and a listener that throws, are counted and
+ * skipped: the single worker must keep draining, or the ring would fill and drop every reading.
+ */
+public class SensorIngestion implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int DEFAULT_MAX_BATCH = 1024;
+
+    private static final int SPINS = 256; // Empty polls before the worker parks
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // Class members
+    private final int mask;
+    private final PMVehicle[] vehicles;
+    private final int[] slots;
+    private final double[] values;
+    private final long[] timestamps;
+    private final AtomicLongArray published; // Position + 1 once the reading at an index is written
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // Written by the worker only
+    private final Batch batch;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong listenerFailures = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Receives the readings drained from the ring, once they are set on their vehicles.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the ingestion thread for every batch drained.
+         *
+         * @param batch The readings. The batch is reused, and is only valid during the call.
+         */
+        void onReadings(Batch batch);
+    }
+
+    /**
+     * Creates an ingestion pipeline with the default capacity and batch size.
+     */
+    public SensorIngestion() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Creates an ingestion pipeline.
+     *
+     * @param capacity The number of readings the ring holds, rounded up to a power of two.
+     * @param maxBatch The maximum number of readings drained in one pass.
+     * @throws IllegalArgumentException if a size is not positive or the capacity is too large.
+     */
+    public SensorIngestion(int capacity, int maxBatch) {
+        if (capacity <= 0 || maxBatch <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ingestion sizes must be positive.");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.vehicles = new PMVehicle[size];
+        this.slots = new int[size];
+        this.values = new double[size];
+        this.timestamps = new long[size];
+        this.published = new AtomicLongArray(size);
+        this.batch = new Batch(Math.min(maxBatch, size));
+        this.worker = new Thread(this::run, "sensor-ingestion");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Offers a reading of one sensor.
+     *
+     * @param vehicle The vehicle the reading comes from.
+     * @param slot The sensor, as a slot such as {@link SensorSnapshot#SPEED}.
+     * @param value The value, in the units of the slot.
+     * @param timestamp The time the reading was taken, in epoch milliseconds.
+     * @return true if the reading was queued; false if the ring is full or the pipeline closed.
+     * @throws IllegalArgumentException if the vehicle is null or the slot is not a sensor slot.
+     */
+    public boolean offer(PMVehicle vehicle, int slot, double value, long timestamp) {
+        if (vehicle == null || slot < 0 || slot >= SensorSnapshot.SLOTS) {
+            throw new IllegalArgumentException("A reading needs a vehicle and a sensor slot");
+        }
+        long position = claim(1);
+        if (position < 0) {
+            return false;
+        }
+        write(position, vehicle, slot, value, timestamp);
+        return true;
+    }
+
+    /**
+     * Offers every value present in a snapshot as readings taken at the same time. The readings
+     * are queued together or not at all.
+     *
+     * @param vehicle The vehicle the readings come from.
+     * @param snapshot The values. Missing slots are skipped.
+     * @param timestamp The time the readings were taken, in epoch milliseconds.
+     * @return true if the readings were queued, or there were none; false if the ring is full or
+     *         the pipeline closed.
+     * @throws IllegalArgumentException if the vehicle or the snapshot is null.
+     */
+    public boolean offer(PMVehicle vehicle, SensorSnapshot snapshot, long timestamp) {
+        if (vehicle == null || snapshot == null) {
+            throw new IllegalArgumentException("Readings need a vehicle and a snapshot");
+        }
+        int count = 0;
+        for (int slot = 0; slot < SensorSnapshot.SLOTS; slot++) {
+            if (snapshot.has(slot)) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return true;
+        }
+        long position = claim(count);
+        if (position < 0) {
+            return false;
+        }
+        for (int slot = 0; slot < SensorSnapshot.SLOTS; slot++) {
+            if (snapshot.has(slot)) {
+                write(position++, vehicle, slot, snapshot.get(slot), timestamp);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a listener for the batches drained.
+     *
+     * @param listener The listener.
+     * @throws IllegalArgumentException if the listener is null.
+     */
+    public void addListener(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the number of readings dropped because the ring was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of readings set on their vehicles.
+     */
+    public long getApplied() {
+        return applied.get();
+    }
+
+    /**
+     * @return the number of readings not set because the vehicle held a newer one, or had no
+     *         sensor for the slot.
+     */
+    public long getStale() {
+        return stale.get();
+    }
+
+    /**
+     * @return the number of readings not set because their sensor threw while taking them.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of times a listener threw while handling a batch.
+     */
+    public long getListenerFailures() {
+        return listenerFailures.get();
+    }
+
+    /**
+     * Drains every queued reading and stops the worker. Readings offered afterwards are refused;
+     * one offered by another thread while closing may be either refused or lost.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A batch of readings drained from the ring, as parallel columns.
+     */
+    public static final class Batch {
+        private final PMVehicle[] vehicles;
+        private final int[] slots;
+        private final double[] values;
+        private final long[] timestamps;
+        private int size;
+
+        private Batch(int capacity) {
+            this.vehicles = new PMVehicle[capacity];
+            this.slots = new int[capacity];
+            this.values = new double[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        /**
+         * @return the number of readings in the batch.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i The index of a reading.
+         * @return the vehicle the reading comes from.
+         */
+        public PMVehicle getVehicle(int i) {
+            return vehicles[check(i)];
+        }
+
+        /**
+         * @param i The index of a reading.
+         * @return the sensor slot of the reading, such as {@link SensorSnapshot#SPEED}.
+         */
+        public int getSlot(int i) {
+            return slots[check(i)];
+        }
+
+        /**
+         * @param i The index of a reading.
+         * @return the value of the reading.
+         */
+        public double getValue(int i) {
+            return values[check(i)];
+        }
+
+        /**
+         * @param i The index of a reading.
+         * @return the time the reading was taken, in epoch milliseconds.
+         */
+        public long getTimestamp(int i) {
+            return timestamps[check(i)];
+        }
+
+        private int check(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Not a reading of the batch: " + i);
+            }
+            return i;
+        }
+    }
+
+    // Internal operations
+
+    /**
+     * Claims consecutive positions of the ring for a producer.
+     *
+     * @return the first position, or -1 if there is not enough room or the pipeline is closed.
+     */
+    private long claim(int count) {
+        while (true) {
+            if (closed) {
+                return -1;
+            }
+            long position = tail.get();
+            if (position + count - head > mask + 1) {
+                dropped.add(count);
+                return -1;
+            }
+            if (tail.compareAndSet(position, position + count)) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Writes a reading at a claimed position and publishes it. The ordered store of the position
+     * makes the plain writes before it visible to the worker that reads it.
+     */
+    private void write(long position, PMVehicle vehicle, int slot, double value, long timestamp) {
+        int i = (int) position & mask;
+        vehicles[i] = vehicle;
+        slots[i] = slot;
+        values[i] = value;
+        timestamps[i] = timestamp;
+        published.lazySet(i, position + 1);
+    }
+
+    private void run() {
+        int idle = 0;
+        while (true) {
+            if (drain() > 0) {
+                idle = 0;
+                continue;
+            }
+            if (closed && head == tail.get()) {
+                return; // Every claimed reading is drained
+            }
+            if (++idle < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Copies the published readings out of the ring, up to a batch, releases their positions, sets
+     * them on their vehicles and hands the batch to the listeners. Stops at the first position
+     * claimed but not yet published, so readings are drained in the order they were claimed.
+     */
+    private int drain() {
+        long position = head;
+        int n = 0;
+        while (n < batch.vehicles.length) {
+            int i = (int) position & mask;
+            if (published.get(i) != position + 1) {
+                break;
+            }
+            batch.vehicles[n] = vehicles[i];
+            batch.slots[n] = slots[i];
+            batch.values[n] = values[i];
+            batch.timestamps[n] = timestamps[i];
+            vehicles[i] = null;
+            n++;
+            position++;
+        }
+        if (n == 0) {
+            return 0;
+        }
+        head = position;
+        batch.size = n;
+
+        int taken = 0;
+        int errors = 0;
+        for (int r = 0; r < n; r++) {
+            try {
+                if (batch.vehicles[r].updateSensor(batch.slots[r], batch.values[r], batch.timestamps[r])) {
+                    taken++;
+                }
+            } catch (RuntimeException e) { // A faulty sensor must not stop the worker
+                errors++;
+            }
+        }
+        applied.addAndGet(taken);
+        failed.addAndGet(errors);
+        stale.addAndGet(n - taken - errors);
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onReadings(batch);
+            } catch (RuntimeException e) { // A failing listener must not stop ingestion for the others
+                listenerFailures.incrementAndGet();
+            }
+        }
+        return n;
+    }
+}
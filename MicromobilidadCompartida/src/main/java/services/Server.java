@@ -6,13 +6,16 @@ import data.StationID;
 import data.UserAccount;
 import data.VehicleID;
 import exception.InvalidPairingArgsException;
+import exception.NotEnoughWalletException;
 import exception.PMVNotAvailException;
 import exception.PairingNotFoundException;
+import micromobility.GpsTrace;
 import micromobility.JourneyService;
 
 import java.math.BigDecimal;
 import java.net.ConnectException;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 public interface Server { // External service for the persistent storage
 
@@ -28,6 +31,19 @@ public interface Server { // External service for the persistent storage
              int dur, BigDecimal imp)
                         throws InvalidPairingArgsException, ConnectException;
 
+    /**
+     * Stops a pairing and keeps the route the vehicle recorded with the journey. By default the
+     * route is dropped; a server that archives journeys stores it with them.
+     *
+     * @param route The finished route of the journey, or null if none was recorded.
+     */
+    default void stopPairing(UserAccount user, VehicleID veh, StationID st,
+             GeographicPoint loc, LocalDateTime date, float avSp, float dist,
+             int dur, BigDecimal imp, GpsTrace route)
+                        throws InvalidPairingArgsException, ConnectException {
+        stopPairing(user, veh, st, loc, date, avSp, dist, dur, imp);
+    }
+
     // Internal operations
     void setPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date);
     void unPairRegisterService(JourneyService s)
@@ -36,4 +52,30 @@ public interface Server { // External service for the persistent storage
 
     void registerPayment(ServiceID servID, UserAccount user, BigDecimal imp,
                          char payMeth) throws ConnectException;
+
+    /**
+     * Charges a journey to the user's wallet and registers the payment. By default the wallet is
+     * charged and the payment registered on the calling thread, and the charge is given back if
+     * the payment cannot be registered; a server may settle charges in the background instead.
+     *
+     * @param servID The service ID of the journey.
+     * @param user The user whose wallet is charged.
+     * @param imp The amount to charge.
+     * @return A future completed once the payment is registered, or completed exceptionally with
+     *         {@link NotEnoughWalletException} or {@link ConnectException}.
+     */
+    default CompletableFuture<Void> settleWalletPayment(ServiceID servID, UserAccount user, BigDecimal imp) {
+        try {
+            user.getUserWallet().deduct(imp);
+        } catch (NotEnoughWalletException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            registerPayment(servID, user, imp, 'W');
+            return CompletableFuture.completedFuture(null);
+        } catch (ConnectException | RuntimeException e) {
+            user.getUserWallet().addFunds(imp); // Not registered: give the money back
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
\ No newline at end of file
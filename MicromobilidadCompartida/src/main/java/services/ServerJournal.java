@@ -0,0 +1,443 @@
+package services;
+
+import data.GeographicPoint;
+import data.StationID;
+import data.UserAccount;
+import data.VehicleID;
+import micromobility.GpsTrace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal for the mutating {@link Server} operations.
+ * <p>
+ * Records are framed as {@code [int length][byte type][payload][int crc32]} and appended to a
+ * {@link FileChannel}. Callers encode into an in-memory batch and get back a sequence number; a
+ * single flusher thread writes the whole batch and calls {@code force} once for every record in it
+ * (group commit). {@link #awaitDurable(long)} blocks until a given record has been forced to disk.
+ * <p>
+ * A stop pairing record carries the encoded route of the journey, so a record is at most
+ * {@link #MAX_ROUTE_SIZE} bytes larger than the others.
+ */
+public class ServerJournal implements Closeable {
+
+    // Record types
+    static final byte PAIRING = 1;
+    static final byte STOP_PAIRING = 2;
+    static final byte LOCATION = 3;
+
+    private static final int HEADER_SIZE = Integer.BYTES + 1; // length + type
+    private static final int TRAILER_SIZE = Integer.BYTES; // crc32
+    private static final int MAX_FIELDS_SIZE = 1024; // Every field of a record but the route
+    static final int MAX_ROUTE_SIZE = 63 * 1024;
+    private static final int MAX_RECORD_SIZE = MAX_FIELDS_SIZE + MAX_ROUTE_SIZE;
+    private static final int BATCH_CAPACITY = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_FIELDS_SIZE));
+    private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+
+    // Class members
+    private FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private ByteBuffer active = ByteBuffer.allocateDirect(BATCH_CAPACITY);
+    private ByteBuffer flushing = ByteBuffer.allocateDirect(BATCH_CAPACITY);
+    private long appendedSeq; // Sequence of the last record added to the batch
+    private long durableSeq; // Sequence of the last record forced to disk
+    private IOException failure;
+    private boolean closed;
+    private final Thread flusher;
+
+    /**
+     * Receives the records read back by {@link #replay(Path, Handler)}.
+     */
+    public interface Handler {
+        void onPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date);
+
+        void onStopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date,
+                           float avSp, float dist, int dur, BigDecimal imp, GpsTrace route);
+
+        void onLocation(VehicleID veh, StationID st);
+    }
+
+    /**
+     * Opens the journal for appending, creating the file if needed.
+     *
+     * @param file The journal file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ServerJournal(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.flusher = new Thread(this::flushLoop, "server-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Append operations
+
+    /**
+     * Appends a pairing record.
+     *
+     * @return The sequence number of the record.
+     * @throws IOException if the journal has failed or is closed.
+     */
+    public long logPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date) throws IOException {
+        ByteBuffer buf = begin(0);
+        putString(buf, user.getId());
+        putString(buf, veh.getId());
+        putString(buf, st.getId());
+        putPoint(buf, loc);
+        putDate(buf, date);
+        return append(PAIRING, buf);
+    }
+
+    /**
+     * Appends a stop pairing record without a route.
+     *
+     * @return The sequence number of the record.
+     * @throws IOException if the journal has failed or is closed.
+     */
+    public long logStopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date,
+                               float avSp, float dist, int dur, BigDecimal imp) throws IOException {
+        return logStopPairing(user, veh, st, loc, date, avSp, dist, dur, imp, null);
+    }
+
+    /**
+     * Appends a stop pairing record with the route of the journey.
+     *
+     * @param route The route, or null if none was recorded.
+     * @return The sequence number of the record.
+     * @throws IOException if the journal has failed or is closed.
+     * @throws IllegalArgumentException if the encoded route is larger than {@link #MAX_ROUTE_SIZE}.
+     */
+    public long logStopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date,
+                               float avSp, float dist, int dur, BigDecimal imp, GpsTrace route) throws IOException {
+        byte[] encoded = route == null ? null : route.getEncoded();
+        if (encoded != null && encoded.length > MAX_ROUTE_SIZE) {
+            throw new IllegalArgumentException("The route does not fit in a journal record");
+        }
+        ByteBuffer buf = begin(encoded == null ? 0 : encoded.length);
+        putString(buf, user.getId());
+        putString(buf, veh.getId());
+        putString(buf, st.getId());
+        putPoint(buf, loc);
+        putDate(buf, date);
+        buf.putFloat(avSp);
+        buf.putFloat(dist);
+        buf.putInt(dur);
+        putString(buf, imp.toString());
+        buf.putInt(encoded == null ? -1 : encoded.length);
+        if (encoded != null) {
+            buf.put(encoded);
+        }
+        return append(STOP_PAIRING, buf);
+    }
+
+    /**
+     * Appends a location record.
+     *
+     * @return The sequence number of the record.
+     * @throws IOException if the journal has failed or is closed.
+     */
+    public long logLocation(VehicleID veh, StationID st) throws IOException {
+        ByteBuffer buf = begin(0);
+        putString(buf, veh.getId());
+        putString(buf, st.getId());
+        return append(LOCATION, buf);
+    }
+
+    /**
+     * Blocks until the record with the given sequence number has been forced to disk.
+     *
+     * @param seq The sequence number returned by one of the log methods.
+     * @throws IOException if the flush failed or the wait was interrupted.
+     */
+    public void awaitDurable(long seq) throws IOException {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (failure != null) {
+                    throw failure;
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Switches appends to a new journal file. Every record appended before the call is forced to
+     * the current file first, so the old file can be discarded once a snapshot covers it.
+     *
+     * @param next The new journal file.
+     * @throws IOException if the flush fails or the new file cannot be opened.
+     */
+    public void rotate(Path next) throws IOException {
+        lock.lock();
+        try {
+            while (failure == null && (active.position() > 0 || durableSeq < appendedSeq)) {
+                flushed.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            // The flusher is idle here, so the channel can be swapped safely
+            FileChannel previous = channel;
+            channel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            previous.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every pending record and closes the journal file.
+     *
+     * @throws IOException if the final flush or close fails.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Replay
+
+    /**
+     * Reads every intact record of a journal file in order. A torn or corrupted tail, as left by a
+     * crash in the middle of a write, ends the replay and is cut off the file.
+     *
+     * @param file The journal file. Nothing is replayed if it does not exist.
+     * @param handler The receiver of the records.
+     * @return The number of records replayed.
+     * @throws IOException if the file cannot be read.
+     */
+    public static int replay(Path file, Handler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) in.size());
+            while (buf.hasRemaining() && in.read(buf) >= 0) {
+                // Read the whole file
+            }
+            buf.flip();
+
+            int count = 0;
+            CRC32 crc = CRC.get();
+            while (buf.remaining() >= HEADER_SIZE + TRAILER_SIZE) {
+                int start = buf.position();
+                int length = buf.getInt(start);
+                if (length <= 0 || length > MAX_RECORD_SIZE || buf.remaining() < Integer.BYTES + length + TRAILER_SIZE) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buf.slice(start + Integer.BYTES, length));
+                if ((int) crc.getValue() != buf.getInt(start + Integer.BYTES + length)) {
+                    break;
+                }
+                ByteBuffer record = buf.slice(start + Integer.BYTES, length);
+                dispatch(record.get(), record, handler);
+                buf.position(start + Integer.BYTES + length + TRAILER_SIZE);
+                count++;
+            }
+
+            if (buf.position() < in.size()) {
+                in.truncate(buf.position());
+            }
+            return count;
+        }
+    }
+
+    // Internal operations
+
+    private static void dispatch(byte type, ByteBuffer buf, Handler handler) {
+        switch (type) {
+            case PAIRING:
+                handler.onPairing(new UserAccount(getString(buf)), VehicleID.of(getString(buf)), StationID.of(getString(buf)),
+                        getPoint(buf), getDate(buf));
+                break;
+            case STOP_PAIRING:
+                handler.onStopPairing(new UserAccount(getString(buf)), VehicleID.of(getString(buf)), StationID.of(getString(buf)),
+                        getPoint(buf), getDate(buf), buf.getFloat(), buf.getFloat(), buf.getInt(), new BigDecimal(getString(buf)),
+                        getRoute(buf));
+                break;
+            case LOCATION:
+                handler.onLocation(VehicleID.of(getString(buf)), StationID.of(getString(buf)));
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type: " + type);
+        }
+    }
+
+    /**
+     * Returns the cleared scratch buffer of the calling thread, grown to take a route of the given
+     * size on top of the other fields.
+     */
+    private static ByteBuffer begin(int routeSize) {
+        ByteBuffer buf = SCRATCH.get();
+        if (buf.capacity() < MAX_FIELDS_SIZE + routeSize) {
+            buf = ByteBuffer.allocate(MAX_FIELDS_SIZE + routeSize);
+            SCRATCH.set(buf);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    private long append(byte type, ByteBuffer payload) throws IOException {
+        payload.flip();
+        int length = 1 + payload.remaining();
+        CRC32 crc = CRC.get();
+        crc.reset();
+        crc.update(type);
+        crc.update(payload.duplicate());
+
+        lock.lock();
+        try {
+            while (!closed && failure == null && active.remaining() < Integer.BYTES + length + TRAILER_SIZE) {
+                flushed.awaitUninterruptibly(); // Back-pressure until the flusher swaps batches
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IOException("Journal is closed.");
+            }
+            active.putInt(length);
+            active.put(type);
+            active.put(payload);
+            active.putInt((int) crc.getValue());
+            pending.signal();
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long batchSeq;
+            FileChannel target;
+            lock.lock();
+            try {
+                while (active.position() == 0 && !closed) {
+                    pending.awaitUninterruptibly();
+                }
+                if (active.position() == 0) {
+                    return; // Closed and drained
+                }
+                ByteBuffer full = active;
+                active = flushing;
+                flushing = full;
+                batchSeq = appendedSeq;
+                target = channel;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    target.write(flushing);
+                }
+                target.force(false);
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                flushing.clear();
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = batchSeq;
+                }
+                flushed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the route of a stop pairing record. Records written before routes were journaled end
+     * with the cost.
+     */
+    private static GpsTrace getRoute(ByteBuffer buf) {
+        int length = buf.remaining() >= Integer.BYTES ? buf.getInt() : -1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        buf.get(encoded);
+        return GpsTrace.decode(encoded);
+    }
+
+    private static void putPoint(ByteBuffer buf, GeographicPoint gp) {
+        buf.putFloat(gp.getLatitude());
+        buf.putFloat(gp.getLongitude());
+    }
+
+    private static GeographicPoint getPoint(ByteBuffer buf) {
+        return new GeographicPoint(buf.getFloat(), buf.getFloat());
+    }
+
+    private static void putDate(ByteBuffer buf, LocalDateTime date) {
+        buf.putLong(date.toEpochSecond(ZoneOffset.UTC));
+        buf.putInt(date.getNano());
+    }
+
+    private static LocalDateTime getDate(ByteBuffer buf) {
+        return LocalDateTime.ofEpochSecond(buf.getLong(), buf.getInt(), ZoneOffset.UTC);
+    }
+}
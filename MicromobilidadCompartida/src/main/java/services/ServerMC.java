@@ -4,30 +4,78 @@ import data.*;
 import exception.InvalidPairingArgsException;
 import exception.PMVNotAvailException;
 import exception.PairingNotFoundException;
+import micromobility.GpsTrace;
 import micromobility.JourneyService;
 import micromobility.PMVehicle;
 import micromobility.PMVState;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * Implementation of the server for managing PMVehicles, user pairing, and journey services.
- * Simulates database interactions using in-memory data structures like HashMaps and ArrayLists.
+ * Simulates database interactions using in-memory concurrent data structures.
+ * <p>
+ * Pairing is decided by an atomic state transition on the {@link PMVehicle}, so only one rider can
+ * win a given vehicle. The transition, its journal record and the writes to the maps are made in
+ * one critical section on a fixed set of lock stripes indexed by {@link VehicleID}, while vehicles
+ * hashed to different stripes run in parallel.
+ * <p>
+ * When a journal is opened with {@link #openJournal(Path)} every mutating call is also appended to
+ * a {@link ServerJournal} and only returns once its record is durable. The journal is split into
+ * numbered segments; {@link #checkpoint()} writes a {@link ServerSnapshot} and drops the segments it
+ * covers, so on the next start only the latest snapshot and the segments after it are read.
+ * Payments are not journaled: the {@link PaymentLedger} persists them in its own file and records
+ * each service at most once, so a retried {@link #registerPayment} never charges twice.
  */
 public class ServerMC implements Server {
 
     // Simulated database
-    public static Map<VehicleID, PMVehicle> vehicleAvailability = new HashMap<>();
-    public static Map<VehicleID, StationID> vehicleStationMap = new HashMap<>();
-    public static Map<VehicleID, UserAccount> vehicleUserMap = new HashMap<>();
-    private static Map<String, JourneyService> activeJourneyServices = new HashMap<>();
-    private static ArrayList<JourneyService> recordsJourneyServices = new ArrayList<>();
-    public static HashMap<UserAccount, ArrayList<String>> paymentRecords = new HashMap<>();
-    public static boolean statusConnection = true;
+    public static Map<VehicleID, PMVehicle> vehicleAvailability = new ConcurrentHashMap<>();
+    public static Map<VehicleID, StationID> vehicleStationMap = new ConcurrentHashMap<>();
+    public static Map<VehicleID, UserAccount> vehicleUserMap = new ConcurrentHashMap<>();
+    private static Map<VehicleID, JourneyService> activeJourneyServices = new ConcurrentHashMap<>();
+    private static volatile JourneyArchive recordsJourneyServices = new JourneyArchive(null);
+    public static final PaymentLedger paymentLedger = new PaymentLedger();
+    private static final VehicleIndex vehicleIndex = new VehicleIndex();
+    private static WalletSettlement walletSettlement; // Started on first use
+    public static volatile boolean statusConnection = true;
+
+    // Persistent mode (null when running in memory only)
+    private static volatile ServerJournal journal;
+    private static Path journalDir;
+    private static long journalSegment;
+    private static ScheduledExecutorService snapshotScheduler;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String ARCHIVE_DIR = "archive";
+    private static final String LEDGER_FILE = "payments.ledger";
+
+    // Lock striping (must be a power of two)
+    private static final int LOCK_STRIPES = 64;
+    private static final ReentrantLock[] vehicleLocks = new ReentrantLock[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            vehicleLocks[i] = new ReentrantLock();
+        }
+    }
 
     /**
      * Verifies if a PMVehicle is available for pairing.
@@ -74,12 +122,28 @@ public class ServerMC implements Server {
             throw new ConnectException("Vehicle is not available or does not exist.");
         }
 
-        StationID currentStation = vehicleStationMap.get(veh);
-        if (currentStation == null || !currentStation.equals(st)) {
-            throw new ConnectException("Vehicle is not at the specified station.");
-        }
+        long seq;
+        ReentrantLock lock = lockFor(veh);
+        lock.lock();
+        try {
+            StationID currentStation = vehicleStationMap.get(veh);
+            if (currentStation == null || !currentStation.equals(st)) {
+                throw new ConnectException("Vehicle is not at the specified station.");
+            }
 
-        setPairing(user, veh, st, loc, date);
+            // Only the rider that wins the AVAILABLE -> NOT_AVAILABLE transition goes on to pair.
+            // The reservation is made under the stripe lock, so a checkpoint never sees a reserved
+            // vehicle without its pairing.
+            if (!vehicle.tryNotAvailb()) {
+                throw new ConnectException("Vehicle is already paired with another user.");
+            }
+            seq = pairReserved(vehicle, user, veh, st, loc, date);
+        } catch (IOException e) {
+            throw journalFailure(e);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
     }
 
     /**
@@ -99,64 +163,99 @@ public class ServerMC implements Server {
      */
     @Override
     public void stopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date, float avSp, float dist, int dur, BigDecimal imp) throws InvalidPairingArgsException, ConnectException {
+        stopPairing(user, veh, st, loc, date, avSp, dist, dur, imp, null);
+    }
+
+    /**
+     * Stops the pairing between a user and a PMVehicle, completing the journey service and
+     * archiving it with its route. A route too large for a journal record is simplified until it
+     * fits.
+     *
+     * @param user The user account.
+     * @param veh The vehicle ID.
+     * @param st The station ID.
+     * @param loc The geographic location.
+     * @param date The end date and time of the pairing.
+     * @param avSp The average speed during the journey.
+     * @param dist The distance traveled.
+     * @param dur The duration of the journey.
+     * @param imp The cost of the journey.
+     * @param route The finished route of the journey, or null if none was recorded.
+     * @throws InvalidPairingArgsException if any of the arguments but the route are null.
+     * @throws ConnectException if the vehicle is not paired with the user.
+     */
+    @Override
+    public void stopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date, float avSp, float dist, int dur, BigDecimal imp,
+                            GpsTrace route) throws InvalidPairingArgsException, ConnectException {
         if (user == null || veh == null || st == null || loc == null || date == null || imp == null) {
             throw new InvalidPairingArgsException("One or more arguments are null.");
         }
-
-        PMVehicle vehicle = vehicleAvailability.get(veh);
-
-        UserAccount pairedUser = vehicleUserMap.get(veh);
-        if (pairedUser == null || !pairedUser.equals(user)) {
-            throw new ConnectException("Vehicle is not paired with the specified user.");
+        for (double toleranceKm = 0.005; route != null && route.getEncodedSize() > ServerJournal.MAX_ROUTE_SIZE; toleranceKm *= 2) {
+            route = route.simplify(toleranceKm);
         }
 
-        vehicle.setAvailb();
-        vehicleUserMap.remove(veh);
-        registerLocation(veh, st);
-
-        ServiceID serviceId = new ServiceID(String.format("%s_%s_%s", user.getId(), veh.getId(), st.getId()));
-        JourneyService journeyService = activeJourneyServices.get(serviceId.getId());
-        activeJourneyServices.remove(serviceId.getId());
-
-        journeyService.setEndPoint(loc);
-        journeyService.setEndDate(date.toLocalDate().atStartOfDay());
-        journeyService.setEndHour(date.toLocalTime());
-        journeyService.setAvgSpeed(avSp);
-        journeyService.setDistance(dist);
-        journeyService.setDuration(dur);
-        journeyService.setImportCost(imp);
-
+        long seq = 0;
+        ReentrantLock lock = lockFor(veh);
+        lock.lock();
         try {
+            UserAccount pairedUser = vehicleUserMap.get(veh);
+            if (pairedUser == null || !pairedUser.equals(user)) {
+                throw new ConnectException("Vehicle is not paired with the specified user.");
+            }
+
+            // Logged first: if the record cannot be written the ride is left as it was
+            ServerJournal j = journal;
+            if (j != null) {
+                seq = j.logStopPairing(user, veh, st, loc, date, avSp, dist, dur, imp, route);
+            }
+            JourneyService journeyService = applyStopPairing(user, veh, st, loc, date, avSp, dist, dur, imp, route);
             unPairRegisterService(journeyService);
+        } catch (ConnectException e) {
+            throw e;
+        } catch (IOException e) {
+            throw journalFailure(e);
         } catch (PairingNotFoundException e) {
             throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
         }
+        awaitDurable(seq);
     }
 
     /**
-     * Sets a pairing between a user and a PMVehicle.
+     * Sets a pairing between a user and a PMVehicle. The vehicle must be registered and AVAILABLE;
+     * it is reserved with the same transition as {@link #registerPairing}, so a vehicle that is
+     * already paired is never handed to a second rider.
      *
      * @param user The user account.
      * @param veh The vehicle ID.
      * @param st The station ID.
      * @param loc The geographic location.
      * @param date The pairing date and time.
+     * @throws IllegalStateException if the vehicle is unknown or not available.
      */
     @Override
     public void setPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date) {
-        PMVehicle vehicle = vehicleAvailability.computeIfAbsent(veh, k -> new PMVehicle(PMVState.AVAILABLE, loc, 0.0));
-        vehicle.setId(veh);
-        vehicle.setNotAvailb();
-        vehicleUserMap.put(veh, user);
-        vehicleStationMap.put(veh, st);
+        long seq;
+        ReentrantLock lock = lockFor(veh);
+        lock.lock();
+        try {
+            PMVehicle vehicle = vehicleAvailability.get(veh);
+            if (vehicle == null || !vehicle.tryNotAvailb()) {
+                throw new IllegalStateException("Vehicle is not available for pairing.");
+            }
+            seq = pairReserved(vehicle, user, veh, st, loc, date);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
 
-        ServiceID serviceId = new ServiceID(String.format("%s_%s_%s", user.getId(), veh.getId(), st.getId()));
-        JourneyService journeyService = new JourneyService(serviceId, loc);
-        journeyService.setOriginPoint(vehicle.getLocation());
-        journeyService.setInitDate(LocalDateTime.now());
-        journeyService.setInitHour(LocalTime.now());
-        journeyService.setServiceInit();
-        activeJourneyServices.put(serviceId.getId(), journeyService);
+        try {
+            awaitDurable(seq);
+        } catch (ConnectException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -170,8 +269,7 @@ public class ServerMC implements Server {
         if (s == null) {
             throw new PairingNotFoundException("Journey service is null.");
         }
-        s.setServiceFinish();
-        recordsJourneyServices.add(s);
+        applyRegisterService(s);
     }
 
     /**
@@ -183,12 +281,32 @@ public class ServerMC implements Server {
     @Override
     public void registerLocation(VehicleID veh, StationID st) {
         if (veh != null && st != null) {
-            vehicleStationMap.put(veh, st);
+            long seq = 0;
+            ReentrantLock lock = lockFor(veh);
+            lock.lock();
+            try {
+                ServerJournal j = journal;
+                if (j != null) {
+                    seq = j.logLocation(veh, st);
+                }
+                vehicleStationMap.put(veh, st);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                awaitDurable(seq);
+            } catch (ConnectException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 
     /**
-     * Registers a payment for a journey service.
+     * Registers a payment for a journey service. The call is idempotent: a payment for a service
+     * that has already been paid is acknowledged without being recorded again.
      *
      * @param servID The service ID.
      * @param user The user account.
@@ -202,8 +320,382 @@ public class ServerMC implements Server {
             throw new ConnectException("Connection error when registering payment.");
         }
 
-        String paymentRegister = String.format("%s_%s_%c", servID.getId(), imp.toString(), payMeth);
-        ArrayList<String> list = paymentRecords.computeIfAbsent(user, k -> new ArrayList<>());
-        list.add(paymentRegister);
+        try {
+            // A retry for an already recorded service is acknowledged without charging again
+            paymentLedger.append(user, servID, PaymentLedger.toCents(imp), PaymentLedger.methodCode(payMeth), System.currentTimeMillis());
+        } catch (IOException e) {
+            ConnectException failure = new ConnectException("Payment ledger write failed.");
+            failure.initCause(e);
+            throw failure;
+        }
+    }
+
+    /**
+     * Charges a journey to the user's wallet through the shared {@link WalletSettlement} pipeline,
+     * where it is batched with other riders' charges and recorded in the payment ledger.
+     *
+     * @param servID The service ID of the journey.
+     * @param user The user whose wallet is charged.
+     * @param imp The amount to charge.
+     * @return A future completed once the charge is recorded in the ledger.
+     */
+    @Override
+    public CompletableFuture<Void> settleWalletPayment(ServiceID servID, UserAccount user, BigDecimal imp) {
+        return getWalletSettlement().submit(user, servID, imp);
+    }
+
+    /**
+     * Returns the archive of completed journey services.
+     *
+     * @return The journey archive.
+     */
+    public static JourneyArchive getJourneyArchive() {
+        return recordsJourneyServices;
+    }
+
+    /**
+     * Adds a vehicle to the fleet and starts following it in the spatial index.
+     *
+     * @param vehicle The vehicle. It must have an ID.
+     * @throws IllegalArgumentException if the vehicle or its ID is null.
+     */
+    public static void registerVehicle(PMVehicle vehicle) {
+        if (vehicle == null || vehicle.getId() == null) {
+            throw new IllegalArgumentException("A vehicle needs an ID to be registered");
+        }
+        vehicleAvailability.put(vehicle.getId(), vehicle);
+        vehicleIndex.track(vehicle);
+    }
+
+    /**
+     * Returns the spatial index of the AVAILABLE vehicles of the fleet.
+     *
+     * @return The vehicle index.
+     */
+    public static VehicleIndex getVehicleIndex() {
+        return vehicleIndex;
+    }
+
+    /**
+     * Returns the pipeline that settles wallet charges into the payment ledger, starting it on the
+     * first call.
+     *
+     * @return The shared wallet settlement pipeline.
+     */
+    public static synchronized WalletSettlement getWalletSettlement() {
+        if (walletSettlement == null) {
+            walletSettlement = new WalletSettlement(paymentLedger);
+        }
+        return walletSettlement;
+    }
+
+    // Persistent mode
+
+    /**
+     * Switches the server to persistent mode. The latest snapshot in the directory is loaded and
+     * the journal segments written after it are replayed into the in-memory state; from then on
+     * every mutating call is appended to the journal. The payment ledger is reloaded from, and
+     * persisted to, its own file in the same directory.
+     * <p>
+     * The in-memory state is cleared first, whether or not there is a snapshot. If opening fails
+     * part-way the ledger is closed and the previous journey archive put back, so the call can be
+     * retried once the cause is fixed; the vehicle and journey maps are left empty.
+     *
+     * @param dir The journal directory. It is created if it does not exist.
+     * @return The number of journal records replayed on top of the snapshot.
+     * @throws IOException if the snapshot or the journal cannot be read or opened.
+     * @throws IllegalStateException if a journal is already open.
+     */
+    public static synchronized int openJournal(Path dir) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("A journal is already open.");
+        }
+        Files.createDirectories(dir);
+        paymentLedger.open(dir.resolve(LEDGER_FILE));
+
+        JourneyArchive previous = recordsJourneyServices;
+        JourneyArchive archive = new JourneyArchive(dir.resolve(ARCHIVE_DIR));
+        long firstSegment = 0;
+        int replayed = 0;
+        long lastSegment;
+        try {
+            // Both branches start from an empty state, so a snapshot never mixes with older state
+            vehicleAvailability.clear();
+            vehicleStationMap.clear();
+            vehicleUserMap.clear();
+            activeJourneyServices.clear();
+            vehicleIndex.clear();
+            recordsJourneyServices = archive;
+            Long snapshot = latestFile(dir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if (snapshot == null) {
+                archive.restore(0, List.of()); // Rebuilt from the full journal
+            } else {
+                firstSegment = ServerSnapshot.load(dir.resolve(SNAPSHOT_PREFIX + snapshot + SNAPSHOT_SUFFIX), vehicleAvailability,
+                        vehicleStationMap, vehicleUserMap, activeJourneyServices, archive);
+                vehicleAvailability.values().forEach(vehicleIndex::track);
+            }
+
+            lastSegment = firstSegment;
+            for (long segment : listFiles(dir, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (segment >= firstSegment) {
+                    replayed += ServerJournal.replay(segmentFile(dir, segment), new JournalReplayer());
+                    lastSegment = Math.max(lastSegment, segment);
+                }
+            }
+            journal = new ServerJournal(segmentFile(dir, lastSegment));
+        } catch (IOException | RuntimeException e) {
+            // Undo the switch so the journal can be opened again once the cause is fixed
+            recordsJourneyServices = previous;
+            try {
+                paymentLedger.close();
+                archive.close(); // Only empties it: its segments belong to the journal directory
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        previous.close(); // Deletes the temporary segments of in-memory mode
+
+        journalDir = dir;
+        journalSegment = lastSegment;
+        return replayed;
+    }
+
+    /**
+     * Switches the server to persistent mode and takes a {@link #checkpoint()} in the background
+     * at a fixed interval.
+     *
+     * @param dir The journal directory. It is created if it does not exist.
+     * @param snapshotInterval The interval between snapshots.
+     * @param unit The time unit of the interval.
+     * @return The number of journal records replayed on top of the snapshot.
+     * @throws IOException if the snapshot or the journal cannot be read or opened.
+     */
+    public static synchronized int openJournal(Path dir, long snapshotInterval, TimeUnit unit) throws IOException {
+        int replayed = openJournal(dir);
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "server-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                // The journal still holds every record; the next checkpoint retries
+            }
+        }, snapshotInterval, snapshotInterval, unit);
+        return replayed;
+    }
+
+    /**
+     * Writes a snapshot of the current state and deletes the journal segments and older snapshots
+     * it makes redundant. The server is only paused while the state is encoded in memory; the file
+     * is written after every lock has been released.
+     *
+     * @throws IOException if the snapshot cannot be written.
+     * @throws IllegalStateException if the server is not in persistent mode.
+     */
+    public static synchronized void checkpoint() throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("No journal is open.");
+        }
+
+        byte[] snapshot;
+        long segment = journalSegment + 1;
+        for (ReentrantLock lock : vehicleLocks) {
+            lock.lock();
+        }
+        try {
+            snapshot = ServerSnapshot.encode(segment, vehicleAvailability, vehicleStationMap, vehicleUserMap,
+                    activeJourneyServices, recordsJourneyServices);
+            journal.rotate(segmentFile(journalDir, segment));
+            journalSegment = segment;
+        } finally {
+            for (ReentrantLock lock : vehicleLocks) {
+                lock.unlock();
+            }
+        }
+
+        ServerSnapshot.write(journalDir.resolve(SNAPSHOT_PREFIX + segment + SNAPSHOT_SUFFIX), snapshot);
+        for (long old : listFiles(journalDir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (old < segment) {
+                Files.deleteIfExists(journalDir.resolve(SNAPSHOT_PREFIX + old + SNAPSHOT_SUFFIX));
+            }
+        }
+        for (long old : listFiles(journalDir, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (old < segment) {
+                Files.deleteIfExists(segmentFile(journalDir, old));
+            }
+        }
+    }
+
+    /**
+     * Stops background snapshots, flushes and closes the journal and the payment ledger. Later
+     * calls are no longer journaled, but the state stays loaded: the journey archive keeps its
+     * segment files in the journal directory, and is replaced when a journal is opened again.
+     *
+     * @throws IOException if the final flush fails.
+     */
+    public static synchronized void closeJournal() throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            snapshotScheduler = null;
+        }
+        ServerJournal current = journal;
+        journal = null;
+        journalDir = null;
+        paymentLedger.close();
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    // Internal operations
+
+    /**
+     * Returns the lock stripe guarding the given key, normally a vehicle ID.
+     *
+     * @param key The key to lock.
+     * @return The lock for the stripe the key hashes to.
+     */
+    private static ReentrantLock lockFor(Object key) {
+        int h = key.hashCode();
+        return vehicleLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    private static Path segmentFile(Path dir, long segment) {
+        return dir.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private static Long latestFile(Path dir, String prefix, String suffix) throws IOException {
+        List<Long> numbers = listFiles(dir, prefix, suffix);
+        return numbers.isEmpty() ? null : numbers.get(numbers.size() - 1);
+    }
+
+    /**
+     * Lists the numbers of the files named {@code prefix + number + suffix} in ascending order.
+     */
+    private static List<Long> listFiles(Path dir, String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(f -> f.getFileName().toString())
+                    .filter(n -> n.startsWith(prefix) && n.endsWith(suffix))
+                    .forEach(n -> numbers.add(Long.parseLong(n.substring(prefix.length(), n.length() - suffix.length()))));
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Journals and applies the pairing of a vehicle the caller has just moved to NOT_AVAILABLE.
+     * Must be called holding the vehicle's stripe lock. If the record cannot be written the vehicle
+     * is released again and nothing else is changed.
+     *
+     * @return The journal sequence to wait on, or 0 when running in memory only.
+     */
+    private static long pairReserved(PMVehicle vehicle, UserAccount user, VehicleID veh, StationID st, GeographicPoint loc,
+                                     LocalDateTime date) throws IOException {
+        long seq = 0;
+        ServerJournal j = journal;
+        if (j != null) {
+            try {
+                seq = j.logPairing(user, veh, st, loc, date);
+            } catch (IOException | RuntimeException e) {
+                vehicle.setAvailb();
+                throw e;
+            }
+        }
+        applyPairing(user, veh, st, loc, date);
+        return seq;
+    }
+
+    /**
+     * Applies a pairing to the in-memory state. Journal replay calls it directly, since the record
+     * being replayed was only written after the vehicle had been reserved.
+     */
+    private static void applyPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date) {
+        PMVehicle vehicle = vehicleAvailability.computeIfAbsent(veh, k -> new PMVehicle(PMVState.AVAILABLE, loc, 0.0));
+        vehicle.setId(veh);
+        vehicleIndex.track(vehicle);
+        vehicle.setNotAvailb();
+        vehicleUserMap.put(veh, user);
+        vehicleStationMap.put(veh, st);
+
+        JourneyService journeyService = new JourneyService(ServiceID.of(user, veh, st, date), loc);
+        journeyService.setOriginPoint(vehicle.getLocation());
+        journeyService.setInitDate(date);
+        journeyService.setInitHour(date.toLocalTime());
+        journeyService.setServiceInit();
+        activeJourneyServices.put(veh, journeyService);
+    }
+
+    private static JourneyService applyStopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date,
+                                                   float avSp, float dist, int dur, BigDecimal imp, GpsTrace route) {
+        PMVehicle vehicle = vehicleAvailability.get(veh);
+        vehicleUserMap.remove(veh);
+        vehicleStationMap.put(veh, st);
+        JourneyService journeyService = activeJourneyServices.remove(veh); // A vehicle has one journey at a time
+
+        journeyService.setEndPoint(loc);
+        journeyService.setEndDate(date.toLocalDate().atStartOfDay());
+        journeyService.setEndHour(date.toLocalTime());
+        journeyService.setEndStation(st);
+        journeyService.setAvgSpeed(avSp);
+        journeyService.setDistance(dist);
+        journeyService.setDuration(dur);
+        journeyService.setImportCost(imp);
+        journeyService.setTrace(route);
+
+        // Released last so a new pairing never observes the previous ride half torn down
+        vehicle.setAvailb();
+        return journeyService;
+    }
+
+    private static void applyRegisterService(JourneyService s) {
+        s.setServiceFinish();
+        recordsJourneyServices.add(s);
+    }
+
+    private static void awaitDurable(long seq) throws ConnectException {
+        ServerJournal current = journal;
+        if (seq > 0 && current != null) {
+            try {
+                current.awaitDurable(seq);
+            } catch (IOException e) {
+                throw journalFailure(e);
+            }
+        }
+    }
+
+    private static ConnectException journalFailure(IOException cause) {
+        ConnectException e = new ConnectException("Server journal write failed.");
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Applies the records of a journal to the in-memory state without logging them again.
+     */
+    private static class JournalReplayer implements ServerJournal.Handler {
+
+        @Override
+        public void onPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date) {
+            applyPairing(user, veh, st, loc, date);
+        }
+
+        @Override
+        public void onStopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date,
+                                  float avSp, float dist, int dur, BigDecimal imp, GpsTrace route) {
+            if (user.equals(vehicleUserMap.get(veh))) {
+                applyRegisterService(applyStopPairing(user, veh, st, loc, date, avSp, dist, dur, imp, route));
+            }
+        }
+
+        @Override
+        public void onLocation(VehicleID veh, StationID st) {
+            vehicleStationMap.put(veh, st);
+        }
+
     }
 }
@@ -0,0 +1,268 @@
+package services;
+
+import data.GeographicPoint;
+import data.ServiceID;
+import data.StationID;
+import data.UserAccount;
+import data.VehicleID;
+import micromobility.GpsTrace;
+import micromobility.JourneyService;
+import micromobility.PMVState;
+import micromobility.PMVehicle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of the {@link ServerMC} state.
+ * <p>
+ * A snapshot is encoded in memory while the server is quiescent, written to a temporary file and
+ * renamed into place, so a reader only ever sees complete snapshots. Loading maps the file
+ * read-only instead of copying it onto the heap.
+ */
+class ServerSnapshot {
+
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final int VERSION = 6;
+
+    private ServerSnapshot() {
+    }
+
+    /**
+     * Encodes the server state.
+     *
+     * @param segment The first journal segment that is not covered by this snapshot.
+     * @return The encoded snapshot.
+     */
+    static byte[] encode(long segment,
+                         Map<VehicleID, PMVehicle> vehicles,
+                         Map<VehicleID, StationID> stations,
+                         Map<VehicleID, UserAccount> users,
+                         Map<VehicleID, JourneyService> activeJourneys,
+                         JourneyArchive archive) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment);
+
+            out.writeInt(vehicles.size());
+            for (Map.Entry<VehicleID, PMVehicle> e : vehicles.entrySet()) {
+                PMVehicle vehicle = e.getValue();
+                putString(out, e.getKey().getId());
+                out.writeByte(vehicle.getState().ordinal());
+                putNullablePoint(out, vehicle.getLocation());
+                out.writeDouble(vehicle.getChargeLevel());
+            }
+
+            out.writeInt(stations.size());
+            for (Map.Entry<VehicleID, StationID> e : stations.entrySet()) {
+                putString(out, e.getKey().getId());
+                putString(out, e.getValue().getId());
+            }
+
+            out.writeInt(users.size());
+            for (Map.Entry<VehicleID, UserAccount> e : users.entrySet()) {
+                putString(out, e.getKey().getId());
+                putString(out, e.getValue().getId());
+            }
+
+            out.writeInt(activeJourneys.size());
+            for (JourneyService s : activeJourneys.values()) {
+                putJourney(out, s);
+            }
+
+            // Sealed archive segments are durable on their own; only the rest is snapshotted
+            List<JourneyService> unsealed = archive.unsealed();
+            out.writeInt(archive.sealedSegments());
+            out.writeInt(unsealed.size());
+            for (JourneyService s : unsealed) {
+                putJourney(out, s);
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not reachable with an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Durably writes an encoded snapshot, replacing any previous file atomically.
+     *
+     * @param file The snapshot file.
+     * @param snapshot The encoded snapshot.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(Path file, byte[] snapshot) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(snapshot);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot file into the given (empty) server collections and rolls the journey
+     * archive back to the state it had when the snapshot was taken.
+     *
+     * @return The first journal segment that must be replayed on top of the snapshot.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    static long load(Path file,
+                     Map<VehicleID, PMVehicle> vehicles,
+                     Map<VehicleID, StationID> stations,
+                     Map<VehicleID, UserAccount> users,
+                     Map<VehicleID, JourneyService> activeJourneys,
+                     JourneyArchive archive) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Not a server snapshot: " + file);
+            }
+            long segment = buf.getLong();
+
+            for (int i = buf.getInt(); i > 0; i--) {
+                VehicleID veh = VehicleID.of(getString(buf));
+                PMVState state = PMVState.values()[buf.get()];
+                PMVehicle vehicle = new PMVehicle(state, getNullablePoint(buf), buf.getDouble());
+                vehicle.setId(veh);
+                vehicles.put(veh, vehicle);
+            }
+
+            for (int i = buf.getInt(); i > 0; i--) {
+                stations.put(VehicleID.of(getString(buf)), StationID.of(getString(buf)));
+            }
+
+            for (int i = buf.getInt(); i > 0; i--) {
+                users.put(VehicleID.of(getString(buf)), new UserAccount(getString(buf)));
+            }
+
+            for (int i = buf.getInt(); i > 0; i--) {
+                JourneyService s = getJourney(buf);
+                s.setServiceInit();
+                activeJourneys.put(VehicleID.of(s.getServiceID().getVehicleId()), s);
+            }
+
+            int archiveSegments = buf.getInt();
+            List<JourneyService> unsealed = new ArrayList<>();
+            for (int i = buf.getInt(); i > 0; i--) {
+                unsealed.add(getJourney(buf));
+            }
+            archive.restore(archiveSegments, unsealed);
+
+            return segment;
+        }
+    }
+
+    // Internal operations
+
+    private static void putJourney(DataOutputStream out, JourneyService s) throws IOException {
+        putString(out, s.getServiceID().getId());
+        putNullablePoint(out, s.getOriginPoint());
+        putNullablePoint(out, s.getEndPoint());
+        putNullableDate(out, s.getInitDate());
+        putNullableDate(out, s.getEndDate());
+        out.writeBoolean(s.getEndStation() != null);
+        if (s.getEndStation() != null) {
+            putString(out, s.getEndStation().getId());
+        }
+        out.writeLong(s.getInitHour() == null ? -1 : s.getInitHour().toNanoOfDay());
+        out.writeLong(s.getEndHour() == null ? -1 : s.getEndHour().toNanoOfDay());
+        out.writeInt(s.getDuration());
+        out.writeFloat(s.getDistance());
+        out.writeFloat(s.getAvgSpeed());
+        putString(out, s.getImportCost().toString());
+        byte[] route = s.getTrace() == null ? null : s.getTrace().getEncoded();
+        out.writeInt(route == null ? -1 : route.length);
+        if (route != null) {
+            out.write(route);
+        }
+    }
+
+    private static JourneyService getJourney(ByteBuffer buf) {
+        JourneyService s = new JourneyService(ServiceID.of(getString(buf)), getNullablePoint(buf));
+        s.setEndPoint(getNullablePoint(buf));
+        s.setInitDate(getNullableDate(buf));
+        s.setEndDate(getNullableDate(buf));
+        s.setEndStation(buf.get() != 0 ? StationID.of(getString(buf)) : null);
+        long initHour = buf.getLong();
+        long endHour = buf.getLong();
+        s.setInitHour(initHour < 0 ? null : LocalTime.ofNanoOfDay(initHour));
+        s.setEndHour(endHour < 0 ? null : LocalTime.ofNanoOfDay(endHour));
+        s.setDuration(buf.getInt());
+        s.setDistance(buf.getFloat());
+        s.setAvgSpeed(buf.getFloat());
+        s.setImportCost(new BigDecimal(getString(buf)));
+        int routeLength = buf.getInt();
+        if (routeLength >= 0) {
+            byte[] route = new byte[routeLength];
+            buf.get(route);
+            s.setTrace(GpsTrace.decode(route));
+        }
+        return s;
+    }
+
+    private static void putString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putPoint(DataOutputStream out, GeographicPoint gp) throws IOException {
+        out.writeFloat(gp.getLatitude());
+        out.writeFloat(gp.getLongitude());
+    }
+
+    private static GeographicPoint getPoint(ByteBuffer buf) {
+        return new GeographicPoint(buf.getFloat(), buf.getFloat());
+    }
+
+    private static void putNullablePoint(DataOutputStream out, GeographicPoint gp) throws IOException {
+        out.writeBoolean(gp != null);
+        if (gp != null) {
+            putPoint(out, gp);
+        }
+    }
+
+    private static GeographicPoint getNullablePoint(ByteBuffer buf) {
+        return buf.get() != 0 ? getPoint(buf) : null;
+    }
+
+    private static void putNullableDate(DataOutputStream out, LocalDateTime date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(date.getNano());
+        }
+    }
+
+    private static LocalDateTime getNullableDate(ByteBuffer buf) {
+        return buf.get() != 0 ? LocalDateTime.ofEpochSecond(buf.getLong(), buf.getInt(), ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,317 @@
+package services;
+
+import data.GeographicPoint;
+import micromobility.PMVState;
+import micromobility.PMVehicle;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spatial index of the AVAILABLE vehicles, for finding the vehicles near a rider.
+ * <p>
+ * The surface is divided into a grid of cells of equal size in degrees, and each AVAILABLE vehicle
+ * is filed under the cell of its location. A radius query only visits the cells overlapping the
+ * circle; a nearest-vehicles query visits rings of cells around the centre until no closer
+ * vehicle can be left. Tracked vehicles report their changes through
+ * {@link PMVehicle.ChangeListener}, so the index follows moves and state changes as they happen.
+ * <p>
+ * Vehicles found are checked again against their current state and location, so a vehicle caught
+ * in the middle of a change is never returned when it is no longer available or in range.
+ */
+public class VehicleIndex implements PMVehicle.ChangeListener {
+
+    public static final double DEFAULT_CELL_METERS = 250;
+
+    private static final double KM_PER_DEGREE = 6371 * Math.PI / 180; // Along a meridian
+    private static final double MIN_COS_LATITUDE = 0.01; // Keeps the cells near the poles bounded
+    private static final long NO_CELL = Long.MIN_VALUE;
+
+    // Class members
+    private final double cellDegrees;
+    private final double cellKm;
+    private final long lonCells;
+    private final Map<PMVehicle, Entry> tracked = new ConcurrentHashMap<>();
+    private final Map<Long, Set<PMVehicle>> cells = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an index with cells of {@link #DEFAULT_CELL_METERS}.
+     */
+    public VehicleIndex() {
+        this(DEFAULT_CELL_METERS);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param cellMeters The height of a cell, in metres.
+     * @throws IllegalArgumentException if the cell size is not positive.
+     */
+    public VehicleIndex(double cellMeters) {
+        if (!(cellMeters > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+        this.cellKm = cellMeters / 1000;
+        this.cellDegrees = cellKm / KM_PER_DEGREE;
+        this.lonCells = (long) Math.ceil(360 / cellDegrees);
+    }
+
+    /**
+     * Starts following a vehicle. It is indexed while it is AVAILABLE.
+     *
+     * @param vehicle The vehicle.
+     * @throws IllegalArgumentException if the vehicle is null.
+     */
+    public void track(PMVehicle vehicle) {
+        if (vehicle == null) {
+            throw new IllegalArgumentException("Vehicle cannot be null");
+        }
+        if (tracked.putIfAbsent(vehicle, new Entry()) == null) {
+            vehicle.addChangeListener(this);
+            onVehicleChanged(vehicle);
+        }
+    }
+
+    /**
+     * Stops following a vehicle and removes it from the index.
+     *
+     * @param vehicle The vehicle.
+     */
+    public void untrack(PMVehicle vehicle) {
+        Entry entry = tracked.remove(vehicle);
+        if (entry != null) {
+            vehicle.removeChangeListener(this);
+            synchronized (entry) {
+                move(vehicle, entry, NO_CELL);
+            }
+        }
+    }
+
+    /**
+     * Stops following every vehicle.
+     */
+    public void clear() {
+        for (PMVehicle vehicle : new ArrayList<>(tracked.keySet())) {
+            untrack(vehicle);
+        }
+    }
+
+    /**
+     * Returns the number of vehicles indexed, that is, tracked and AVAILABLE.
+     *
+     * @return The number of vehicles.
+     */
+    public int size() {
+        int size = 0;
+        for (Set<PMVehicle> cell : cells.values()) {
+            size += cell.size();
+        }
+        return size;
+    }
+
+    /**
+     * Files a tracked vehicle under the cell of its current location, or removes it from the index
+     * if it is not AVAILABLE.
+     *
+     * @param vehicle The vehicle that changed.
+     */
+    @Override
+    public void onVehicleChanged(PMVehicle vehicle) {
+        Entry entry = tracked.get(vehicle);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) { // Re-reads the vehicle, so the last update always wins
+            GeographicPoint location = vehicle.getLocation();
+            boolean available = vehicle.getState() == PMVState.AVAILABLE && location != null;
+            move(vehicle, entry, available ? cellOf(location.getLatitude(), location.getLongitude()) : NO_CELL);
+        }
+    }
+
+    /**
+     * Finds the AVAILABLE vehicles within a distance.
+     *
+     * @param center The centre of the search.
+     * @param radiusKm The distance, in kilometres.
+     * @return The vehicles, closest first.
+     * @throws IllegalArgumentException if the centre is null or the radius is negative.
+     */
+    public List<PMVehicle> findWithin(GeographicPoint center, double radiusKm) {
+        if (center == null || !(radiusKm >= 0)) {
+            throw new IllegalArgumentException("A search needs a centre and a radius");
+        }
+        List<Candidate> found = new ArrayList<>();
+        int latRange = (int) Math.ceil(radiusKm / cellKm);
+        int lonRange = lonRange(radiusKm / lonCellKm(center));
+        long latCell = latCell(center.getLatitude());
+        long lonCell = lonCell(center.getLongitude());
+        for (long dy = -latRange; dy <= latRange; dy++) {
+            for (long dx = -lonRange; dx <= lonRange; dx++) {
+                collect(latCell + dy, lonCell + dx, center, radiusKm, found);
+            }
+        }
+        found.sort(Comparator.comparingDouble(c -> c.distance));
+        List<PMVehicle> vehicles = new ArrayList<>(found.size());
+        for (Candidate candidate : found) {
+            vehicles.add(candidate.vehicle);
+        }
+        return vehicles;
+    }
+
+    /**
+     * Finds the AVAILABLE vehicles closest to a point.
+     *
+     * @param center The centre of the search.
+     * @param k The maximum number of vehicles.
+     * @param maxRadiusKm The distance beyond which vehicles are not considered, in kilometres.
+     * @return Up to {@code k} vehicles, closest first.
+     * @throws IllegalArgumentException if the centre is null, or {@code k} or the radius is negative.
+     */
+    public List<PMVehicle> findNearest(GeographicPoint center, int k, double maxRadiusKm) {
+        if (center == null || k < 0 || !(maxRadiusKm >= 0)) {
+            throw new IllegalArgumentException("A search needs a centre, a count and a radius");
+        }
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Math.max(1, k), Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+        List<Candidate> ring = new ArrayList<>();
+        double lonCellKm = lonCellKm(center);
+        double stepKm = Math.min(cellKm, lonCellKm); // Ring r covers every point closer than r steps
+        int latRange = (int) Math.ceil(maxRadiusKm / cellKm);
+        int lonRange = lonRange(maxRadiusKm / lonCellKm);
+        long latCell = latCell(center.getLatitude());
+        long lonCell = lonCell(center.getLongitude());
+
+        for (int r = 0; k > 0 && r <= Math.max(latRange, lonRange); r++) {
+            if (best.size() == k && best.peek().distance <= r * stepKm - stepKm) {
+                break; // Every cell left is farther than the k-th vehicle found
+            }
+            ring.clear();
+            for (int dy = -Math.min(r, latRange); dy <= Math.min(r, latRange); dy++) {
+                if (Math.abs(dy) == r) { // Top and bottom rows of the ring
+                    for (int dx = -Math.min(r, lonRange); dx <= Math.min(r, lonRange); dx++) {
+                        collect(latCell + dy, lonCell + dx, center, maxRadiusKm, ring);
+                    }
+                } else if (r <= lonRange) { // Left and right columns
+                    collect(latCell + dy, lonCell - r, center, maxRadiusKm, ring);
+                    collect(latCell + dy, lonCell + r, center, maxRadiusKm, ring);
+                }
+            }
+            for (Candidate candidate : ring) {
+                if (best.size() < k) {
+                    best.add(candidate);
+                } else if (candidate.distance < best.peek().distance) {
+                    best.poll();
+                    best.add(candidate);
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble(c -> c.distance));
+        List<PMVehicle> vehicles = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted) {
+            vehicles.add(candidate.vehicle);
+        }
+        return vehicles;
+    }
+
+    // Internal operations
+
+    /**
+     * A vehicle found and its distance to the centre.
+     */
+    private static class Candidate {
+        final PMVehicle vehicle;
+        final double distance;
+
+        Candidate(PMVehicle vehicle, double distance) {
+            this.vehicle = vehicle;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * The cell a tracked vehicle is filed under. Updates of a vehicle are serialised on its entry.
+     */
+    private static class Entry {
+        long cell = NO_CELL;
+    }
+
+    /**
+     * Moves a vehicle between cells. Empty cells are dropped, atomically with the last removal.
+     */
+    private void move(PMVehicle vehicle, Entry entry, long cell) {
+        if (entry.cell == cell) {
+            return;
+        }
+        if (entry.cell != NO_CELL) {
+            cells.computeIfPresent(entry.cell, (key, vehicles) -> {
+                vehicles.remove(vehicle);
+                return vehicles.isEmpty() ? null : vehicles;
+            });
+        }
+        if (cell != NO_CELL) {
+            cells.compute(cell, (key, vehicles) -> {
+                Set<PMVehicle> updated = vehicles == null ? ConcurrentHashMap.newKeySet() : vehicles;
+                updated.add(vehicle);
+                return updated;
+            });
+        }
+        entry.cell = cell;
+    }
+
+    /**
+     * Adds the vehicles of a cell that are still AVAILABLE and within a distance.
+     */
+    private void collect(long latCell, long lonCell, GeographicPoint center, double radiusKm, List<Candidate> found) {
+        if (latCell < 0) {
+            return;
+        }
+        Set<PMVehicle> vehicles = cells.get(key(latCell, Math.floorMod(lonCell, lonCells)));
+        if (vehicles == null) {
+            return;
+        }
+        for (PMVehicle vehicle : vehicles) {
+            GeographicPoint location = vehicle.getLocation();
+            if (vehicle.getState() != PMVState.AVAILABLE || location == null) {
+                continue;
+            }
+            double distance = center.calculateDistance(location);
+            if (distance <= radiusKm) {
+                found.add(new Candidate(vehicle, distance));
+            }
+        }
+    }
+
+    private double lonCellKm(GeographicPoint center) {
+        return cellKm * Math.max(MIN_COS_LATITUDE, Math.cos(Math.toRadians(center.getLatitude())));
+    }
+
+    /**
+     * Returns the number of cells to visit on each side of the centre, without going round the
+     * globe onto cells already visited.
+     */
+    private int lonRange(double cellsAway) {
+        return (int) Math.min(Math.ceil(cellsAway), (lonCells - 1) / 2);
+    }
+
+    private long latCell(float lat) {
+        return (long) Math.floor((lat + 90.0) / cellDegrees);
+    }
+
+    private long lonCell(float lon) {
+        return Math.floorMod((long) Math.floor((lon + 180.0) / cellDegrees), lonCells);
+    }
+
+    private long cellOf(float lat, float lon) {
+        return key(latCell(lat), lonCell(lon));
+    }
+
+    private long key(long latCell, long lonCell) {
+        return latCell * lonCells + lonCell;
+    }
+}
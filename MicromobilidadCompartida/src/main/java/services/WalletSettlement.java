@@ -0,0 +1,247 @@
+package services;
+
+import data.ServiceID;
+import data.UserAccount;
+import exception.NotEnoughWalletException;
+import micromobility.payment.Wallet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Asynchronous settlement of end-of-journey wallet charges.
+ * <p>
+ * Charges are queued on one of a fixed number of shards, chosen by user so that the charges of a
+ * wallet are always applied in order by the same thread. Each shard's worker drains whatever has
+ * queued up since its last pass, deducts every charge from its wallet, records the successful ones
+ * in the {@link PaymentLedger} with a single {@link PaymentLedger#append(PaymentLedger.Batch)} call
+ * and only then completes the riders' futures. Under load the cost of forcing the ledger file is
+ * shared by the whole batch.
+ * <p>
+ * Settlement is idempotent on the {@link ServiceID}: a charge for a service that has already been
+ * paid completes normally without touching the wallet.
+ */
+public class WalletSettlement implements Closeable {
+
+    public static final int DEFAULT_SHARDS = 4;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private static final byte WALLET_METHOD = 'W';
+    private static final Charge STOP = new Charge(null, null, 0);
+
+    // Class members
+    private final PaymentLedger ledger;
+    private final Shard[] shards;
+    private final ReadWriteLock state = new ReentrantReadWriteLock(); // Submits share it, close excludes them
+    private boolean closed;
+
+    /**
+     * Creates a settlement pipeline with the default number of shards and batch size.
+     *
+     * @param ledger The ledger the charges are recorded in.
+     */
+    public WalletSettlement(PaymentLedger ledger) {
+        this(ledger, DEFAULT_SHARDS, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Creates a settlement pipeline.
+     *
+     * @param ledger The ledger the charges are recorded in.
+     * @param shards The number of worker threads.
+     * @param maxBatch The maximum number of charges settled in one pass.
+     * @throws IllegalArgumentException if the ledger is null or a size is not positive.
+     */
+    public WalletSettlement(PaymentLedger ledger, int shards, int maxBatch) {
+        if (ledger == null) {
+            throw new IllegalArgumentException("Ledger cannot be null");
+        }
+        if (shards <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("Settlement sizes must be positive.");
+        }
+        this.ledger = ledger;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i, maxBatch);
+        }
+    }
+
+    /**
+     * Queues a wallet charge for a journey.
+     *
+     * @param user The user whose wallet is charged.
+     * @param servID The service ID of the journey.
+     * @param imp The amount to charge.
+     * @return A future completed once the charge is recorded in the ledger, or completed
+     *         exceptionally with {@link NotEnoughWalletException} if the wallet cannot cover it, or
+     *         {@link ConnectException} if the ledger cannot be written.
+     * @throws IllegalArgumentException if an argument is null or the amount is not positive.
+     */
+    public CompletableFuture<Void> submit(UserAccount user, ServiceID servID, BigDecimal imp) {
+        if (user == null || servID == null || imp == null || imp.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("A charge needs a user, a service and a positive amount");
+        }
+        Charge charge = new Charge(user, servID, PaymentLedger.toCents(imp));
+        state.readLock().lock();
+        try {
+            if (closed) {
+                charge.future.completeExceptionally(new IllegalStateException("Settlement is closed."));
+                return charge.future;
+            }
+            int h = user.hashCode();
+            shards[Math.floorMod(h ^ (h >>> 16), shards.length)].queue.add(charge);
+        } finally {
+            state.readLock().unlock();
+        }
+        return charge.future;
+    }
+
+    /**
+     * Settles every queued charge and stops the workers. Charges submitted afterwards fail.
+     */
+    @Override
+    public void close() {
+        // Once closed is set under the write lock no submit is between its check and its enqueue,
+        // so every accepted charge is ahead of the stop marker
+        state.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Shard shard : shards) {
+                shard.queue.add(STOP);
+            }
+        } finally {
+            state.writeLock().unlock();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Internal operations
+
+    /**
+     * A queued charge and the future of the rider waiting for it.
+     */
+    private static class Charge {
+        final UserAccount user;
+        final ServiceID servID;
+        final long cents;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        int entry = -1; // Index in the ledger batch once deducted
+
+        Charge(UserAccount user, ServiceID servID, long cents) {
+            this.user = user;
+            this.servID = servID;
+            this.cents = cents;
+        }
+    }
+
+    /**
+     * A queue of charges and the thread settling them in batches.
+     */
+    private class Shard {
+        final BlockingQueue<Charge> queue = new LinkedBlockingQueue<>();
+        final List<Charge> drained;
+        final PaymentLedger.Batch batch;
+        final int maxBatch;
+        final Thread worker;
+
+        Shard(int index, int maxBatch) {
+            this.maxBatch = maxBatch;
+            this.drained = new ArrayList<>(maxBatch);
+            this.batch = new PaymentLedger.Batch(maxBatch);
+            this.worker = new Thread(this::run, "wallet-settlement-" + index);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        void run() {
+            while (true) {
+                try {
+                    drained.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(drained, maxBatch - 1);
+                boolean stop = drained.remove(STOP);
+                try {
+                    settle();
+                } catch (RuntimeException e) { // Never leave riders waiting on a dead worker
+                    for (Charge charge : drained) {
+                        charge.future.completeExceptionally(e);
+                    }
+                    drained.clear();
+                }
+                if (stop) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Applies the drained charges in one pass: deduct, record the batch, then complete.
+         */
+        void settle() {
+            long now = System.currentTimeMillis();
+            batch.clear();
+            for (Charge charge : drained) {
+                charge.entry = -1;
+                if (ledger.contains(charge.servID)) {
+                    continue; // Already paid
+                }
+                try {
+                    wallet(charge).deductCents(charge.cents);
+                    charge.entry = batch.add(charge.user, charge.servID, charge.cents, WALLET_METHOD, now);
+                } catch (NotEnoughWalletException | RuntimeException e) {
+                    charge.future.completeExceptionally(e);
+                }
+            }
+
+            Exception failure = null;
+            try {
+                if (batch.size() > 0) {
+                    ledger.append(batch);
+                }
+            } catch (IOException | RuntimeException e) { // Such as the UncheckedIOException of a failed force
+                failure = e;
+            }
+
+            for (Charge charge : drained) {
+                if (charge.future.isDone()) {
+                    continue;
+                }
+                if (charge.entry >= 0 && !batch.isRecorded(charge.entry)) {
+                    wallet(charge).addFundsCents(charge.cents); // Not recorded: give the money back
+                }
+                if (charge.entry >= 0 && failure != null) {
+                    ConnectException e = new ConnectException("Payment ledger write failed.");
+                    e.initCause(failure);
+                    charge.future.completeExceptionally(e);
+                } else {
+                    charge.future.complete(null);
+                }
+            }
+            drained.clear();
+        }
+
+        Wallet wallet(Charge charge) {
+            return charge.user.getUserWallet();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package services.smartfeatures;
+
+import data.VehicleID;
+import exception.CorruptedImgException;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Decodes the QR stickers of a batch of vehicles, as when a new fleet is onboarded.
+ * <p>
+ * Images are read and decoded on a fixed pool of worker threads, one per processor by default.
+ * Files are handed to the pool through a bounded queue, so a large batch never holds more than a
+ * few images per worker in memory. Each image goes through a series of attempts and stops at the
+ * first one that decodes:
+ * <ol>
+ *     <li>Photos larger than {@link #MAX_SIDE} pixels are first scaled down to it, in greyscale.
+ *     A sticker photographed by a phone is still readable at that size, and decoding is much
+ *     cheaper.</li>
+ *     <li>The image at its full size.</li>
+ *     <li>The centre of the image, scaled up, for stickers taken from too far away.</li>
+ * </ol>
+ * Every image gets a {@link Result}, in the order the images were given: the vehicle ID, or the
+ * {@link CorruptedImgException} explaining why it could not be read, with the failures of each
+ * attempt attached as suppressed exceptions.
+ */
+public class QRBatchDecoder {
+
+    public static final int MAX_SIDE = 1024;
+
+    private static final double CENTRE_CROP = 0.6; // Fraction of each side kept by the last attempt
+    private static final int QUEUED_PER_WORKER = 4;
+    private static final String[] EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+
+    // Class members
+    private final QRDecoder decoder;
+    private final int threads;
+
+    /**
+     * Creates a batch decoder using a {@link QRDecoderVMP} on every processor.
+     */
+    public QRBatchDecoder() {
+        this(new QRDecoderVMP(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a batch decoder.
+     *
+     * @param decoder The decoder of single images. It must be safe to use from several threads.
+     * @param threads The number of worker threads.
+     * @throws IllegalArgumentException if the decoder is null or the number of threads is not positive.
+     */
+    public QRBatchDecoder(QRDecoder decoder, int threads) {
+        if (decoder == null || threads <= 0) {
+            throw new IllegalArgumentException("A batch decoder needs a decoder and at least one thread");
+        }
+        this.decoder = decoder;
+        this.threads = threads;
+    }
+
+    /**
+     * Decodes the images of a directory (PNG, JPEG, GIF and BMP files), in file name order.
+     *
+     * @param directory The directory.
+     * @return One result per image.
+     * @throws IOException if the directory cannot be listed.
+     * @throws InterruptedException if the thread is interrupted while waiting for the batch.
+     */
+    public List<Result> decode(Path directory) throws IOException, InterruptedException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return decode(files.filter(QRBatchDecoder::isImage).sorted());
+        }
+    }
+
+    /**
+     * Decodes a stream of image files. The stream is consumed as the workers make progress.
+     *
+     * @param files The image files.
+     * @return One result per file, in the order of the stream.
+     * @throws InterruptedException if the thread is interrupted while waiting for the batch.
+     */
+    public List<Result> decode(Stream<Path> files) throws InterruptedException {
+        return run(files.iterator(), file -> file, file -> {
+            BufferedImage image;
+            try {
+                image = ImageIO.read(file.toFile());
+            } catch (IOException e) {
+                throw new CorruptedImgException("Image could not be read: " + file, e);
+            }
+            if (image == null) {
+                throw new CorruptedImgException("Not a supported image: " + file);
+            }
+            return decodeImage(image);
+        });
+    }
+
+    /**
+     * Decodes images already in memory.
+     *
+     * @param images The images. Their results are named {@code image-0}, {@code image-1} and so on.
+     * @return One result per image, in the order of the list.
+     * @throws InterruptedException if the thread is interrupted while waiting for the batch.
+     */
+    public List<Result> decodeImages(List<BufferedImage> images) throws InterruptedException {
+        return run(IntStream.range(0, images.size()).iterator(), i -> Path.of("image-" + i), i -> decodeImage(images.get(i)));
+    }
+
+    /**
+     * Decodes one image, trying the attempts in turn.
+     *
+     * @param image The image.
+     * @return The vehicle ID.
+     * @throws CorruptedImgException if no attempt decodes the image.
+     */
+    public VehicleID decodeImage(BufferedImage image) throws CorruptedImgException {
+        if (image == null) {
+            throw new CorruptedImgException("Error decoding QR code.", new IllegalArgumentException("Image cannot be null"));
+        }
+        List<CorruptedImgException> failures = new ArrayList<>(3);
+        int side = Math.max(image.getWidth(), image.getHeight());
+        if (side > MAX_SIDE) {
+            try {
+                return decoder.getVehicleID(scale(image, 0, 0, image.getWidth(), image.getHeight(), (double) MAX_SIDE / side));
+            } catch (CorruptedImgException e) {
+                failures.add(e);
+            }
+        }
+        try {
+            return decoder.getVehicleID(image);
+        } catch (CorruptedImgException e) {
+            failures.add(e);
+        }
+        int width = (int) (image.getWidth() * CENTRE_CROP);
+        int height = (int) (image.getHeight() * CENTRE_CROP);
+        if (width > 0 && height > 0) {
+            try {
+                double zoom = Math.min(1 / CENTRE_CROP, (double) MAX_SIDE / Math.max(width, height));
+                return decoder.getVehicleID(scale(image, (image.getWidth() - width) / 2, (image.getHeight() - height) / 2, width, height, zoom));
+            } catch (CorruptedImgException e) {
+                failures.add(e);
+            }
+        }
+        CorruptedImgException error = new CorruptedImgException("No QR code found after " + failures.size() + " attempts.", failures.get(failures.size() - 1));
+        for (CorruptedImgException failure : failures) {
+            error.addSuppressed(failure);
+        }
+        throw error;
+    }
+
+    /**
+     * The outcome of decoding one image of a batch.
+     */
+    public static final class Result {
+        private final Path source;
+        private final VehicleID vehicleID;
+        private final CorruptedImgException error;
+
+        private Result(Path source, VehicleID vehicleID, CorruptedImgException error) {
+            this.source = source;
+            this.vehicleID = vehicleID;
+            this.error = error;
+        }
+
+        /**
+         * Returns the file the image was read from.
+         *
+         * @return The file, or a name such as {@code image-3} for images given in memory.
+         */
+        public Path getSource() {
+            return source;
+        }
+
+        /**
+         * Tells whether the image was decoded.
+         *
+         * @return true if there is a vehicle ID.
+         */
+        public boolean isDecoded() {
+            return vehicleID != null;
+        }
+
+        /**
+         * Returns the vehicle ID read from the image.
+         *
+         * @return The vehicle ID, or null if the image could not be decoded.
+         */
+        public VehicleID getVehicleID() {
+            return vehicleID;
+        }
+
+        /**
+         * Returns why the image could not be decoded.
+         *
+         * @return The error, or null if the image was decoded.
+         */
+        public CorruptedImgException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return source + ": " + (isDecoded() ? vehicleID.getId() : error.getMessage());
+        }
+    }
+
+    // Internal operations
+
+    /**
+     * The decoding of one source.
+     */
+    private interface Task<S> {
+        VehicleID decode(S source) throws CorruptedImgException;
+    }
+
+    /**
+     * Runs a task over every source on a bounded pool. Submitting blocks the caller, or runs the
+     * task in the caller, once the queue is full, so the sources are only read as fast as the
+     * workers decode them.
+     */
+    private <S> List<Result> run(Iterator<S> sources, Function<S, Path> nameOf, Task<S> task) throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_PER_WORKER), r -> {
+                    Thread t = new Thread(r, "qr-batch-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            List<Path> order = new ArrayList<>();
+            List<Future<Result>> pending = new ArrayList<>();
+            while (sources.hasNext()) {
+                S source = sources.next();
+                Path name = nameOf.apply(source);
+                order.add(name);
+                pending.add(pool.submit(() -> {
+                    try {
+                        return new Result(name, task.decode(source), null);
+                    } catch (CorruptedImgException e) {
+                        return new Result(name, null, e);
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>(pending.size());
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    results.add(pending.get(i).get());
+                } catch (ExecutionException e) { // A failure other than a corrupted image
+                    results.add(new Result(order.get(i), null, new CorruptedImgException("Error decoding QR code.", e.getCause())));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Copies a region of an image in greyscale, scaled by a factor.
+     */
+    private static BufferedImage scale(BufferedImage image, int x, int y, int width, int height, double factor) {
+        int scaledWidth = Math.max(1, (int) Math.round(width * factor));
+        int scaledHeight = Math.max(1, (int) Math.round(height * factor));
+        BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, scaledWidth, scaledHeight, x, y, x + width, y + height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return Files.isRegularFile(file);
+            }
+        }
+        return false;
+    }
+}
@@ -1,22 +1,56 @@
 package services.smartfeatures;
 
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
 import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
 import com.google.zxing.LuminanceSource;
 import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.qrcode.QRCodeReader;
 import data.VehicleID;
 import exception.CorruptedImgException;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
+
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Class responsible for decoding QR codes to extract vehicle IDs.
  * Implements the QRDecoder interface.
+ * <p>
+ * A vehicle sticker never changes, so the IDs decoded are kept in a cache shared by every decoder,
+ * keyed by a SHA-256 digest of the image pixels: scanning a sticker again only digests the image.
+ * Images that are not in the cache are decoded with a reader kept per thread, first with the cheap
+ * global histogram binarizer, which reads clean stickers, and then with the hybrid binarizer, which
+ * copes with uneven lighting.
  */
 public class QRDecoderVMP implements QRDecoder {
 
+    public static final int CACHE_CAPACITY = 1024;
+
+    private static final Map<DecodeHintType, Object> HINTS = hints();
+    private static final ThreadLocal<QRCodeReader> READERS = ThreadLocal.withInitial(QRCodeReader::new);
+    private static final Map<ImageKey, VehicleID> decoded = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ImageKey, VehicleID> eldest) {
+                    return size() > CACHE_CAPACITY;
+                }
+            });
+
     /**
      * Decodes a given QR code image to extract the vehicle ID.
      *
@@ -25,22 +59,22 @@ public class QRDecoderVMP implements QRDecoder {
      * @throws CorruptedImgException If the QR code is corrupted or cannot be decoded.
      */
     public VehicleID getVehicleID(BufferedImage QRImg) throws CorruptedImgException {
-        try {
-            // Create a QRCodeReader to decode the QR code
-            QRCodeReader reader = new QRCodeReader();
-
-            // Convert the BufferedImage to a BinaryBitmap object for processing
-            LuminanceSource source = new BufferedImageLuminanceSource(QRImg);
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-
-            // Decode the QR code to extract the result
-            Result result = reader.decode(bitmap);
+        if (QRImg == null) {
+            throw new CorruptedImgException("Error decoding QR code.", new IllegalArgumentException("Image cannot be null"));
+        }
+        ImageKey key = ImageKey.of(QRImg);
+        VehicleID cached = decoded.get(key);
+        if (cached != null) {
+            return cached;
+        }
 
+        try {
             // Extract the content of the QR (e.g., vehicle ID)
-            String vehicleIDStr = result.getText();
+            String vehicleIDStr = decode(new BufferedImageLuminanceSource(QRImg)).getText();
 
-            // Return the VehicleID extracted from the QR code
-            return new VehicleID(vehicleIDStr);
+            VehicleID vehicleID = VehicleID.of(vehicleIDStr);
+            decoded.put(key, vehicleID);
+            return vehicleID;
 
         } catch (NotFoundException e) {
             // If no QR code is found in the image
@@ -50,4 +84,120 @@ public class QRDecoderVMP implements QRDecoder {
             throw new CorruptedImgException("Error decoding QR code.", e);
         }
     }
+
+    /**
+     * Empties the cache of decoded stickers.
+     */
+    public static void clearCache() {
+        decoded.clear();
+    }
+
+    // Internal operations
+
+    /**
+     * Decodes with the global histogram binarizer, and with the hybrid one if that fails.
+     */
+    private static Result decode(LuminanceSource source) throws ReaderException {
+        QRCodeReader reader = READERS.get();
+        try {
+            return decode(reader, new GlobalHistogramBinarizer(source));
+        } catch (ReaderException e) {
+            return decode(reader, new HybridBinarizer(source));
+        }
+    }
+
+    private static Result decode(QRCodeReader reader, Binarizer binarizer) throws ReaderException {
+        try {
+            return reader.decode(new BinaryBitmap(binarizer), HINTS);
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private static Map<DecodeHintType, Object> hints() {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, List.of(BarcodeFormat.QR_CODE));
+        return Collections.unmodifiableMap(hints);
+    }
+
+    /**
+     * The size and type of an image and a SHA-256 digest of its pixels. A weak hash would let a
+     * different image that happens to collide be taken for a cached sticker and resolve to the
+     * wrong vehicle, so the key uses a digest that cannot be collided by accident or on purpose.
+     */
+    private static final class ImageKey {
+        private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(ImageKey::sha256);
+
+        private final int width;
+        private final int height;
+        private final int type;
+        private final byte[] digest;
+
+        private ImageKey(int width, int height, int type, byte[] digest) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.digest = digest;
+        }
+
+        /**
+         * Digests the raw samples of the image, row by row, without converting them to RGB. Images
+         * whose samples only mean something through a palette or a custom colour model are
+         * digested by their RGB values instead.
+         */
+        static ImageKey of(BufferedImage img) {
+            Raster raster = img.getRaster();
+            int width = img.getWidth();
+            int height = img.getHeight();
+            int type = img.getType();
+            boolean raw = type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED
+                    && type != BufferedImage.TYPE_BYTE_BINARY;
+            MessageDigest digest = DIGESTS.get();
+            Object row = null;
+            ByteBuffer bytes = null;
+            for (int y = 0; y < height; y++) {
+                row = raw ? raster.getDataElements(0, y, width, 1, row) : img.getRGB(0, y, width, 1, (int[]) row, 0, width);
+                if (row instanceof byte[]) {
+                    digest.update((byte[]) row);
+                    continue;
+                }
+                if (row instanceof int[]) { // Ushort samples otherwise; float and double only appear in custom images
+                    int[] samples = (int[]) row;
+                    bytes = buffer(bytes, samples.length * Integer.BYTES);
+                    bytes.asIntBuffer().put(samples);
+                } else {
+                    short[] samples = (short[]) row;
+                    bytes = buffer(bytes, samples.length * Short.BYTES);
+                    bytes.asShortBuffer().put(samples);
+                }
+                digest.update(bytes.array(), 0, bytes.capacity());
+            }
+            return new ImageKey(width, height, type, digest.digest());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ImageKey)) return false;
+            ImageKey key = (ImageKey) o;
+            return width == key.width && height == key.height && type == key.type && Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF)) * 31 + width;
+        }
+
+        private static ByteBuffer buffer(ByteBuffer bytes, int size) {
+            return bytes != null && bytes.capacity() == size ? bytes.clear() : ByteBuffer.allocate(size);
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e); // Every JVM must provide it
+            }
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeographicPointsTest {
+
+    private GeographicPoint lleida;
+    private GeographicPoints points;
+    private Random random;
+
+    // Set up before each test
+    @BeforeEach
+    void setUp() {
+        lleida = new GeographicPoint(41.6176f, 0.6200f); // Lleida coordinates
+        points = new GeographicPoints();
+        random = new Random(5);
+        for (int i = 0; i < 10_000; i++) { // Up to about 10 km around Lleida
+            points.add(lleida.getLatitude() + (random.nextFloat() - 0.5f) * 0.18f, lleida.getLongitude() + (random.nextFloat() - 0.5f) * 0.24f);
+        }
+    }
+
+    @Test
+    @DisplayName("Test1: Verify that batch Haversine distances match the scalar distance")
+    void testHaversineMatchesScalar() {
+        float[] distances = new float[points.size()];
+        points.distancesFrom(lleida, GeographicPoints.Mode.HAVERSINE, distances);
+
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(lleida.calculateDistance(points.get(i)), distances[i], 0.002f); // Within 2 m
+        }
+    }
+
+    @Test
+    @DisplayName("Test2: Verify that the equirectangular approximation is accurate over urban distances")
+    void testEquirectangularAccuracy() {
+        float[] exact = new float[points.size()];
+        float[] approx = new float[points.size()];
+        points.distancesFrom(lleida, GeographicPoints.Mode.HAVERSINE, exact);
+        points.distancesFrom(lleida, GeographicPoints.Mode.EQUIRECTANGULAR, approx);
+
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(exact[i], approx[i], 0.01f + exact[i] * 0.001f); // Within 10 m and 0.1%
+        }
+    }
+
+    @Test
+    @DisplayName("Test3: Verify that the nearest point is the one at the smallest distance")
+    void testNearest() {
+        float[] distances = new float[points.size()];
+        points.distancesFrom(lleida, GeographicPoints.Mode.HAVERSINE, distances);
+        int expected = 0;
+        for (int i = 1; i < distances.length; i++) {
+            if (distances[i] < distances[expected]) {
+                expected = i;
+            }
+        }
+
+        assertEquals(expected, points.nearest(lleida));
+        assertEquals(-1, new GeographicPoints().nearest(lleida));
+    }
+
+    @Test
+    @DisplayName("Test4: Verify that points can be replaced and invalid arguments are rejected")
+    void testUpdateAndInvalidArguments() {
+        points.update(3, 40.4168f, -3.7038f);
+
+        assertEquals(new GeographicPoint(40.4168f, -3.7038f), points.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> points.get(points.size()));
+        assertThrows(IllegalArgumentException.class, () -> points.distancesFrom(lleida, GeographicPoints.Mode.HAVERSINE, new float[1]));
+        assertThrows(IllegalArgumentException.class, () -> points.add(null));
+    }
+}
@@ -0,0 +1,88 @@
+package data;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdFormatTest {
+
+    private static final String USER = "UA-[a-zA-Z]{1,10}-\\d{1,5}";
+    private static final String VEHICLE = "VH-\\d{6}-[a-zA-Z]{1,30}";
+    private static final String STATION = "ST-\\d{5}-[a-zA-Z]{1,30}";
+    private static final String SERVICE = "UA-[a-zA-Z]+-\\d{1,5}_VH-\\d{6}-[a-zA-Z]+_ST-\\d{5}-[a-zA-Z]+(_[1-9]\\d{0,17})?";
+
+    // Characters the formats are made of, plus a few that look like them
+    private static final String ALPHABET = "UAVHST-_0123456789azZ é٣";
+
+    @Test
+    @DisplayName("Test1: Edge cases are judged as by the regular expressions")
+    void testEdgeCases() {
+        String[] ids = {"", "UA-", "UA-a-1", "UA-abcdefghij-12345", "UA-abcdefghijk-1", "UA-a-123456", "UA-a-", "ua-a-1",
+                "UA-a1-1", "UA-a-1 ", " UA-a-1", "UA-é-1", "UA-a-٣", "VH-123456-a", "VH-12345-a", "VH-1234567-a",
+                "VH-123456-", "VH-123456-" + "a".repeat(30), "VH-123456-" + "a".repeat(31), "ST-12345-Central",
+                "ST-1234-a", "ST-12345-a-", "UA-a-1_VH-123456-a_ST-12345-a", "UA-abcdefghijklmnop-1_VH-123456-a_ST-12345-a",
+                "UA-a-1_VH-123456-a_ST-12345-", "UA-a-1_VH-123456-a__ST-12345-a", "UA-a-1VH-123456-a_ST-12345-a",
+                "UA-a-1_VH-123456-a_ST-12345-a_1", "UA-a-1_VH-123456-a_ST-12345-a_0", "UA-a-1_VH-123456-a_ST-12345-a_07",
+                "UA-a-1_VH-123456-a_ST-12345-a_" + "9".repeat(18), "UA-a-1_VH-123456-a_ST-12345-a_" + "9".repeat(19),
+                "UA-a-1_VH-123456-a_ST-12345-a_1_2", "UA-a-1_VH-123456-a_ST-12345-a_1a"};
+        for (String id : ids) {
+            assertSameAsRegex(id);
+        }
+    }
+
+    @Test
+    @DisplayName("Test2: Random mutations of valid IDs are judged as by the regular expressions")
+    void testRandomIds() {
+        Random random = new Random(19);
+        String[] seeds = {"UA-Maria-123", "VH-123456-Scooter", "ST-12345-Central", "UA-Maria-123_VH-123456-Scooter_ST-12345-Central"};
+        for (int i = 0; i < 50_000; i++) {
+            StringBuilder id = new StringBuilder(seeds[random.nextInt(seeds.length)]);
+            for (int edits = random.nextInt(3); edits >= 0; edits--) {
+                int at = random.nextInt(id.length() + 1);
+                char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+                switch (random.nextInt(3)) {
+                    case 0 -> id.insert(at, c);
+                    case 1 -> { if (at < id.length()) id.deleteCharAt(at); }
+                    default -> { if (at < id.length()) id.setCharAt(at, c); }
+                }
+            }
+            assertSameAsRegex(id.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Test3: Factories return the same instance for the same ID")
+    void testInterning() {
+        assertSame(VehicleID.of("VH-123456-Auto"), VehicleID.of("VH-123456-Auto"));
+        assertSame(StationID.of("ST-12345-Central"), StationID.of("ST-12345-Central"));
+        assertSame(ServiceID.of("UA-a-1_VH-123456-a_ST-12345-a"), ServiceID.of("UA-a-1_VH-123456-a_ST-12345-a"));
+        assertEquals(new VehicleID("VH-123456-Auto"), VehicleID.of("VH-123456-Auto"));
+        assertNotEquals(VehicleID.of("VH-123456-Auto"), VehicleID.of("VH-123457-Auto"));
+    }
+
+    @Test
+    @DisplayName("Test4: Factories reject what the constructors reject")
+    void testFactoryValidation() {
+        assertThrows(IllegalArgumentException.class, () -> VehicleID.of(null));
+        assertThrows(IllegalArgumentException.class, () -> VehicleID.of("VH-12345-Auto"));
+        assertThrows(IllegalArgumentException.class, () -> StationID.of("ST-123456-Central"));
+        assertThrows(IllegalArgumentException.class, () -> ServiceID.of("UA-a-1_VH-123456-a"));
+    }
+
+    // Internal operations
+
+    private static void assertSameAsRegex(String id) {
+        check(id, USER, IdFormat::isUserAccount);
+        check(id, VEHICLE, IdFormat::isVehicle);
+        check(id, STATION, IdFormat::isStation);
+        check(id, SERVICE, IdFormat::isService);
+    }
+
+    private static void check(String id, String regex, Predicate<String> validator) {
+        assertEquals(id.matches(regex), validator.test(id), () -> "'" + id + "' against " + regex);
+    }
+}
@@ -0,0 +1,66 @@
+package data;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceIDTest {
+
+    private final UserAccount user = new UserAccount("UA-test-2367");
+    private final VehicleID vehicle = new VehicleID("VH-123456-Patinete");
+    private final StationID station = new StationID("ST-12345-Lleida");
+
+    @Test
+    @DisplayName("Test1: An ID built from its parts equals the parsed string form")
+    void testPartsAndString() {
+        ServiceID built = ServiceID.of(user, vehicle, station, 0);
+        assertEquals("UA-test-2367_VH-123456-Patinete_ST-12345-Lleida", built.getId());
+        assertEquals(new ServiceID(built.getId()), built);
+        assertEquals(new ServiceID(built.getId()).hashCode(), built.hashCode());
+
+        ServiceID parsed = new ServiceID("UA-test-2367_VH-123456-Patinete_ST-12345-Lleida_42");
+        assertEquals("UA-test-2367", parsed.getUserId());
+        assertEquals("VH-123456-Patinete", parsed.getVehicleId());
+        assertEquals("ST-12345-Lleida", parsed.getStationId());
+        assertEquals(42, parsed.getSequence());
+        assertEquals(ServiceID.of(user, vehicle, station, 42), parsed);
+        assertEquals(parsed.getId(), ServiceID.of(user, vehicle, station, 42).getId());
+    }
+
+    @Test
+    @DisplayName("Test2: Repeated rides with the same parts get different IDs")
+    void testSequence() {
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 10, 0);
+        ServiceID first = ServiceID.of(user, vehicle, station, start);
+        ServiceID second = ServiceID.of(user, vehicle, station, start.plusMinutes(30));
+        assertNotEquals(first, second);
+        assertEquals(first, ServiceID.of(user, vehicle, station, start));
+        assertEquals(first.getKeyHigh(), second.getKeyHigh());
+        assertNotEquals(first.getKeyLow(), second.getKeyLow());
+    }
+
+    @Test
+    @DisplayName("Test3: IDs that only differ in a name are not equal")
+    void testNames() {
+        Set<ServiceID> ids = new HashSet<>();
+        ids.add(ServiceID.of(user, vehicle, station, 1));
+        ids.add(ServiceID.of(new UserAccount("UA-other-2367"), vehicle, station, 1));
+        ids.add(ServiceID.of(user, new VehicleID("VH-123456-Bici"), station, 1));
+        ids.add(ServiceID.of(user, vehicle, new StationID("ST-12345-Girona"), 1));
+        assertEquals(4, ids.size());
+    }
+
+    @Test
+    @DisplayName("Test4: Invalid parts and sequences are rejected")
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> ServiceID.of(null, vehicle, station, 0));
+        assertThrows(IllegalArgumentException.class, () -> ServiceID.of(user, vehicle, station, -1));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceID("UA-test-2367_VH-123456-Patinete_ST-12345-Lleida_"));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceID("UA-test-2367_VH-123456-Patinete_ST-12345-Lleida_042"));
+    }
+}
@@ -0,0 +1,54 @@
+package data.sensors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorSnapshotTest {
+
+    @Test
+    @DisplayName("Test1: Sensors write their values into their slots")
+    void testWriteTo() {
+        SensorSnapshot snapshot = new SensorSnapshot();
+        new SensorSpeed(18.5).writeTo(snapshot);
+        new SensorTemperature(-3).writeTo(snapshot);
+        new SensorBrake(true).writeTo(snapshot);
+        new SensorLight(false).writeTo(snapshot);
+
+        assertEquals(18.5, snapshot.getSpeed());
+        assertEquals(-3, snapshot.getTemperature());
+        assertTrue(snapshot.isBraking());
+        assertFalse(snapshot.isLightOn());
+        assertTrue(snapshot.has(SensorSnapshot.LIGHT));
+    }
+
+    @Test
+    @DisplayName("Test2: Values no sensor wrote are missing, and other sensors write nothing")
+    void testMissingValues() {
+        SensorSnapshot snapshot = new SensorSnapshot();
+        new MockSensorDataA(true).writeTo(snapshot);
+        new SensorSpeed(10).writeTo(snapshot);
+
+        assertTrue(snapshot.has(SensorSnapshot.SPEED));
+        assertFalse(snapshot.has(SensorSnapshot.TEMPERATURE));
+        assertTrue(Double.isNaN(snapshot.getTemperature()));
+        assertFalse(snapshot.isBraking());
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(SensorSnapshot.SLOTS));
+    }
+
+    @Test
+    @DisplayName("Test3: A snapshot moves along a buffer of rows")
+    void testRows() {
+        double[] rows = new double[3 * SensorSnapshot.SLOTS];
+        SensorSnapshot snapshot = new SensorSnapshot(rows, 0);
+        for (int r = 0; r < 3; r++) {
+            snapshot.moveTo(r * SensorSnapshot.SLOTS).clear();
+            new SensorSpeed(r * 10).writeTo(snapshot);
+        }
+
+        assertEquals(20, rows[2 * SensorSnapshot.SLOTS + SensorSnapshot.SPEED]);
+        assertTrue(Double.isNaN(rows[SensorSnapshot.SLOTS + SensorSnapshot.LIGHT]));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.moveTo(rows, rows.length - 1));
+    }
+}
@@ -14,13 +14,16 @@ import micromobility.PMVehicle;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import services.PaymentLedger;
 import services.Server;
+import services.WalletSettlement;
 import exception.*;
 import services.smartfeatures.ArduinoMicroController;
 import services.smartfeatures.UnbondedBTSignalVMP;
 
 import java.math.BigDecimal;
 import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -171,4 +174,62 @@ class JourneyRealizeHandlerSuccessTest {
 
         assertDoesNotThrow(() -> journeyHandler.selectPaymentMethod('W'));
     }
+
+    @Test
+    @DisplayName("Test8: Pay with Wallet through the settlement pipeline")
+    public void testPayWithWalletAsync() throws Throwable {
+        PaymentLedger ledger = new PaymentLedger();
+        try (WalletSettlement settlement = new WalletSettlement(ledger)) {
+            journeyHandler.setSettlement(settlement);
+            user.getUserWallet().addFunds(new BigDecimal(700));
+            unbondedBTSignal.BTbroadcast();
+            journeyHandler.scanQR();
+            journeyHandler.startDriving();
+            journeyHandler.setGp(new GeographicPoint(41.614159f, -0.625800f)); //Lleida (from madrid to lleida)
+            journeyHandler.stopDriving();
+            journeyHandler.unPairVehicle();
+
+            journeyHandler.selectPaymentMethodAsync('W').get(10, TimeUnit.SECONDS);
+
+            long charged = PaymentLedger.toCents(journeyHandler.getLocalJourneyService().getImportCost());
+            assertEquals(70000 - charged, user.getUserWallet().getBalanceCents());
+            assertEquals(charged, ledger.total(user));
+        }
+    }
+
+    @Test
+    @DisplayName("Test9: Location fixes while driving make the distance follow the path")
+    public void testLocationFixes() throws Throwable {
+        unbondedBTSignal.BTbroadcast();
+        journeyHandler.scanQR();
+        assertThrows(ProceduralException.class, () -> journeyHandler.registerLocationFix(gp, System.currentTimeMillis()));
+        journeyHandler.startDriving();
+        long now = System.currentTimeMillis();
+        GeographicPoint north = new GeographicPoint(40.4258f, -3.7038f); // 1 km north
+        assertTrue(journeyHandler.registerLocationFix(north, now + 180_000));
+        assertFalse(journeyHandler.registerLocationFix(new GeographicPoint(41.4168f, -3.7038f), now + 181_000));
+        journeyHandler.stopDriving();
+        journeyHandler.unPairVehicle(); // Back at the start
+
+        assertEquals(2 * gp.calculateDistance(north), journeyHandler.getLocalJourneyService().getDistance(), 1e-3f);
+    }
+
+    @Test
+    @DisplayName("Test10: Pay with Wallet asynchronously through the server when no settlement is set")
+    public void testPayWithWalletAsyncThroughServer() throws Throwable {
+        user.getUserWallet().addFunds(new BigDecimal(700));
+        unbondedBTSignal.BTbroadcast();
+        journeyHandler.scanQR();
+        journeyHandler.startDriving();
+        journeyHandler.setGp(new GeographicPoint(41.614159f, -0.625800f)); //Lleida (from madrid to lleida)
+        journeyHandler.stopDriving();
+        journeyHandler.unPairVehicle();
+
+        journeyHandler.selectPaymentMethodAsync('W').get(10, TimeUnit.SECONDS);
+
+        JourneyService service = journeyHandler.getLocalJourneyService();
+        long charged = PaymentLedger.toCents(service.getImportCost());
+        assertEquals(70000 - charged, user.getUserWallet().getBalanceCents());
+        assertEquals('W', ((MockServer) serverMock).getPaymentMethod(service.getServiceID()));
+    }
 }
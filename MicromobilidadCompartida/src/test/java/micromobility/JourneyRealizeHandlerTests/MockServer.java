@@ -19,6 +19,7 @@ public class MockServer implements Server {
 
     private Map<VehicleID, Boolean> vehicleAvailability = new HashMap<>();
     private Map<VehicleID, Boolean> pairingRegistry = new HashMap<>();
+    private Map<ServiceID, Character> payments = new HashMap<>();
 
     @Override
     public void checkPMVAvail(VehicleID vhID) throws PMVNotAvailException, ConnectException {
@@ -70,6 +71,10 @@ public class MockServer implements Server {
 
     @Override
     public void registerPayment(ServiceID servID, UserAccount user, BigDecimal imp, char payMeth) throws ConnectException {
+        payments.put(servID, payMeth);
+    }
 
+    public Character getPaymentMethod(ServiceID servID) {
+        return payments.get(servID);
     }
 }
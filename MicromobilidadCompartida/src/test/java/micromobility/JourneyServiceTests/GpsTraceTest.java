@@ -0,0 +1,87 @@
+package micromobility.JourneyServiceTests;
+
+import data.GeographicPoint;
+import data.ServiceID;
+import micromobility.GpsTrace;
+import micromobility.JourneyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GpsTraceTest {
+
+    private GpsTrace trace;
+    private float[] lats;
+    private float[] lons;
+    private long[] times;
+
+    @BeforeEach
+    void setUp() { // A ride of 10 minutes with one fix per second, heading north-east
+        trace = new GpsTrace();
+        Random random = new Random(17);
+        lats = new float[600];
+        lons = new float[600];
+        times = new long[600];
+        for (int i = 0; i < 600; i++) {
+            lats[i] = 41.6176f + i * 0.00004f + (random.nextFloat() - 0.5f) * 0.00001f;
+            lons[i] = 0.6200f + i * 0.00005f + (random.nextFloat() - 0.5f) * 0.00001f;
+            times[i] = 1_700_000_000_000L + i * 1_000L + (i % 50 == 0 ? 200 : 0);
+            trace.append(lats[i], lons[i], times[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Test1: Should decode the fixes as they were recorded")
+    void testRoundTrip() {
+        GpsTrace.Cursor cursor = trace.cursor();
+        assertThrows(NoSuchElementException.class, cursor::getLatitude);
+        for (int i = 0; i < 600; i++) {
+            assertTrue(cursor.next());
+            assertEquals(lats[i], cursor.getLatitude(), 1e-6f);
+            assertEquals(lons[i], cursor.getLongitude(), 1e-6f);
+            assertEquals(times[i], cursor.getTimestamp());
+        }
+        assertFalse(cursor.next());
+        assertEquals(600, trace.size());
+    }
+
+    @Test
+    @DisplayName("Test2: Should take a few bytes per fix")
+    void testCompactEncoding() {
+        assertTrue(trace.getEncodedSize() < 600 * 5, "Encoded size: " + trace.getEncodedSize());
+    }
+
+    @Test
+    @DisplayName("Test3: Should drop the fixes close to the simplified route")
+    void testSimplify() {
+        GpsTrace simplified = trace.simplify(0.005); // 5 m
+
+        GeographicPoint[] points = simplified.toPoints();
+        assertTrue(points.length < 60, "Fixes kept: " + points.length);
+        assertEquals(new GeographicPoint(lats[0], lons[0]).calculateDistance(points[0]), 0f, 1e-4f);
+        assertEquals(new GeographicPoint(lats[599], lons[599]).calculateDistance(points[points.length - 1]), 0f, 1e-4f);
+        assertTrue(trace.simplify(0).size() > 590); // Only fixes exactly on the route are dropped
+        assertEquals(1, new GpsTrace() {{ append(1f, 2f, 3L); }}.simplify(1).size());
+    }
+
+    @Test
+    @DisplayName("Test4: Should record the route of a journey and simplify it when finished")
+    void testJourneyTrace() {
+        JourneyService journey = new JourneyService(new ServiceID("UA-trace-1_VH-123456-Patinete_ST-12345-Lleida"), new GeographicPoint(lats[0], lons[0]));
+        assertNull(journey.getTrace());
+        for (int i = 0; i < 600; i++) {
+            journey.addLocationFix(new GeographicPoint(lats[i], lons[i]), times[i]);
+        }
+        journey.finishTrace(0);
+        assertEquals(600, journey.getTrace().size());
+
+        journey.finishTrace(0.005);
+        assertTrue(journey.getTrace().size() < 60);
+        assertThrows(IllegalArgumentException.class, () -> journey.finishTrace(-1));
+    }
+}
@@ -0,0 +1,87 @@
+package micromobility.JourneyServiceTests;
+
+import data.GeographicPoint;
+import micromobility.Odometer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OdometerTest {
+
+    private Odometer odometer;
+    private GeographicPoint start;
+
+    @BeforeEach
+    void setUp() {
+        odometer = new Odometer();
+        start = new GeographicPoint(41.6176f, 0.6200f); // Lleida coordinates
+    }
+
+    @Test
+    @DisplayName("Test1: Should add up the path through the fixes, not the straight line")
+    void testPathLength() {
+        GeographicPoint east = new GeographicPoint(41.6176f, 0.6300f);
+        GeographicPoint back = new GeographicPoint(41.6176f, 0.6205f);
+
+        assertTrue(odometer.addFix(start, 0));
+        assertTrue(odometer.addFix(east, 120_000)); // About 0.83 km in 2 minutes
+        assertTrue(odometer.addFix(back, 240_000));
+
+        float expected = start.calculateDistance(east) + east.calculateDistance(back);
+        assertEquals(expected, odometer.getDistance(), 1e-4f);
+        assertTrue(odometer.getDistance() > start.calculateDistance(back) * 10);
+        assertEquals(back, odometer.getLastFix());
+    }
+
+    @Test
+    @DisplayName("Test2: Should reject jumps faster than the maximum speed and ignore jitter")
+    void testOutliers() {
+        odometer.addFix(start, 0);
+        assertFalse(odometer.addFix(new GeographicPoint(41.70f, 0.62f), 1_000)); // 9 km in a second
+        assertTrue(odometer.addFix(new GeographicPoint(41.61762f, 0.62002f), 2_000)); // 3 m of noise
+        assertFalse(odometer.addFix(new GeographicPoint(41.6180f, 0.6200f), 2_000)); // Same instant
+
+        assertEquals(0f, odometer.getDistance());
+        assertEquals(2, odometer.getRejectedFixes());
+    }
+
+    @Test
+    @DisplayName("Test3: Should move on when consistent fixes show the first fix was wrong")
+    void testReanchor() {
+        GeographicPoint wrong = new GeographicPoint(41.70f, 0.62f);
+        odometer.addFix(wrong, 0);
+        for (int i = 0; i < 3; i++) {
+            boolean accepted = odometer.addFix(new GeographicPoint(41.6176f + i * 0.0001f, 0.6200f), 1_000 + i * 1_000L);
+            assertEquals(i == 2, accepted); // The third agreeing fix becomes the anchor
+        }
+        assertEquals(0f, odometer.getDistance());
+
+        GeographicPoint next = new GeographicPoint(41.6180f, 0.6200f);
+        assertTrue(odometer.addFix(next, 10_000));
+        assertTrue(odometer.getDistance() > 0 && odometer.getDistance() < 0.1f);
+    }
+
+    @Test
+    @DisplayName("Test4: Should count every fix once, as accepted or rejected, matching what addFix returned")
+    void testCounters() {
+        GeographicPoint[] fixes = {
+                new GeographicPoint(41.70f, 0.62f), // Wrong first fix
+                start, new GeographicPoint(41.6177f, 0.6200f), new GeographicPoint(41.6178f, 0.6200f), // Agree: re-anchor
+                new GeographicPoint(41.61782f, 0.62001f), // Jitter
+                new GeographicPoint(41.6200f, 0.6200f), // About 250 m in a minute
+                new GeographicPoint(41.80f, 0.62f) // Jump
+        };
+        long[] times = {0, 1_000, 2_000, 3_000, 4_000, 64_000, 65_000};
+        boolean[] expected = {true, false, false, true, true, true, false};
+        int accepted = 0;
+        for (int i = 0; i < fixes.length; i++) {
+            assertEquals(expected[i], odometer.addFix(fixes[i], times[i]), "fix " + i);
+            accepted += expected[i] ? 1 : 0;
+        }
+
+        assertEquals(accepted, odometer.getAcceptedFixes());
+        assertEquals(fixes.length - accepted, odometer.getRejectedFixes());
+    }
+}
@@ -7,6 +7,7 @@ import micromobility.PMVehicle;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import services.smartfeatures.QRDecoderVMP;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -76,6 +77,24 @@ class PMVehicleSuccessTest {
         assertEquals(PMVState.TEMPORARY_PARKING, vehicle.getState()); // Check state transition to TEMPORARY_PARKING
     }
 
+    @Test
+    @DisplayName("Test5: Verify that reserving an available vehicle only succeeds once")
+    void testTryNotAvailb() {
+        assertTrue(vehicle.tryNotAvailb()); // First rider wins the vehicle
+        assertFalse(vehicle.tryNotAvailb()); // Second rider is rejected
+        assertEquals(PMVState.NOT_AVAILABLE, vehicle.getState());
+    }
+
+    @Test
+    @DisplayName("Test6: Verify that compareAndSetState only applies from the expected state")
+    void testCompareAndSetState() {
+        assertFalse(vehicle.compareAndSetState(PMVState.NOT_AVAILABLE, PMVState.UNDER_WAY));
+        assertEquals(PMVState.AVAILABLE, vehicle.getState()); // State is untouched
+
+        assertTrue(vehicle.compareAndSetState(PMVState.AVAILABLE, PMVState.TEMPORARY_PARKING));
+        assertEquals(PMVState.TEMPORARY_PARKING, vehicle.getState());
+    }
+
     @Test
     @DisplayName("Test7: Verify that the vehicle's sensors data is formatted correctly")
     void testGetSensorsData() {
@@ -95,4 +114,42 @@ class PMVehicleSuccessTest {
         vehicle.setQRCode(newQRCode);
         assertEquals(newQRCode, vehicle.getQRCode()); // Check if QR code is updated
     }
+
+    @Test
+    @DisplayName("Test9: Verify that a QR code resource is loaded lazily, packed and shared")
+    void testSetQRCodeResource() throws Throwable {
+        PMVehicle other = new PMVehicle(PMVState.AVAILABLE, new GeographicPoint(0, 0), 50.0);
+        vehicle.setQRCode("qrcode-dummy.png");
+        other.setQRCode("qrcode-dummy.png");
+
+        BufferedImage qrCode = vehicle.getQRCode();
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, qrCode.getType());
+        assertSame(qrCode, other.getQRCode()); // One image for the whole fleet
+        assertEquals("VH-123456-TestVehicle", new QRDecoderVMP().getVehicleID(qrCode).getId());
+
+        vehicle.setQRCode("missing-qrcode.png");
+        BufferedImage blank = vehicle.getQRCode();
+        assertNotNull(blank); // Blank placeholder
+        other.setQRCode("missing-qrcode.png");
+        assertNotSame(blank, other.getQRCode()); // Drawing on one placeholder cannot change another
+        BufferedImage direct = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        vehicle.setQRCode(direct);
+        assertSame(direct, vehicle.getQRCode());
+    }
+
+    @Test
+    @DisplayName("Test10: Verify that the sensors are read into a snapshot as numbers")
+    void testReadSensors() {
+        PMVehicle scooter = new PMVehicle(PMVState.AVAILABLE, new GeographicPoint(0, 0), 50.0);
+        SensorSnapshot snapshot = scooter.readSensors(new SensorSnapshot());
+        assertEquals(0, snapshot.getSpeed());
+        assertEquals(20, snapshot.getTemperature());
+        assertFalse(snapshot.isBraking());
+        assertFalse(snapshot.isLightOn());
+
+        vehicle.readSensors(snapshot); // Mock sensors only: the values of the scooter are cleared
+        for (int slot = 0; slot < SensorSnapshot.SLOTS; slot++) {
+            assertFalse(snapshot.has(slot));
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package micromobility.payment;
+
+import data.UserAccount;
+import exception.NotEnoughWalletException;
+import exception.ProceduralException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentRegistryTest {
+
+    private PaymentRegistry registry;
+    private UserAccount user;
+
+    @BeforeEach
+    void setUp() {
+        registry = PaymentRegistry.defaults();
+        user = new UserAccount("UA-registry-1");
+        user.getUserWallet().addFunds(new BigDecimal("20"));
+    }
+
+    @Test
+    @DisplayName("Test1: the wallet processor is shared and charges the wallet of each user")
+    void testSharedWalletProcessor() throws Throwable {
+        UserAccount other = new UserAccount("UA-registry-2");
+        other.getUserWallet().addFunds(new BigDecimal("5"));
+
+        Payment wallet = registry.get('W');
+        assertSame(wallet, registry.get('W'));
+        wallet.processPayment(user, new BigDecimal("7.50"));
+        wallet.processPayment(other, new BigDecimal("5"));
+
+        assertEquals(new BigDecimal("12.5"), user.getUserWallet().getBalance());
+        assertEquals(BigDecimal.ZERO, other.getUserWallet().getBalance());
+        assertThrows(NotEnoughWalletException.class, () -> wallet.processPayment(other, new BigDecimal("1")));
+    }
+
+    @Test
+    @DisplayName("Test2: stand-in and unknown methods are rejected")
+    void testUnavailableMethods() throws Throwable {
+        for (char code : new char[]{'C', 'B', 'P'}) {
+            Payment method = registry.get(code);
+            assertThrows(ProceduralException.class, () -> method.processPayment(user, new BigDecimal("1")));
+        }
+        ProceduralException unknown = assertThrows(ProceduralException.class, () -> registry.get('X'));
+        assertEquals("Pay method not valid. Only C, B, P, or W", unknown.getMessage());
+        assertThrows(ProceduralException.class, () -> registry.get('€'));
+        assertEquals(new BigDecimal("20"), user.getUserWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Test3: a registered method replaces the stand-in for its code")
+    void testRegister() throws Throwable {
+        PaymentRegistry custom = new PaymentRegistry();
+        Payment card = new Payment() {
+            @Override
+            public void processPayment(BigDecimal imp) {
+            }
+
+            @Override
+            public void processPayment(UserAccount user, BigDecimal imp) {
+            }
+        };
+        assertFalse(custom.contains('C'));
+        custom.register('C', card);
+
+        assertSame(card, custom.get('C'));
+        assertThrows(ProceduralException.class, () -> custom.get('W'));
+        assertThrows(IllegalArgumentException.class, () -> custom.register('W', null));
+    }
+
+    @Test
+    @DisplayName("Test4: asynchronous payments report failures through the future")
+    void testProcessPaymentAsync() throws Throwable {
+        registry.get('W').processPaymentAsync(user, new BigDecimal("2")).get();
+        assertEquals(new BigDecimal("18"), user.getUserWallet().getBalance());
+
+        CompletableFuture<Void> tooMuch = registry.get('W').processPaymentAsync(user, new BigDecimal("50"));
+        ExecutionException e = assertThrows(ExecutionException.class, tooMuch::get);
+        assertInstanceOf(NotEnoughWalletException.class, e.getCause());
+
+        CompletableFuture<Void> card = registry.get('C').processPaymentAsync(user, new BigDecimal("2"));
+        e = assertThrows(ExecutionException.class, card::get);
+        assertInstanceOf(ProceduralException.class, e.getCause());
+    }
+
+    @Test
+    @DisplayName("Test5: charging without a user fails with a ProceduralException on every shared processor")
+    void testAmountOnlyPayment() throws Throwable {
+        for (char code : new char[]{'C', 'B', 'P', 'W'}) {
+            Payment method = registry.get(code);
+            assertThrows(ProceduralException.class, () -> method.processPayment(new BigDecimal("1")));
+        }
+        assertEquals(new BigDecimal("20"), user.getUserWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Test6: asynchronous payments run on the given executor")
+    void testProcessPaymentAsyncExecutor() throws Throwable {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "payment-gateway"));
+        try {
+            String[] thread = new String[1];
+            Payment recording = new Payment() {
+                @Override
+                public void processPayment(BigDecimal imp) {
+                }
+
+                @Override
+                public void processPayment(UserAccount user, BigDecimal imp) {
+                    thread[0] = Thread.currentThread().getName();
+                }
+            };
+            recording.processPaymentAsync(user, new BigDecimal("1"), executor).get();
+            assertEquals("payment-gateway", thread[0]);
+
+            executor.shutdown();
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> recording.processPaymentAsync(user, new BigDecimal("1"), executor).get());
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
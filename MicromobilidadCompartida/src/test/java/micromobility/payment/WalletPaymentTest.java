@@ -1,5 +1,6 @@
 package micromobility.payment;
 
+import data.UserAccount;
 import exception.NotEnoughWalletException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -47,4 +48,18 @@ class WalletPaymentTest {
     void testGetWallet() {
         assertEquals(wallet, walletPayment.getWallet());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test5: Validate that charging a user deducts from the bound wallet, not the user's")
+    void testProcessPaymentForUserUsesBoundWallet() throws NotEnoughWalletException {
+        UserAccount user = new UserAccount("UA-bound-5");
+        user.getUserWallet().addFunds(BigDecimal.valueOf(100));
+
+        walletPayment.processPayment(user, BigDecimal.valueOf(30));
+
+        assertEquals(BigDecimal.valueOf(70), wallet.getBalance());
+        assertEquals(BigDecimal.valueOf(100), user.getUserWallet().getBalance());
+        assertFalse(walletPayment.settlesThroughWallet(user));
+        assertTrue(new WalletPayment(user.getUserWallet()).settlesThroughWallet(user));
+    }
+}
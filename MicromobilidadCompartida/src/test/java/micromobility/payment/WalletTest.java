@@ -6,6 +6,13 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -67,4 +74,47 @@ class WalletTest {
         assertThrows(IllegalArgumentException.class, () -> wallet.deduct(BigDecimal.valueOf(0)));
         assertThrows(IllegalArgumentException.class, () -> wallet.deduct(BigDecimal.valueOf(-10)));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test8: Validate that concurrent top-ups and charges do not lose updates")
+    void testConcurrentOperations() throws Exception {
+        int threads = 8;
+        int operations = 10_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < operations; i++) {
+                    wallet.addFundsCents(3);
+                    try {
+                        wallet.deductCents(2);
+                    } catch (NotEnoughWalletException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS); // Rethrows a worker failure on the test thread
+        }
+        pool.shutdown();
+
+        assertEquals(10_000 + (long) threads * operations, wallet.getBalanceCents());
+    }
+
+    @Test
+    @DisplayName("Test9: Validate that the cent-based operations match the BigDecimal ones")
+    void testCentOperations() throws NotEnoughWalletException {
+        wallet.deductCents(2550);
+        assertEquals(new BigDecimal("74.5"), wallet.getBalance());
+        wallet.addFunds(new BigDecimal("0.50"));
+        assertEquals(7500, wallet.getBalanceCents());
+        assertThrows(NotEnoughWalletException.class, () -> wallet.deductCents(7501));
+        assertThrows(IllegalArgumentException.class, () -> wallet.deduct(new BigDecimal("0.001")));
+        assertEquals(BigDecimal.valueOf(75), wallet.getBalance());
+    }
+}
@@ -0,0 +1,129 @@
+package micromobility.pricing;
+
+import data.GeographicPoint;
+import data.ServiceID;
+import data.StationID;
+import micromobility.JourneyService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import services.JourneyArchive;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepricingTest {
+
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 12, 23, 10, 0);
+
+    @Test
+    @DisplayName("Test1: repricing with the charged tariff leaves the totals unchanged")
+    void testSameTariff() {
+        List<JourneyService> journeys = journeys(50_000, new Random(7));
+
+        Repricing.Report report = Repricing.reprice(Tariff.standard(), journeys);
+
+        assertEquals(50_000, report.getCount());
+        assertEquals(report.getChargedTotal(), report.getRepricedTotal());
+        assertEquals(BigDecimal.valueOf(0, 2), report.getDelta());
+        assertEquals(0, report.getRaised() + report.getLowered());
+    }
+
+    @Test
+    @DisplayName("Test2: the deltas of a new tariff match pricing every journey one by one")
+    void testNewTariff() {
+        Properties table = new Properties();
+        table.setProperty("rate.km", "1.75");
+        table.setProperty("rate.minute", "0.4");
+        table.setProperty("penalty.25", "0.3");
+        Tariff tariff = Tariff.load(table);
+        List<JourneyService> journeys = journeys(20_000, new Random(11));
+
+        long charged = 0;
+        long repriced = 0;
+        long raised = 0;
+        for (JourneyService journey : journeys) {
+            long before = journey.getImportCost().unscaledValue().longValue();
+            long after = tariff.priceCents(journey.getDistance(), journey.getDuration(), journey.getAvgSpeed(), journey.getEndDate(), (String) null);
+            charged += before;
+            repriced += after;
+            raised += after > before ? 1 : 0;
+        }
+        Repricing.Report report = Repricing.reprice(tariff, journeys, new ForkJoinPool(3));
+
+        assertEquals(BigDecimal.valueOf(charged, 2), report.getChargedTotal());
+        assertEquals(BigDecimal.valueOf(repriced, 2), report.getRepricedTotal());
+        assertEquals(BigDecimal.valueOf(repriced - charged, 2), report.getDelta());
+        assertEquals(raised, report.getRaised());
+    }
+
+    @Test
+    @DisplayName("Test3: a stream of journeys gives the same report and skips unfinished ones")
+    void testStream() {
+        List<JourneyService> journeys = journeys(10_000, new Random(3));
+        Repricing.Report fromList = Repricing.reprice(Tariff.standard(), journeys);
+        journeys.add(new JourneyService(new ServiceID("UA-open-1_VH-123456-Patinete_ST-12345-Lleida"), new GeographicPoint(0, 0)));
+
+        Repricing.Report fromStream = Repricing.reprice(Tariff.standard(), journeys.stream());
+
+        assertEquals(fromList.getCount(), fromStream.getCount());
+        assertEquals(1, fromStream.getSkipped());
+        assertEquals(fromList.getRepricedTotal(), fromStream.getRepricedTotal());
+        assertThrows(IllegalArgumentException.class, () -> Repricing.reprice(null, journeys));
+    }
+
+    @Test
+    @DisplayName("Test4: journeys streamed from the archive are priced with the surcharge of their end station")
+    void testArchiveEndStation(@TempDir Path dir) {
+        Properties table = new Properties(); // The standard tariff plus one zone
+        table.setProperty("rate.km", "1.5");
+        table.setProperty("rate.minute", "0.5");
+        table.setProperty("penalty.25", "0.2");
+        table.setProperty("surcharge.weekend", "0.15");
+        table.setProperty("zone.ST-54321-Lleida", "0.5");
+        Tariff tariff = Tariff.load(table);
+        JourneyArchive archive = new JourneyArchive(dir, 16, 64);
+        List<JourneyService> journeys = journeys(1_000, new Random(5));
+        long repriced = 0;
+        long raised = 0;
+        for (int i = 0; i < journeys.size(); i++) {
+            JourneyService journey = journeys.get(i);
+            // Every journey starts at ST-12345-Lleida; only the odd ones end in the surcharged zone
+            StationID end = new StationID(i % 2 == 0 ? "ST-12345-Lleida" : "ST-54321-Lleida");
+            journey.setEndStation(end);
+            long after = tariff.priceCents(journey.getDistance(), journey.getDuration(), journey.getAvgSpeed(), journey.getEndDate(), end);
+            repriced += after;
+            raised += after > journey.getImportCost().unscaledValue().longValue() ? 1 : 0;
+            archive.add(journey);
+        }
+
+        Repricing.Report report = Repricing.reprice(tariff, archive.stream(), new ForkJoinPool(3));
+
+        assertEquals(journeys.size(), report.getCount());
+        assertEquals(BigDecimal.valueOf(repriced, 2), report.getRepricedTotal());
+        assertEquals(raised, report.getRaised());
+        assertEquals(0, report.getLowered());
+    }
+
+    private static List<JourneyService> journeys(int count, Random random) {
+        List<JourneyService> journeys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JourneyService journey = new JourneyService(new ServiceID("UA-reprice-" + i + "_VH-123456-Patinete_ST-12345-Lleida"), new GeographicPoint(0, 0));
+            journey.setDistance(random.nextFloat() * 20);
+            journey.setDuration(random.nextInt(90));
+            journey.setAvgSpeed(random.nextFloat() * 35);
+            journey.setEndDate(MONDAY.plusDays(random.nextInt(7)));
+            journey.setImportCost(Tariff.standard().price(journey.getDistance(), journey.getDuration(), journey.getAvgSpeed(), journey.getEndDate(), null));
+            journeys.add(journey);
+        }
+        return journeys;
+    }
+}
@@ -0,0 +1,115 @@
+package micromobility.pricing;
+
+import data.StationID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffTest {
+
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 12, 23, 10, 0);
+    private static final LocalDateTime SATURDAY = LocalDateTime.of(2024, 12, 28, 10, 0);
+    private static final LocalDateTime HOLIDAY = LocalDateTime.of(2024, 12, 25, 10, 0);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Test1: the standard tariff prices exactly as the BigDecimal formula")
+    void testStandardMatchesFormula() {
+        Tariff tariff = Tariff.standard();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            float dis = i % 10 == 0 ? random.nextInt(2000) / 8f : random.nextFloat() * 50;
+            int dur = random.nextInt(240);
+            float avSp = random.nextFloat() * 40;
+            LocalDateTime date = MONDAY.plusDays(random.nextInt(7));
+
+            BigDecimal expected = formula(dis, dur, avSp, date);
+            BigDecimal actual = tariff.price(dis, dur, avSp, date, null);
+            assertEquals(expected, actual, () -> dis + " km, " + dur + " min, " + avSp + " km/h, " + date);
+        }
+    }
+
+    @Test
+    @DisplayName("Test2: amounts at exactly half a cent are rounded up")
+    void testHalfCentTies() {
+        Tariff tariff = Tariff.standard();
+
+        assertEquals(58, tariff.priceCents(0f, 1, 0f, SATURDAY, (StationID) null)); // 0.575
+        assertEquals(68, tariff.priceCents(0f, 1, 30f, SATURDAY, (StationID) null)); // 0.675
+        assertEquals(-58, tariff.priceCents(0f, -1, 0f, SATURDAY, (StationID) null));
+        assertEquals(new BigDecimal("0.58"), tariff.price(0f, 1, 0f, SATURDAY, null));
+        assertThrows(NumberFormatException.class, () -> tariff.priceCents(Float.NaN, 1, 0f, MONDAY, (StationID) null));
+    }
+
+    @Test
+    @DisplayName("Test3: speed tiers, holidays and zones are read from the table")
+    void testLoadedTable() throws IOException {
+        Path file = tempDir.resolve("tariff.properties");
+        Files.writeString(file, String.join("\n",
+                "rate.km=1",
+                "rate.minute=0.25",
+                "penalty.20=0.1",
+                "penalty.30=0.5",
+                "surcharge.weekend=0.15",
+                "surcharge.holiday=0.3",
+                "holidays=2024-12-25, 2025-01-01",
+                "zone.ST-12345-Centre=0.05"));
+        Tariff tariff = Tariff.load(file);
+        StationID centre = new StationID("ST-12345-Centre");
+        StationID outskirts = new StationID("ST-54321-Outskirts");
+
+        assertEquals(new BigDecimal("2.00"), tariff.price(1f, 4, 10f, MONDAY, outskirts));
+        assertEquals(new BigDecimal("2.20"), tariff.price(1f, 4, 25f, MONDAY, outskirts));
+        assertEquals(new BigDecimal("3.00"), tariff.price(1f, 4, 35f, MONDAY, outskirts));
+        assertEquals(new BigDecimal("2.30"), tariff.price(1f, 4, 10f, SATURDAY, null));
+        assertEquals(new BigDecimal("2.60"), tariff.price(1f, 4, 10f, HOLIDAY, null));
+        assertEquals(new BigDecimal("2.10"), tariff.price(1f, 4, 10f, MONDAY, centre));
+        assertEquals(tariff.priceExact(3.3f, 17, 33f, HOLIDAY, centre), tariff.price(3.3f, 17, 33f, HOLIDAY, centre));
+    }
+
+    @Test
+    @DisplayName("Test4: invalid tables are rejected")
+    void testInvalidTables() {
+        assertThrows(IllegalArgumentException.class, () -> Tariff.load(table("rate.km", "1.5")));
+        IllegalArgumentException negative = assertThrows(IllegalArgumentException.class, () -> Tariff.load(table("rate.km", "1.5", "rate.minute", "-0.5")));
+        assertTrue(negative.getMessage().contains("cannot be negative"));
+        assertDoesNotThrow(() -> Tariff.load(table("rate.km", "1.5", "rate.minute", "0"))); // A free component is allowed
+        assertThrows(IllegalArgumentException.class, () -> Tariff.load(table("rate.km", "1.00001", "rate.minute", "0.5")));
+        assertThrows(IllegalArgumentException.class, () -> Tariff.load(table("rate.km", "1.5", "rate.minute", "0.5", "penalty.fast", "0.2")));
+        assertThrows(IllegalArgumentException.class, () -> Tariff.load(table("rate.km", "1.5", "rate.minute", "0.5", "holidays", "25/12/2024")));
+    }
+
+    /**
+     * The pricing formula of the journey handler before the tariff tables.
+     */
+    private static BigDecimal formula(float dis, int dur, float avSp, LocalDateTime date) {
+        BigDecimal ratePerKm = new BigDecimal("1.5");
+        BigDecimal ratePerMinute = new BigDecimal("0.5");
+        BigDecimal baseImport = ratePerKm.multiply(BigDecimal.valueOf(dis)).add(ratePerMinute.multiply(BigDecimal.valueOf(dur)));
+        BigDecimal speedPenalty = avSp > 25.0f ? baseImport.multiply(new BigDecimal("0.2")) : BigDecimal.ZERO;
+        boolean isWeekend = date.getDayOfWeek().getValue() >= 6;
+        BigDecimal surcharge = isWeekend ? baseImport.multiply(new BigDecimal("0.15")) : BigDecimal.ZERO;
+        return baseImport.add(speedPenalty).add(surcharge).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static Properties table(String... entries) {
+        Properties table = new Properties();
+        for (int i = 0; i < entries.length; i += 2) {
+            table.setProperty(entries[i], entries[i + 1]);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,106 @@
+package services.smartfeatures.QRDecoderTests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import services.smartfeatures.QRBatchDecoder;
+import services.smartfeatures.QRDecoderVMP;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QRBatchDecoderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BufferedImage qrImage;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        QRDecoderVMP.clearCache();
+        try (InputStream imageInputStream = QRBatchDecoderTest.class.getClassLoader().getResourceAsStream("qrcode-dummy.png")) {
+            qrImage = ImageIO.read(imageInputStream);
+        }
+    }
+
+    @Test
+    @DisplayName("Test1: Should decode every sticker of a directory, in file name order")
+    public void testDecodeDirectory() throws Exception {
+        ImageIO.write(qrImage, "png", tempDir.resolve("a-plain.png").toFile());
+        ImageIO.write(draw(qrImage, 2400, 0, 2400), "png", tempDir.resolve("b-large.png").toFile()); // Scaled down first
+        ImageIO.write(draw(qrImage, 1000, 400, 200), "png", tempDir.resolve("c-far.png").toFile()); // Small in a wide shot
+        Files.writeString(tempDir.resolve("notes.txt"), "not an image");
+
+        List<QRBatchDecoder.Result> results = new QRBatchDecoder().decode(tempDir);
+
+        assertEquals(3, results.size());
+        for (QRBatchDecoder.Result result : results) {
+            assertTrue(result.isDecoded(), result::toString);
+            assertNull(result.getError());
+            assertEquals("VH-123456-TestVehicle", result.getVehicleID().getId());
+        }
+        assertEquals(tempDir.resolve("c-far.png"), results.get(2).getSource());
+    }
+
+    @Test
+    @DisplayName("Test2: Should report the images that cannot be decoded")
+    public void testDecodeFailures() throws Exception {
+        Path blank = tempDir.resolve("blank.png");
+        Path garbage = tempDir.resolve("garbage.png");
+        ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "png", blank.toFile());
+        Files.write(garbage, new byte[] {1, 2, 3, 4});
+
+        List<QRBatchDecoder.Result> results = new QRBatchDecoder(new QRDecoderVMP(), 2).decode(List.of(blank, garbage).stream());
+
+        assertFalse(results.get(0).isDecoded());
+        assertNull(results.get(0).getVehicleID());
+        assertEquals(2, results.get(0).getError().getSuppressed().length); // Full image and centre
+        assertFalse(results.get(1).isDecoded());
+        assertEquals(garbage, results.get(1).getSource());
+        assertNotNull(results.get(1).getError());
+    }
+
+    @Test
+    @DisplayName("Test3: Should decode a large batch in memory on a bounded pool, keeping the order")
+    public void testDecodeImages() throws Exception {
+        List<BufferedImage> images = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            images.add(i % 10 == 0 ? new BufferedImage(60, 60, BufferedImage.TYPE_BYTE_GRAY) : draw(qrImage, 300 + i, 0, 300 + i));
+        }
+
+        List<QRBatchDecoder.Result> results = new QRBatchDecoder(new QRDecoderVMP(), 3).decodeImages(images);
+
+        assertEquals(40, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Path.of("image-" + i), results.get(i).getSource());
+            assertEquals(i % 10 != 0, results.get(i).isDecoded(), results.get(i)::toString);
+        }
+    }
+
+    // Internal operations
+
+    /**
+     * Draws a sticker on a white canvas, at an offset and size.
+     */
+    private static BufferedImage draw(BufferedImage sticker, int canvas, int offset, int size) {
+        BufferedImage image = new BufferedImage(canvas, canvas, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, canvas, canvas);
+        g.drawImage(sticker, offset, offset, size, size, null);
+        g.dispose();
+        return image;
+    }
+}
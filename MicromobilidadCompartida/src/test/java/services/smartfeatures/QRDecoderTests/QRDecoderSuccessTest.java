@@ -39,4 +39,39 @@ public class QRDecoderSuccessTest {
         assertEquals("VH-123456-TestVehicle", vehicleID.getId());
     }
 
+    @Test
+    @DisplayName("Test2: Should decode a copy of a scanned sticker from the cache")
+    public void testGetVehicleIDCachedCopy() throws CorruptedImgException {
+        QRDecoderVMP.clearCache();
+        VehicleID first = qrDecoder.getVehicleID(qrImage);
+        BufferedImage copy = new BufferedImage(qrImage.getWidth(), qrImage.getHeight(), qrImage.getType());
+        copy.createGraphics().drawImage(qrImage, 0, 0, null);
+        assertSame(first, new QRDecoderVMP().getVehicleID(copy));
+    }
+
+    @Test
+    @DisplayName("Test3: Should decode a sticker again once it is drawn over")
+    public void testGetVehicleIDChangedImage() throws CorruptedImgException {
+        BufferedImage sticker = new BufferedImage(qrImage.getWidth(), qrImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+        sticker.createGraphics().drawImage(qrImage, 0, 0, null);
+        assertEquals("VH-123456-TestVehicle", qrDecoder.getVehicleID(sticker).getId());
+
+        sticker.createGraphics().fillRect(0, 0, sticker.getWidth(), sticker.getHeight());
+        assertThrows(CorruptedImgException.class, () -> qrDecoder.getVehicleID(sticker));
+    }
+
+    @Test
+    @DisplayName("Test4: Should key 16-bit stickers by their pixels, so a one pixel change is a new image")
+    public void testGetVehicleIDShortSamples() throws CorruptedImgException {
+        QRDecoderVMP.clearCache();
+        BufferedImage sticker = new BufferedImage(qrImage.getWidth(), qrImage.getHeight(), BufferedImage.TYPE_USHORT_GRAY);
+        sticker.createGraphics().drawImage(qrImage, 0, 0, null);
+        assertEquals("VH-123456-TestVehicle", qrDecoder.getVehicleID(sticker).getId());
+
+        sticker.getRaster().setSample(0, 0, 0, 0); // A speck in the quiet zone
+        assertEquals("VH-123456-TestVehicle", qrDecoder.getVehicleID(sticker).getId());
+        sticker.createGraphics().fillRect(0, 0, sticker.getWidth(), sticker.getHeight());
+        assertThrows(CorruptedImgException.class, () -> qrDecoder.getVehicleID(sticker));
+    }
+
 }
@@ -0,0 +1,283 @@
+package services.smartfeatures.ServerTests;
+
+import data.GeographicPoint;
+import data.ServiceID;
+import data.StationID;
+import data.UserAccount;
+import data.VehicleID;
+import micromobility.GpsTrace;
+import micromobility.JourneyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import services.JourneyArchive;
+import services.JourneyView;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JourneyArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JourneyArchive archive;
+    private LocalDateTime start;
+
+    @BeforeEach
+    public void setUp() {
+        archive = new JourneyArchive(tempDir, 2, 3); // Tiny tiers to force spilling
+        start = LocalDateTime.of(2024, 3, 1, 8, 0);
+    }
+
+    @Test
+    @DisplayName("Test1: journeys spill from the hot window into sealed segments without being lost")
+    public void testSpillToSegments() {
+        for (int i = 0; i < 10; i++) {
+            archive.add(journey(i));
+        }
+
+        assertEquals(10, archive.size());
+        assertTrue(Files.exists(tempDir.resolve("journeys-0.seg")));
+        assertTrue(Files.exists(tempDir.resolve("journeys-1.seg")));
+
+        List<Integer> durations = new ArrayList<>();
+        archive.forEach(s -> durations.add(s.getDuration()));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), durations); // Oldest first
+    }
+
+    @Test
+    @DisplayName("Test2: journeys read back from disk keep their values")
+    public void testColdJourneyValues() {
+        for (int i = 0; i < 6; i++) {
+            archive.add(journey(i));
+        }
+
+        JourneyService cold = archive.find(s -> s.getDuration() == 1).get(0);
+        assertEquals(new ServiceID("UA-archive-1_VH-123456-Patinete_ST-12345-Lleida"), cold.getServiceID());
+        assertEquals(new GeographicPoint(41.61f, 0.62f), cold.getOriginPoint());
+        assertEquals(new GeographicPoint(41.62f, 0.63f), cold.getEndPoint());
+        assertEquals(start.plusMinutes(1), cold.getInitDate());
+        assertEquals(LocalTime.of(8, 31), cold.getEndHour());
+        assertEquals(1.5f, cold.getDistance());
+        assertEquals(new BigDecimal("2.25"), cold.getImportCost());
+        assertFalse(cold.getInProgress());
+    }
+
+    @Test
+    @DisplayName("Test3: journeys can be queried by service ID and start date")
+    public void testQueries() {
+        for (int i = 0; i < 8; i++) {
+            archive.add(journey(i));
+        }
+
+        assertEquals(1, archive.findByServiceID(new ServiceID("UA-archive-3_VH-123456-Patinete_ST-12345-Lleida")).size());
+        assertEquals(3, archive.findByInitDate(start.plusMinutes(2), start.plusMinutes(5)).size());
+    }
+
+    @Test
+    @DisplayName("Test4: packed journeys are read in place through a single reused view")
+    public void testViews() {
+        for (int i = 0; i < 7; i++) {
+            archive.add(journey(i));
+        }
+
+        List<JourneyView> views = new ArrayList<>();
+        List<Long> cents = new ArrayList<>();
+        archive.forEachView(v -> {
+            views.add(v);
+            cents.add(v.getImportCents());
+            assertEquals("VH-123456-Patinete", v.getVehicleId());
+            assertEquals(start.plusMinutes(v.getDuration()), v.getInitDate());
+            assertEquals(1.5f, v.getDistance());
+        });
+
+        assertEquals(7, views.size());
+        assertTrue(views.stream().allMatch(v -> v == views.get(0))); // Flyweight
+        assertTrue(cents.stream().allMatch(c -> c == 225L));
+    }
+
+    @Test
+    @DisplayName("Test5: indexed lookups by user, vehicle and end station span every tier")
+    public void testIndexedLookups() {
+        for (int i = 0; i < 10; i++) {
+            JourneyService s = journey(i, "UA-archive-" + (i % 3), "VH-65432" + (i % 2) + "-Bici", "ST-12345-Lleida");
+            s.setEndStation(new StationID(i < 5 ? "ST-12345-Lleida" : "ST-54321-Girona"));
+            archive.add(s);
+        }
+
+        List<Integer> userRides = new ArrayList<>();
+        archive.findByUser(new UserAccount("UA-archive-1")).forEach(s -> userRides.add(s.getDuration()));
+        assertEquals(List.of(1, 4, 7), userRides); // Sealed, spilled and hot, oldest first
+
+        assertEquals(5, archive.findByVehicle(new VehicleID("VH-654320-Bici")).size());
+        List<Integer> endedAtGirona = new ArrayList<>();
+        archive.findByEndStation(new StationID("ST-54321-Girona")).forEach(s -> endedAtGirona.add(s.getDuration()));
+        assertEquals(List.of(5, 6, 7, 8, 9), endedAtGirona); // Started at Lleida, so matched on the end station
+        assertEquals(new StationID("ST-54321-Girona"), archive.findByEndStation(new StationID("ST-54321-Girona")).get(0).getEndStation());
+        assertTrue(archive.findByEndStation(new StationID("ST-99999-Tarragona")).isEmpty());
+        assertEquals(1, archive.findByServiceID(new ServiceID("UA-archive-2_VH-654321-Bici_ST-12345-Lleida")).size());
+        assertEquals(4, archive.findByInitDate(start.plusMinutes(6), start.plusMinutes(20)).size());
+    }
+
+    @Test
+    @DisplayName("Test6: start date lookups hold for journeys archived out of start order")
+    public void testInitDateOutOfOrder() {
+        int[] minutes = {3, 1, 2, 7, 5, 6, 4, 9, 8, 0};
+        for (int m : minutes) {
+            JourneyService s = journey(m);
+            s.setEndStation(new StationID("ST-54321-Girona"));
+            archive.add(s);
+        }
+
+        List<Integer> started = new ArrayList<>();
+        archive.findByInitDate(start.plusMinutes(2), start.plusMinutes(6)).forEach(s -> started.add(s.getDuration()));
+        assertEquals(List.of(3, 2, 5, 4), started); // Archive order, not start order
+        assertEquals(10, archive.findByEndStation(new StationID("ST-54321-Girona")).size());
+    }
+
+    @Test
+    @DisplayName("Test7: a stream covers every tier oldest first and splits for parallel use")
+    public void testStream() {
+        for (int i = 0; i < 10; i++) {
+            archive.add(journey(i));
+        }
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), archive.stream().map(JourneyService::getDuration).collect(Collectors.toList()));
+        assertEquals(45, archive.stream().parallel().mapToInt(JourneyService::getDuration).sum());
+        assertEquals(10, archive.stream().spliterator().getExactSizeIfKnown());
+        Stream<JourneyService> snapshot = archive.stream();
+        archive.add(journey(10));
+        assertEquals(10, snapshot.count()); // Journeys archived after the call are not included
+    }
+
+    @Test
+    @DisplayName("Test8: an archive without a directory deletes its temporary segments on close")
+    public void testTemporaryDirectory() throws Exception {
+        JourneyArchive inMemory = new JourneyArchive(null, 2, 3);
+        assertNull(inMemory.getDirectory());
+        for (int i = 0; i < 10; i++) {
+            inMemory.add(journey(i));
+        }
+        Path dir = inMemory.getDirectory();
+        assertTrue(Files.exists(dir.resolve("journeys-1.seg")));
+
+        inMemory.close();
+        assertFalse(Files.exists(dir));
+        assertEquals(0, inMemory.size());
+
+        for (int i = 0; i < 10; i++) {
+            archive.add(journey(i));
+        }
+        archive.close();
+        assertTrue(Files.exists(tempDir.resolve("journeys-1.seg"))); // A given directory is kept
+    }
+
+    @Test
+    @DisplayName("Test9: each sealed segment decodes its own IDs from its file")
+    public void testSegmentDictionaries() {
+        for (int i = 0; i < 12; i++) {
+            JourneyService s = journey(i, "UA-segment-" + i, "VH-" + (100000 + i / 3) + "-Patinete", "ST-1234" + (i % 2) + "-Lleida");
+            s.setEndStation(i % 3 == 0 ? null : new StationID("ST-5432" + (i % 3) + "-Girona"));
+            archive.add(s);
+        }
+
+        List<String> ids = new ArrayList<>();
+        archive.forEachView(v -> ids.add(v.getUserId() + " " + v.getVehicleId() + " " + v.getStationId() + " " + v.getEndStationId()));
+        for (int i = 0; i < 12; i++) {
+            String endStation = i % 3 == 0 ? "null" : "ST-5432" + (i % 3) + "-Girona";
+            assertEquals("UA-segment-" + i + " VH-" + (100000 + i / 3) + "-Patinete ST-1234" + (i % 2) + "-Lleida " + endStation, ids.get(i));
+        }
+        assertEquals(List.of(9, 10, 11), archive.findByVehicle(new VehicleID("VH-100003-Patinete")).stream()
+                .map(JourneyService::getDuration).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("Test10: lookups over many sealed segments match a full scan")
+    public void testLookupsMatchScan() {
+        for (int i = 0; i < 40; i++) {
+            int minute = (i * 7) % 40; // Archived out of start order
+            JourneyService s = journey(minute, "UA-rider-" + (i % 4), "VH-12345" + (i % 3) + "-Bici", "ST-12345-Lleida");
+            s.setEndStation(i % 5 == 0 ? null : new StationID("ST-5432" + (i % 2) + "-Girona"));
+            archive.add(s);
+        }
+
+        for (int u = 0; u < 4; u++) {
+            String user = "UA-rider-" + u;
+            assertEquals(durations(archive.find(s -> s.getServiceID().getUserId().equals(user))),
+                    durations(archive.findByUser(new UserAccount(user))));
+        }
+        StationID girona = new StationID("ST-54321-Girona");
+        assertEquals(durations(archive.find(s -> girona.equals(s.getEndStation()))), durations(archive.findByEndStation(girona)));
+        assertEquals(durations(archive.find(s -> s.getServiceID().getVehicleId().equals("VH-123452-Bici"))),
+                durations(archive.findByVehicle(new VehicleID("VH-123452-Bici"))));
+        LocalDateTime from = start.plusMinutes(11);
+        LocalDateTime to = start.plusMinutes(29);
+        assertEquals(durations(archive.find(s -> !s.getInitDate().isBefore(from) && s.getInitDate().isBefore(to))),
+                durations(archive.findByInitDate(from, to)));
+        assertTrue(archive.findByUser(new UserAccount("UA-nobody-1")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test11: a journey's route is read back from every tier")
+    public void testRoutes() {
+        for (int i = 0; i < 12; i++) {
+            JourneyService s = journey(i);
+            if (i % 3 != 0) {
+                GpsTrace route = new GpsTrace();
+                for (int f = 0; f < 20 * i; f++) {
+                    route.append(41.61f + f * 0.0001f, 0.62f + f * 0.0001f, f * 1000L);
+                }
+                s.setTrace(route);
+            }
+            archive.add(s);
+        }
+
+        for (int i = 0; i < 12; i++) {
+            int duration = i;
+            JourneyService s = archive.find(j -> j.getDuration() == duration).get(0);
+            if (i % 3 == 0) {
+                assertNull(s.getTrace());
+            } else {
+                assertEquals(20 * i, s.getTrace().size());
+                assertEquals(new GeographicPoint(41.61f + (20 * i - 1) * 0.0001f, 0.62f + (20 * i - 1) * 0.0001f),
+                        s.getTrace().toPoints()[20 * i - 1]);
+            }
+        }
+        List<Integer> sizes = new ArrayList<>();
+        archive.forEachView(v -> sizes.add(v.getTrace() == null ? 0 : v.getTrace().size()));
+        assertEquals(List.of(0, 20, 40, 0, 80, 100, 0, 140, 160, 0, 200, 220), sizes);
+    }
+
+    private JourneyService journey(int i) {
+        return journey(i, "UA-archive-" + i, "VH-123456-Patinete", "ST-12345-Lleida");
+    }
+
+    private JourneyService journey(int i, String user, String vehicle, String station) {
+        JourneyService s = new JourneyService(new ServiceID(user + "_" + vehicle + "_" + station), new GeographicPoint(41.61f, 0.62f));
+        s.setInitDate(start.plusMinutes(i));
+        s.setInitHour(start.plusMinutes(i).toLocalTime());
+        s.setEndPoint(new GeographicPoint(41.62f, 0.63f));
+        s.setEndDate(start.plusMinutes(i + 30));
+        s.setEndHour(start.plusMinutes(i + 30).toLocalTime());
+        s.setDuration(i);
+        s.setDistance(1.5f);
+        s.setAvgSpeed(12.0f);
+        s.setImportCost(new BigDecimal("2.25"));
+        return s;
+    }
+
+    private static List<Integer> durations(List<JourneyService> journeys) {
+        return journeys.stream().map(JourneyService::getDuration).collect(Collectors.toList());
+    }
+}
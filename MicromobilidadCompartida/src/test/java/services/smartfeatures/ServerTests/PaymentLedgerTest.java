@@ -0,0 +1,170 @@
+package services.smartfeatures.ServerTests;
+
+import data.ServiceID;
+import data.UserAccount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import services.PaymentLedger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentLedgerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PaymentLedger ledger;
+    private UserAccount userAccount;
+    private ServiceID serviceID;
+
+    @BeforeEach
+    public void setUp() {
+        ledger = new PaymentLedger();
+        userAccount = new UserAccount("UA-ledger-1");
+        serviceID = new ServiceID("UA-ledger-1_VH-123456-Patinete_ST-12345-Lleida");
+    }
+
+    @Test
+    @DisplayName("Test1: per-user totals and counts follow the appended entries")
+    public void testTotals() throws IOException {
+        for (int i = 1; i <= 20; i++) { // Past the initial capacity
+            ServiceID ride = new ServiceID("UA-ledger-1_VH-123456-Patinete_ST-12345-Lleida".replace("-1_", "-" + i + "_"));
+            ledger.append(userAccount, ride, i * 100L, (byte) 'W', 1000L + i);
+        }
+
+        assertEquals(20, ledger.count(userAccount));
+        assertEquals(21000, ledger.total(userAccount));
+        assertEquals(0, ledger.total(new UserAccount("UA-other-2")));
+        assertEquals(List.of(userAccount), ledger.users());
+    }
+
+    @Test
+    @DisplayName("Test2: entries are visited in order with their typed fields")
+    public void testForEach() throws IOException {
+        ServiceID other = new ServiceID("UA-ledger-1_VH-654321-Bici_ST-12345-Lleida");
+        ledger.append(userAccount, serviceID, 450, (byte) 'C', 1000L);
+        ledger.append(userAccount, other, 1250, (byte) 'W', 2000L);
+
+        List<String> entries = new ArrayList<>();
+        ledger.forEach(userAccount, (servID, cents, method, timestamp) ->
+                entries.add(servID.getId() + " " + cents + " " + (char) method + " " + timestamp));
+
+        assertEquals(List.of(serviceID.getId() + " 450 C 1000", other.getId() + " 1250 W 2000"), entries);
+    }
+
+    @Test
+    @DisplayName("Test3: amounts and methods are converted to their compact form")
+    public void testConversions() {
+        assertEquals(5000, PaymentLedger.toCents(new BigDecimal("50.0")));
+        assertEquals(1051, PaymentLedger.toCents(new BigDecimal("10.505")));
+        assertEquals((byte) 'C', PaymentLedger.methodCode('C'));
+        assertThrows(IllegalArgumentException.class, () -> PaymentLedger.methodCode('€'));
+    }
+
+    @Test
+    @DisplayName("Test4: a payment for an already paid service is not recorded again")
+    public void testIdempotentAppend() throws IOException {
+        assertTrue(ledger.append(userAccount, serviceID, 450, (byte) 'C', 1000L));
+        assertFalse(ledger.append(userAccount, serviceID, 450, (byte) 'C', 1001L));
+
+        assertTrue(ledger.contains(serviceID));
+        assertEquals(1, ledger.count(userAccount));
+        assertEquals(450, ledger.total(userAccount));
+    }
+
+    @Test
+    @DisplayName("Test5: entries written to the ledger file are reloaded and a torn tail is dropped")
+    public void testDurableReload() throws IOException {
+        Path file = tempDir.resolve("payments.ledger");
+        ledger.open(file);
+        for (int i = 1; i <= 3; i++) {
+            ServiceID ride = new ServiceID("UA-ledger-1_VH-123456-Patinete_ST-12345-Lleida".replace("-1_", "-" + i + "_"));
+            ledger.append(userAccount, ride, 100L * i, (byte) 'W', 1000L + i);
+        }
+        ledger.close();
+
+        // Corrupt the last record, as a crash in the middle of the write would
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            channel.read(buf, 0);
+            int last = 0;
+            for (int pos = 0, length; (length = buf.getInt(pos)) > 0; pos += length + 8) {
+                last = pos;
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), last + 10);
+        }
+
+        PaymentLedger reloaded = new PaymentLedger();
+        assertEquals(2, reloaded.open(file));
+        assertEquals(300, reloaded.total(userAccount));
+        assertTrue(reloaded.contains(serviceID));
+        reloaded.close();
+    }
+
+    @Test
+    @DisplayName("Test6: a ledger file holding the same service twice is reloaded with the payment counted once")
+    public void testDuplicateFrameReload() throws IOException {
+        Path file = tempDir.resolve("duplicates.ledger");
+        ledger.open(file);
+        ledger.append(userAccount, serviceID, 450, (byte) 'C', 1000L);
+        ledger.close();
+
+        // Append a copy of the record, as a write retried after a failed force used to leave
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            channel.read(buf, 0);
+            int frame = buf.getInt(0) + 8;
+            channel.write(ByteBuffer.wrap(buf.array(), 0, frame), frame);
+        }
+
+        PaymentLedger reloaded = new PaymentLedger();
+        assertEquals(1, reloaded.open(file));
+        assertEquals(1, reloaded.count(userAccount));
+        assertEquals(450, reloaded.total(userAccount));
+        assertFalse(reloaded.append(userAccount, serviceID, 450, (byte) 'C', 2000L));
+        reloaded.close();
+    }
+
+    @Test
+    @DisplayName("Test7: a ledger file with an unreadable entry is refused and the entries in memory are kept")
+    public void testUnreadableEntry() throws IOException {
+        Path file = tempDir.resolve("unreadable.ledger");
+        ledger.open(file);
+        ledger.append(userAccount, serviceID, 450, (byte) 'C', 1000L);
+        ledger.close();
+
+        // Break the user ID but keep the checksum valid, so only parsing can tell
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            channel.read(buf, 0);
+            int length = buf.getInt(0);
+            buf.put(6, (byte) 'X'); // First character of "UA-ledger-1"
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), 4, length);
+            buf.putInt(4 + length, (int) crc.getValue());
+            channel.write(ByteBuffer.wrap(buf.array(), 0, length + 8), 0);
+        }
+
+        PaymentLedger other = new PaymentLedger();
+        ServiceID kept = new ServiceID("UA-ledger-1_VH-654321-Bici_ST-12345-Lleida");
+        other.append(userAccount, kept, 1250, (byte) 'W', 2000L);
+        assertThrows(IOException.class, () -> other.open(file));
+        assertTrue(other.contains(kept));
+        assertEquals(1250, other.total(userAccount));
+
+        assertEquals(0, other.open(tempDir.resolve("fresh.ledger"))); // Nothing was left open
+        other.close();
+    }
+}
@@ -0,0 +1,203 @@
+package services.smartfeatures.ServerTests;
+
+import data.GeographicPoint;
+import data.sensors.SensorData;
+import data.sensors.SensorSnapshot;
+import micromobility.PMVState;
+import micromobility.PMVehicle;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.SensorIngestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorIngestionTest {
+
+    @Test
+    @DisplayName("Test1: readings offered by many threads are all delivered once and the latest is kept")
+    public void testConcurrentProducers() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        PMVehicle[] fleet = new PMVehicle[8];
+        for (int v = 0; v < fleet.length; v++) {
+            fleet[v] = vehicle();
+        }
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong checksum = new AtomicLong();
+        SensorIngestion ingestion = new SensorIngestion(1024, 64);
+        ingestion.addListener(batch -> {
+            delivered.addAndGet(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                checksum.addAndGet(batch.getTimestamp(i));
+            }
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        long expectedChecksum = 0;
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long timestamp = (long) i * producers + producer;
+                    PMVehicle vehicle = fleet[(int) (timestamp % fleet.length)];
+                    while (!ingestion.offer(vehicle, SensorSnapshot.SPEED, timestamp, timestamp)) {
+                        Thread.yield(); // Full: wait for the worker, as a vehicle would resend
+                    }
+                }
+            }));
+            for (int i = 0; i < perProducer; i++) {
+                expectedChecksum += (long) i * producers + p;
+            }
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ingestion.close();
+
+        long total = (long) producers * perProducer;
+        assertEquals(total, delivered.get());
+        assertEquals(expectedChecksum, checksum.get());
+        assertEquals(total, ingestion.getApplied() + ingestion.getStale());
+        SensorSnapshot snapshot = new SensorSnapshot();
+        for (int v = 0; v < fleet.length; v++) {
+            long last = total - fleet.length + v; // Largest timestamp sent to that vehicle
+            assertEquals(last, fleet[v].getSensorTimestamp(SensorSnapshot.SPEED));
+            assertEquals(last, fleet[v].readSensors(snapshot).getSpeed());
+        }
+    }
+
+    @Test
+    @DisplayName("Test2: a reading older than the one a vehicle holds is ignored")
+    public void testStaleReading() {
+        PMVehicle vehicle = vehicle();
+        try (SensorIngestion ingestion = new SensorIngestion(16, 16)) {
+            assertTrue(ingestion.offer(vehicle, SensorSnapshot.TEMPERATURE, 31.5, 2_000));
+            assertTrue(ingestion.offer(vehicle, SensorSnapshot.TEMPERATURE, 12.0, 1_000));
+            assertTrue(ingestion.offer(vehicle, SensorSnapshot.BRAKE, 1, 1_000));
+            ingestion.close();
+
+            assertEquals(2, ingestion.getApplied());
+            assertEquals(1, ingestion.getStale());
+            SensorSnapshot snapshot = vehicle.readSensors(new SensorSnapshot());
+            assertEquals(31.5, snapshot.getTemperature());
+            assertTrue(snapshot.isBraking());
+            assertEquals(2_000, vehicle.getSensorTimestamp(SensorSnapshot.TEMPERATURE));
+        }
+    }
+
+    @Test
+    @DisplayName("Test3: a snapshot is queued as one reading per present value")
+    public void testOfferSnapshot() {
+        PMVehicle vehicle = vehicle();
+        List<Integer> slots = new ArrayList<>();
+        try (SensorIngestion ingestion = new SensorIngestion()) {
+            ingestion.addListener(batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    slots.add(batch.getSlot(i));
+                }
+            });
+            SensorSnapshot snapshot = new SensorSnapshot();
+            snapshot.moveTo(new double[]{18.0, Double.NaN, Double.NaN, 1}, 0);
+            assertTrue(ingestion.offer(vehicle, snapshot, 500));
+            ingestion.close();
+        }
+        assertEquals(List.of(SensorSnapshot.SPEED, SensorSnapshot.LIGHT), slots);
+        SensorSnapshot read = vehicle.readSensors(new SensorSnapshot());
+        assertEquals(18.0, read.getSpeed());
+        assertTrue(read.isLightOn());
+        assertEquals(20.0, read.getTemperature());
+    }
+
+    @Test
+    @DisplayName("Test4: readings are dropped, not blocked, while the ring is full")
+    public void testFullRing() throws Exception {
+        PMVehicle vehicle = vehicle();
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SensorIngestion ingestion = new SensorIngestion(4, 1);
+        ingestion.addListener(batch -> {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(ingestion.offer(vehicle, SensorSnapshot.SPEED, 1, 1));
+        assertTrue(stalled.await(5, TimeUnit.SECONDS)); // The worker is held in the listener
+        for (int i = 2; i <= 5; i++) {
+            assertTrue(ingestion.offer(vehicle, SensorSnapshot.SPEED, i, i));
+        }
+        assertFalse(ingestion.offer(vehicle, SensorSnapshot.SPEED, 6, 6));
+        assertEquals(1, ingestion.getDropped());
+
+        release.countDown();
+        ingestion.close();
+        assertEquals(5, ingestion.getApplied());
+        assertFalse(ingestion.offer(vehicle, SensorSnapshot.SPEED, 7, 7));
+        assertEquals(5, vehicle.getSensorTimestamp(SensorSnapshot.SPEED));
+    }
+
+    @Test
+    @DisplayName("Test5: invalid arguments are rejected")
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new SensorIngestion(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new SensorIngestion(8, 0));
+        try (SensorIngestion ingestion = new SensorIngestion(8, 8)) {
+            assertThrows(IllegalArgumentException.class, () -> ingestion.offer(null, SensorSnapshot.SPEED, 1, 1));
+            assertThrows(IllegalArgumentException.class, () -> ingestion.offer(vehicle(), SensorSnapshot.SLOTS, 1, 1));
+            assertThrows(IllegalArgumentException.class, () -> ingestion.addListener(null));
+        }
+    }
+
+    @Test
+    @DisplayName("Test6: a throwing sensor or listener is counted and the worker keeps draining")
+    public void testFailuresAreCounted() {
+        ArrayList<SensorData> sensors = new ArrayList<>();
+        sensors.add(new SensorData() {
+            @Override
+            public String getSensorData() {
+                return "broken";
+            }
+
+            @Override
+            public String getSensorType() {
+                return "Broken";
+            }
+
+            @Override
+            public boolean update(int slot, double value) {
+                throw new IllegalStateException("Sensor bus error");
+            }
+        });
+        PMVehicle broken = new PMVehicle(PMVState.AVAILABLE, new GeographicPoint(40.4168f, -3.7038f), 75, sensors);
+        PMVehicle healthy = vehicle();
+        try (SensorIngestion ingestion = new SensorIngestion(16, 16)) {
+            ingestion.addListener(batch -> {
+                throw new IllegalStateException("Listener bug");
+            });
+            assertTrue(ingestion.offer(broken, SensorSnapshot.SPEED, 10, 1_000));
+            assertTrue(ingestion.offer(healthy, SensorSnapshot.SPEED, 12, 1_000));
+            ingestion.close();
+
+            assertEquals(1, ingestion.getFailed());
+            assertEquals(1, ingestion.getApplied());
+            assertEquals(0, ingestion.getStale());
+            assertTrue(ingestion.getListenerFailures() >= 1);
+            assertEquals(1_000, healthy.getSensorTimestamp(SensorSnapshot.SPEED));
+        }
+    }
+
+    // Internal operations
+
+    private static PMVehicle vehicle() {
+        return new PMVehicle(PMVState.AVAILABLE, new GeographicPoint(40.4168f, -3.7038f), 75);
+    }
+}
@@ -0,0 +1,257 @@
+package services.smartfeatures.ServerTests;
+
+import data.*;
+import micromobility.GpsTrace;
+import micromobility.PMVState;
+import micromobility.PMVehicle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import services.ServerJournal;
+import services.ServerMC;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ServerMC server;
+    private VehicleID vehicleID;
+    private StationID stationID;
+    private UserAccount userAccount;
+    private GeographicPoint location;
+
+    @BeforeEach
+    public void setUp() {
+        server = new ServerMC();
+        vehicleID = new VehicleID("VH-654321-Journal");
+        stationID = new StationID("ST-54321-Girona");
+        userAccount = new UserAccount("UA-journal-42");
+        location = new GeographicPoint(41.9794f, 2.8214f); // Girona coordinates
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        ServerMC.closeJournal();
+        clearVehicle();
+    }
+
+    @Test
+    @DisplayName("Test1: journal records are replayed in order with their arguments")
+    public void testReplayRecords() throws IOException {
+        Path file = tempDir.resolve("server.journal");
+        LocalDateTime date = LocalDateTime.of(2024, 5, 4, 10, 30, 15);
+
+        try (ServerJournal journal = new ServerJournal(file)) {
+            journal.logPairing(userAccount, vehicleID, stationID, location, date);
+            journal.awaitDurable(journal.logLocation(vehicleID, stationID));
+        }
+
+        List<String> replayed = new ArrayList<>();
+        int count = ServerJournal.replay(file, new RecordingHandler(replayed));
+
+        assertEquals(2, count);
+        assertEquals(List.of(
+                "pairing " + userAccount.getId() + " " + vehicleID.getId() + " " + stationID.getId() + " " + date,
+                "location " + vehicleID.getId() + " " + stationID.getId()), replayed);
+    }
+
+    @Test
+    @DisplayName("Test2: a torn record at the end of the journal is discarded")
+    public void testReplayTornTail() throws IOException {
+        Path file = tempDir.resolve("server.journal");
+        try (ServerJournal journal = new ServerJournal(file)) {
+            journal.logLocation(vehicleID, stationID);
+            journal.awaitDurable(journal.logLocation(vehicleID, stationID));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3); // Simulate a crash in the middle of the last write
+        }
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(1, ServerJournal.replay(file, new RecordingHandler(replayed)));
+        assertEquals(1, ServerJournal.replay(file, new RecordingHandler(replayed))); // Tail was cut off
+    }
+
+    @Test
+    @DisplayName("Test3: the server state survives a restart in persistent mode")
+    public void testServerRecovery() throws Throwable {
+        Path dir = tempDir.resolve("journal");
+        ServerMC.openJournal(dir); // Starts from the state in the directory, which is empty
+        ServerMC.vehicleAvailability.put(vehicleID, new PMVehicle(PMVState.AVAILABLE, location, 0.0));
+        ServerMC.vehicleStationMap.put(vehicleID, stationID);
+        server.registerPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now());
+        ServerMC.closeJournal();
+
+        // Simulate a restart
+        clearVehicle();
+        assertEquals(1, ServerMC.openJournal(dir));
+
+        assertEquals(userAccount, ServerMC.vehicleUserMap.get(vehicleID));
+        assertEquals(stationID, ServerMC.vehicleStationMap.get(vehicleID));
+        assertEquals(PMVState.NOT_AVAILABLE, ServerMC.vehicleAvailability.get(vehicleID).getState());
+
+        // The recovered pairing can be completed
+        assertDoesNotThrow(() -> server.stopPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now(), 10.0f, 2.0f, 12, new BigDecimal("4.50")));
+        assertEquals(PMVState.AVAILABLE, ServerMC.vehicleAvailability.get(vehicleID).getState());
+    }
+
+    @Test
+    @DisplayName("Test4: a checkpoint compacts the journal and recovery only replays the tail")
+    public void testCheckpointRecovery() throws Throwable {
+        Path dir = tempDir.resolve("journal");
+        ServerMC.openJournal(dir);
+        ServerMC.vehicleAvailability.put(vehicleID, new PMVehicle(PMVState.AVAILABLE, location, 55.0));
+        ServerMC.vehicleStationMap.put(vehicleID, stationID);
+        server.registerPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now());
+        ServerMC.checkpoint();
+        assertFalse(Files.exists(dir.resolve("journal-0.log"))); // Covered by the snapshot
+        assertTrue(Files.exists(dir.resolve("snapshot-1.bin")));
+
+        StationID newStation = new StationID("ST-54322-Figueres");
+        server.stopPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now(), 10.0f, 2.0f, 12, new BigDecimal("4.50"));
+        server.registerLocation(vehicleID, newStation);
+        ServerMC.closeJournal();
+
+        // Simulate a restart: the pairing comes from the snapshot, the rest from the tail
+        clearVehicle();
+        assertEquals(2, ServerMC.openJournal(dir));
+
+        PMVehicle recovered = ServerMC.vehicleAvailability.get(vehicleID);
+        assertEquals(PMVState.AVAILABLE, recovered.getState());
+        assertEquals(55.0, recovered.getChargeLevel(), 0.01);
+        assertEquals(newStation, ServerMC.vehicleStationMap.get(vehicleID));
+        assertNull(ServerMC.vehicleUserMap.get(vehicleID));
+        assertEquals(1, ServerMC.getJourneyArchive().findByEndStation(stationID).size()); // Indexed on replay
+    }
+
+    @Test
+    @DisplayName("Test5: a retried payment is recorded once and survives a restart")
+    public void testPaymentRetryRecovery() throws Throwable {
+        Path dir = tempDir.resolve("journal");
+        ServiceID serviceID = new ServiceID(String.format("%s_%s_%s", userAccount.getId(), vehicleID.getId(), stationID.getId()));
+
+        ServerMC.openJournal(dir);
+        server.registerPayment(serviceID, userAccount, new BigDecimal("4.50"), 'W');
+        server.registerPayment(serviceID, userAccount, new BigDecimal("4.50"), 'W'); // Client retry
+        assertEquals(1, ServerMC.paymentLedger.count(userAccount));
+        ServerMC.closeJournal();
+
+        // Simulate a restart
+        ServerMC.openJournal(dir);
+        assertTrue(ServerMC.paymentLedger.contains(serviceID));
+        assertEquals(1, ServerMC.paymentLedger.count(userAccount));
+        assertEquals(450, ServerMC.paymentLedger.total(userAccount));
+        server.registerPayment(serviceID, userAccount, new BigDecimal("4.50"), 'W');
+        assertEquals(450, ServerMC.paymentLedger.total(userAccount));
+    }
+
+    @Test
+    @DisplayName("Test6: a journal that fails to open part-way can be opened again once fixed")
+    public void testOpenFailureRetry() throws Throwable {
+        Path dir = tempDir.resolve("journal");
+        ServerMC.openJournal(dir);
+        ServerMC.vehicleAvailability.put(vehicleID, new PMVehicle(PMVState.AVAILABLE, location, 0.0));
+        ServerMC.vehicleStationMap.put(vehicleID, stationID);
+        server.registerPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now());
+        ServerMC.closeJournal();
+        Path snapshot = dir.resolve("snapshot-9.bin");
+        Files.write(snapshot, new byte[16]); // Not a snapshot
+
+        assertThrows(IOException.class, () -> ServerMC.openJournal(dir));
+        assertThrows(IllegalStateException.class, ServerMC::checkpoint); // No journal was left open
+
+        Files.delete(snapshot);
+        assertEquals(1, ServerMC.openJournal(dir));
+        assertEquals(userAccount, ServerMC.vehicleUserMap.get(vehicleID));
+    }
+
+    @Test
+    @DisplayName("Test7: opening a journal drops the state built before it, with or without a snapshot")
+    public void testOpenClearsState() throws Throwable {
+        VehicleID stray = new VehicleID("VH-654329-Journal");
+        PMVehicle vehicle = new PMVehicle(PMVState.AVAILABLE, location, 0.0);
+        vehicle.setId(stray);
+        ServerMC.registerVehicle(vehicle);
+        ServerMC.vehicleStationMap.put(stray, stationID);
+        ServerMC.openJournal(tempDir.resolve("journal"));
+
+        assertFalse(ServerMC.vehicleAvailability.containsKey(stray));
+        assertFalse(ServerMC.vehicleStationMap.containsKey(stray));
+        assertEquals(0, ServerMC.getVehicleIndex().size());
+    }
+
+    @Test
+    @DisplayName("Test8: the route of a finished journey survives a restart from the journal and from a snapshot")
+    public void testRouteRecovery() throws Throwable {
+        Path dir = tempDir.resolve("journal");
+        ServerMC.openJournal(dir);
+        ServerMC.vehicleAvailability.put(vehicleID, new PMVehicle(PMVState.AVAILABLE, location, 0.0));
+        ServerMC.vehicleStationMap.put(vehicleID, stationID);
+        server.registerPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now());
+        GpsTrace route = new GpsTrace();
+        for (int f = 0; f < 50; f++) {
+            route.append(41.9794f + f * 0.0001f, 2.8214f, f * 1000L);
+        }
+        server.stopPairing(userAccount, vehicleID, stationID, location, LocalDateTime.now(), 10.0f, 2.0f, 12, new BigDecimal("4.50"), route);
+        ServerMC.closeJournal();
+
+        // Simulate a restart that replays the journal
+        clearVehicle();
+        ServerMC.openJournal(dir);
+        assertEquals(50, ServerMC.getJourneyArchive().findByUser(userAccount).get(0).getTrace().size());
+
+        // And one that loads the route from a snapshot
+        ServerMC.checkpoint();
+        ServerMC.closeJournal();
+        clearVehicle();
+        assertEquals(0, ServerMC.openJournal(dir));
+        assertEquals(50, ServerMC.getJourneyArchive().findByUser(userAccount).get(0).getTrace().size());
+    }
+
+    private void clearVehicle() {
+        ServerMC.vehicleAvailability.remove(vehicleID);
+        ServerMC.vehicleStationMap.remove(vehicleID);
+        ServerMC.vehicleUserMap.remove(vehicleID);
+    }
+
+    // Test double collecting replayed records as text
+    private static class RecordingHandler implements ServerJournal.Handler {
+        private final List<String> records;
+
+        RecordingHandler(List<String> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void onPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date) {
+            records.add("pairing " + user.getId() + " " + veh.getId() + " " + st.getId() + " " + date);
+        }
+
+        @Override
+        public void onStopPairing(UserAccount user, VehicleID veh, StationID st, GeographicPoint loc, LocalDateTime date,
+                                  float avSp, float dist, int dur, BigDecimal imp, GpsTrace route) {
+            records.add("stop " + user.getId() + " " + veh.getId() + " " + imp);
+        }
+
+        @Override
+        public void onLocation(VehicleID veh, StationID st) {
+            records.add("location " + veh.getId() + " " + st.getId());
+        }
+
+    }
+}
@@ -1,6 +1,7 @@
 package services.smartfeatures.ServerTests;
 
 import data.*;
+import micromobility.JourneyService;
 import micromobility.PMVehicle;
 import micromobility.PMVState;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,6 +13,13 @@ import services.ServerMC;
 import java.math.BigDecimal;
 import java.net.ConnectException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -81,7 +89,69 @@ public class ServerSuccessTest {
 
         assertDoesNotThrow(() -> server.registerPayment(serviceID, userAccount, amount, payMeth));
 
-        String expectedPayment = "UA-test-2367_VH-123456-Patinete_ST-12345-Lleida_50.0_C";
-        assertTrue(ServerMC.paymentRecords.get(userAccount).contains(expectedPayment));
+        List<String> payments = new ArrayList<>();
+        ServerMC.paymentLedger.forEach(userAccount, (servID, cents, method, timestamp) ->
+                payments.add(servID.getId() + "_" + cents + "_" + (char) method));
+        assertTrue(payments.contains("UA-test-2367_VH-123456-Patinete_ST-12345-Lleida_5000_C"));
+        assertTrue(ServerMC.paymentLedger.total(userAccount) >= 5000);
+    }
+
+    @Test
+    @DisplayName("Test5: concurrent pairing of the same vehicle only succeeds once")
+    public void testRegisterPairing_Concurrent() throws Exception {
+        int riders = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(riders);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger paired = new AtomicInteger();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < riders; i++) {
+            UserAccount rider = new UserAccount("UA-rider-" + i);
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    server.registerPairing(rider, vehicleID, stationID, location, now);
+                    paired.incrementAndGet();
+                } catch (Throwable ignored) {
+                    // Losing riders are rejected by the server
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, paired.get());
+        assertEquals(PMVState.NOT_AVAILABLE, ServerMC.vehicleAvailability.get(vehicleID).getState());
+    }
+
+    @Test
+    @DisplayName("Test6: a vehicle returned at another station closes the journey it started with")
+    public void testStopPairing_OtherStation() throws Throwable {
+        UserAccount rider = new UserAccount("UA-returns-6");
+        StationID other = new StationID("ST-54321-Girona");
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 10, 0);
+        server.registerPairing(rider, vehicleID, stationID, location, start);
+        server.stopPairing(rider, vehicleID, other, location, start.plusMinutes(10), 12.0f, 2.0f, 600, new BigDecimal("3.00"));
+
+        assertEquals(other, ServerMC.vehicleStationMap.get(vehicleID));
+        List<JourneyService> rides = ServerMC.getJourneyArchive().findByUser(rider);
+        assertEquals(1, rides.size());
+        assertEquals(ServiceID.of(rider, vehicleID, stationID, start), rides.get(0).getServiceID());
+        assertEquals(1, ServerMC.getJourneyArchive().findByServiceID(ServiceID.of(rider, vehicleID, stationID, start)).size());
+    }
+
+    @Test
+    @DisplayName("Test7: setting a pairing on a vehicle that is already paired is rejected")
+    public void testSetPairing_AlreadyPaired() throws Throwable {
+        UserAccount other = new UserAccount("UA-second-7");
+        LocalDateTime start = LocalDateTime.of(2024, 5, 2, 9, 0);
+        server.setPairing(userAccount, vehicleID, stationID, location, start);
+
+        assertThrows(IllegalStateException.class, () -> server.setPairing(other, vehicleID, stationID, location, start.plusMinutes(1)));
+        assertEquals(userAccount, ServerMC.vehicleUserMap.get(vehicleID));
+        assertEquals(PMVState.NOT_AVAILABLE, ServerMC.vehicleAvailability.get(vehicleID).getState());
+        server.stopPairing(userAccount, vehicleID, stationID, location, start.plusMinutes(5), 10.0f, 1.0f, 300, new BigDecimal("1.50"));
+        assertEquals(PMVState.AVAILABLE, ServerMC.vehicleAvailability.get(vehicleID).getState());
     }
 }
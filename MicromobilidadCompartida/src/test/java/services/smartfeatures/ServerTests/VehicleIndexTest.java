@@ -0,0 +1,126 @@
+package services.smartfeatures.ServerTests;
+
+import data.GeographicPoint;
+import data.VehicleID;
+import micromobility.PMVState;
+import micromobility.PMVehicle;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.ServerMC;
+import services.VehicleIndex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VehicleIndexTest {
+
+    private static final GeographicPoint CENTER = new GeographicPoint(41.6176f, 0.6200f);
+
+    // A city-sized fleet, built once and only read, for the check at scale
+    private static VehicleIndex largeIndex;
+    private static List<PMVehicle> largeFleet;
+
+    private VehicleIndex index;
+    private List<PMVehicle> fleet;
+    private Random random;
+
+    @BeforeAll
+    public static void setUpLargeFleet() {
+        largeIndex = new VehicleIndex();
+        largeFleet = fleet(largeIndex, 100_000, new Random(9));
+    }
+
+    @BeforeEach
+    public void setUp() {
+        index = new VehicleIndex();
+        random = new Random(9);
+        fleet = fleet(index, 2_000, random);
+    }
+
+    @Test
+    @DisplayName("Test1: a radius query over a city-sized fleet returns the available vehicles in range, closest first")
+    public void testFindWithin() {
+        for (int q = 0; q < 20; q++) {
+            GeographicPoint center = randomPoint(random);
+            List<PMVehicle> expected = bruteForce(largeFleet, center, 0.3);
+
+            assertEquals(expected, largeIndex.findWithin(center, 0.3));
+        }
+        assertEquals(75_000, largeIndex.size());
+    }
+
+    @Test
+    @DisplayName("Test2: a nearest query returns the k closest available vehicles")
+    public void testFindNearest() {
+        for (int q = 0; q < 20; q++) {
+            GeographicPoint center = randomPoint(random);
+            List<PMVehicle> expected = bruteForce(fleet, center, Double.MAX_VALUE).subList(0, 5);
+
+            assertEquals(expected, index.findNearest(center, 5, 10));
+        }
+        assertEquals(List.of(), index.findNearest(new GeographicPoint(0, 0), 5, 10));
+    }
+
+    @Test
+    @DisplayName("Test3: the index follows the moves and state changes of the vehicles")
+    public void testFollowsVehicles() {
+        PMVehicle vehicle = fleet.get(1);
+        GeographicPoint far = new GeographicPoint(40.4168f, -3.7038f);
+
+        vehicle.setLocation(far);
+        assertEquals(List.of(vehicle), index.findNearest(far, 1, 1));
+
+        vehicle.setNotAvailb();
+        assertEquals(List.of(), index.findWithin(far, 1));
+        assertTrue(fleet.get(0).compareAndSetState(PMVState.UNDER_WAY, PMVState.AVAILABLE));
+        assertTrue(index.findWithin(fleet.get(0).getLocation(), 0.01).contains(fleet.get(0)));
+
+        index.untrack(fleet.get(0));
+        assertFalse(index.findWithin(fleet.get(0).getLocation(), 0.01).contains(fleet.get(0)));
+    }
+
+    @Test
+    @DisplayName("Test4: vehicles registered on the server are indexed")
+    public void testServerRegistration() {
+        PMVehicle vehicle = new PMVehicle(PMVState.AVAILABLE, new GeographicPoint(-33.8688f, 151.2093f), 50.0);
+        vehicle.setId(new VehicleID("VH-654321-Indexed"));
+        ServerMC.registerVehicle(vehicle);
+        try {
+            assertEquals(List.of(vehicle), ServerMC.getVehicleIndex().findWithin(new GeographicPoint(-33.8690f, 151.2090f), 0.3));
+            assertThrows(IllegalArgumentException.class, () -> ServerMC.registerVehicle(new PMVehicle(PMVState.AVAILABLE, CENTER, 0)));
+        } finally {
+            ServerMC.getVehicleIndex().untrack(vehicle);
+            ServerMC.vehicleAvailability.remove(vehicle.getId());
+        }
+    }
+
+    private static List<PMVehicle> fleet(VehicleIndex index, int size, Random random) {
+        List<PMVehicle> fleet = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PMVehicle vehicle = new PMVehicle(i % 4 == 0 ? PMVState.UNDER_WAY : PMVState.AVAILABLE, randomPoint(random), 80.0);
+            fleet.add(vehicle);
+            index.track(vehicle);
+        }
+        return fleet;
+    }
+
+    private static List<PMVehicle> bruteForce(List<PMVehicle> fleet, GeographicPoint center, double radiusKm) {
+        return fleet.stream()
+                .filter(v -> v.getState() == PMVState.AVAILABLE)
+                .filter(v -> center.calculateDistance(v.getLocation()) <= radiusKm)
+                .sorted(Comparator.comparingDouble(v -> center.calculateDistance(v.getLocation())))
+                .collect(Collectors.toList());
+    }
+
+    private static GeographicPoint randomPoint(Random random) { // Up to about 10 km around the centre
+        return new GeographicPoint(CENTER.getLatitude() + (random.nextFloat() - 0.5f) * 0.18f,
+                CENTER.getLongitude() + (random.nextFloat() - 0.5f) * 0.24f);
+    }
+}
@@ -0,0 +1,155 @@
+package services.smartfeatures.ServerTests;
+
+import data.ServiceID;
+import data.UserAccount;
+import exception.NotEnoughWalletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.PaymentLedger;
+import services.WalletSettlement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalletSettlementTest {
+
+    private PaymentLedger ledger;
+    private WalletSettlement settlement;
+
+    @BeforeEach
+    public void setUp() {
+        ledger = new PaymentLedger();
+        settlement = new WalletSettlement(ledger, 2, 16);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        settlement.close();
+    }
+
+    @Test
+    @DisplayName("Test1: queued charges are deducted from the wallets and recorded in the ledger")
+    public void testSettleCharges() throws Exception {
+        List<UserAccount> users = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int u = 1; u <= 5; u++) {
+            UserAccount user = new UserAccount("UA-settle-" + u);
+            user.getUserWallet().addFunds(new BigDecimal("100"));
+            users.add(user);
+            for (int ride = 1; ride <= 20; ride++) {
+                futures.add(settlement.submit(user, serviceID(user, ride), new BigDecimal("1.25")));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        for (UserAccount user : users) {
+            assertEquals(new BigDecimal("75"), user.getUserWallet().getBalance());
+            assertEquals(20, ledger.count(user));
+            assertEquals(2500, ledger.total(user));
+        }
+    }
+
+    @Test
+    @DisplayName("Test2: a charge the wallet cannot cover fails without changing the balance")
+    public void testNotEnoughFunds() {
+        UserAccount user = new UserAccount("UA-settle-9");
+        user.getUserWallet().addFunds(new BigDecimal("1"));
+
+        CompletableFuture<Void> future = settlement.submit(user, serviceID(user, 1), new BigDecimal("4.50"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(NotEnoughWalletException.class, e.getCause());
+        assertEquals(BigDecimal.valueOf(1), user.getUserWallet().getBalance());
+        assertEquals(0, ledger.count(user));
+    }
+
+    @Test
+    @DisplayName("Test3: a journey is charged once even if it is submitted twice")
+    public void testDuplicateCharge() throws Exception {
+        UserAccount user = new UserAccount("UA-settle-7");
+        user.getUserWallet().addFunds(new BigDecimal("10"));
+        ServiceID ride = serviceID(user, 1);
+
+        CompletableFuture<Void> first = settlement.submit(user, ride, new BigDecimal("4.50"));
+        CompletableFuture<Void> retry = settlement.submit(user, ride, new BigDecimal("4.50"));
+        CompletableFuture.allOf(first, retry).get(10, TimeUnit.SECONDS);
+
+        assertEquals(new BigDecimal("5.5"), user.getUserWallet().getBalance());
+        assertEquals(1, ledger.count(user));
+    }
+
+    @Test
+    @DisplayName("Test4: a ledger failure refunds the batch and the worker keeps settling")
+    public void testLedgerRuntimeFailure() throws Exception {
+        settlement.close();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        ledger = new PaymentLedger() {
+            @Override
+            public void append(Batch batch) throws IOException {
+                if (failing.get()) {
+                    throw new UncheckedIOException(new IOException("force failed"));
+                }
+                super.append(batch);
+            }
+        };
+        settlement = new WalletSettlement(ledger, 1, 16);
+        UserAccount user = new UserAccount("UA-settle-5");
+        user.getUserWallet().addFunds(new BigDecimal("10"));
+
+        CompletableFuture<Void> failed = settlement.submit(user, serviceID(user, 1), new BigDecimal("4.50"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectException.class, e.getCause());
+        assertInstanceOf(UncheckedIOException.class, e.getCause().getCause());
+        assertEquals(1000, user.getUserWallet().getBalanceCents());
+        assertEquals(0, ledger.count(user));
+
+        failing.set(false);
+        settlement.submit(user, serviceID(user, 1), new BigDecimal("4.50")).get(10, TimeUnit.SECONDS);
+        assertEquals(550, user.getUserWallet().getBalanceCents());
+        assertEquals(1, ledger.count(user));
+    }
+
+    @Test
+    @DisplayName("Test5: every charge submitted while the settlement closes is either settled or refused")
+    public void testSubmitRacingClose() throws Exception {
+        UserAccount user = new UserAccount("UA-settle-3");
+        user.getUserWallet().addFunds(new BigDecimal("1000"));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Thread submitter = new Thread(() -> {
+            for (int ride = 1; ride <= 2000; ride++) {
+                futures.add(settlement.submit(user, serviceID(user, ride), new BigDecimal("0.01")));
+            }
+        });
+        submitter.start();
+        settlement.close();
+        submitter.join();
+
+        int settled = 0;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                settled++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(settled, ledger.count(user));
+        assertEquals(100000 - settled, user.getUserWallet().getBalanceCents());
+    }
+
+    private static ServiceID serviceID(UserAccount user, int ride) {
+        return new ServiceID(user.getId() + "_VH-" + (100000 + ride) + "-Patinete_ST-12345-Lleida");
+    }
+}